@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import crypto.ChunkedAeadBuffers;
+import crypto.CryptoUtils;
+
+/**
+ * AES body encryption: the legacy whole-body String API, the chunked AES-GCM stream
+ * and the same chunk format over direct buffers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AesBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int bodySize;
+
+    private SecretKey key;
+    private String body;
+    private byte[] bodyBytes;
+    private String legacyCipherText;
+    private byte[] streamCipherText;
+    private ByteBuffer directPlain;
+    private ByteBuffer directCipherText;
+    private ByteBuffer directOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        key = CryptoUtils.generateAESKey();
+        body = BenchmarkSupport.body(bodySize);
+        bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        legacyCipherText = CryptoUtils.encryptAES(body, key);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bodyBytes.length + 1024);
+        CryptoUtils.encryptAESStream(new ByteArrayInputStream(bodyBytes), out, key);
+        streamCipherText = out.toByteArray();
+
+        directPlain = ByteBuffer.allocateDirect(bodyBytes.length).put(bodyBytes).flip();
+        directCipherText = ByteBuffer.allocateDirect(streamCipherText.length).put(streamCipherText).flip();
+        directOut = ByteBuffer.allocateDirect((int) ChunkedAeadBuffers.encryptedLength(bodyBytes.length));
+    }
+
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        return CryptoUtils.encryptAES(body, key);
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws Exception {
+        return CryptoUtils.decryptAES(legacyCipherText, key);
+    }
+
+    @Benchmark
+    public void streamEncrypt() throws Exception {
+        CryptoUtils.encryptAESStream(new ByteArrayInputStream(bodyBytes), OutputStream.nullOutputStream(), key);
+    }
+
+    @Benchmark
+    public void streamDecrypt() throws Exception {
+        CryptoUtils.decryptAESStream(new ByteArrayInputStream(streamCipherText), OutputStream.nullOutputStream(), key);
+    }
+
+    @Benchmark
+    public int directBufferEncrypt() throws Exception {
+        directOut.clear();
+        return ChunkedAeadBuffers.encrypt(directPlain.duplicate(), directOut, key);
+    }
+
+    @Benchmark
+    public int directBufferDecrypt() throws Exception {
+        directOut.clear();
+        return ChunkedAeadBuffers.decrypt(directCipherText.duplicate(), directOut, key);
+    }
+}
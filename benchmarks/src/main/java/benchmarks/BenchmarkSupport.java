@@ -0,0 +1,174 @@
+package benchmarks;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import core.service.KeyService;
+import core.service.MailService;
+import crypto.CurveCrypto;
+import crypto.KeyUtil;
+import jakarta.mail.Message;
+
+/**
+ * Shared fixtures: deterministic mail bodies, an in-memory KeyService and a MailService
+ * that captures the outgoing body instead of sending it.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+        // Utility class
+    }
+
+    /**
+     * Mail-like text of roughly {@code size} characters (log lines with varying numbers)
+     */
+    static String body(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        int line = 0;
+        while (sb.length() < size) {
+            sb.append("2024-05-01 12:00:").append(line % 60)
+              .append(" INFO request ").append(line * 7919 % 100003)
+              .append(" completed in ").append(line % 977).append(" ms\n");
+            line++;
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+
+    /**
+     * Key pair for a benchmark key type: RSA-2048, RSA-4096, X25519 or Ed25519
+     */
+    static KeyPair keyPair(String keyType) throws Exception {
+        switch (keyType) {
+            case "RSA-2048":
+                return KeyUtil.generateRSAKeyPair(2048);
+            case "RSA-4096":
+                return KeyUtil.generateRSAKeyPair(4096);
+            case "X25519":
+                return CurveCrypto.generateX25519KeyPair();
+            case "Ed25519":
+                return CurveCrypto.generateEd25519KeyPair();
+            default:
+                throw new IllegalArgumentException("Unknown key type: " + keyType);
+        }
+    }
+
+    /**
+     * KeyService holding keys in memory, so benchmarks do not measure file I/O
+     */
+    static class MemoryKeyService implements KeyService {
+        private final Map<String, KeyPair> encryptionKeys = new ConcurrentHashMap<>();
+        private final Map<String, KeyPair> signingKeys = new ConcurrentHashMap<>();
+
+        @Override
+        public KeyPair generateKeyPair(String email, int keySize) throws Exception {
+            KeyPair keyPair = KeyUtil.generateRSAKeyPair(keySize);
+            saveKeyPair(email, keyPair);
+            return keyPair;
+        }
+
+        @Override
+        public KeyPair generateKeyPair(String email, Suite suite) throws Exception {
+            if (suite == Suite.RSA) {
+                return generateKeyPair(email, 2048);
+            }
+            KeyPair keyPair = CurveCrypto.generateX25519KeyPair();
+            encryptionKeys.put(email, keyPair);
+            signingKeys.put(email, CurveCrypto.generateEd25519KeyPair());
+            return keyPair;
+        }
+
+        @Override
+        public boolean hasKeyPair(String email) {
+            KeyPair keyPair = encryptionKeys.get(email);
+            return keyPair != null && keyPair.getPrivate() != null;
+        }
+
+        @Override
+        public PublicKey getPublicKey(String email) {
+            return encryptionKeys.get(email).getPublic();
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String email) {
+            return encryptionKeys.get(email).getPrivate();
+        }
+
+        @Override
+        public PublicKey getSigningPublicKey(String email) {
+            return signingKeys.getOrDefault(email, encryptionKeys.get(email)).getPublic();
+        }
+
+        @Override
+        public PrivateKey getSigningPrivateKey(String email) {
+            return signingKeys.getOrDefault(email, encryptionKeys.get(email)).getPrivate();
+        }
+
+        @Override
+        public void saveKeyPair(String email, KeyPair keyPair) {
+            encryptionKeys.put(email, keyPair);
+            signingKeys.remove(email);
+        }
+
+        @Override
+        public boolean deleteKeyPair(String email) {
+            signingKeys.remove(email);
+            return encryptionKeys.remove(email) != null;
+        }
+
+        @Override
+        public String exportPublicKey(String email) {
+            return Base64.getEncoder().encodeToString(getPublicKey(email).getEncoded());
+        }
+
+        @Override
+        public void importPublicKey(String email, String publicKeyString) throws Exception {
+            // A contact's key: public half only
+            PublicKey publicKey = KeyUtil.decodePublicKey(Base64.getDecoder().decode(publicKeyString));
+            encryptionKeys.put(email, new KeyPair(publicKey, null));
+            signingKeys.remove(email);
+        }
+
+        @Override
+        public List<String> listKeyOwners() {
+            return new ArrayList<>(encryptionKeys.keySet());
+        }
+
+        @Override
+        public void addKeyChangeListener(KeyChangeListener listener) {
+            // Keys never change during a benchmark
+        }
+    }
+
+    /**
+     * MailService that keeps the last body handed to it
+     */
+    static class CapturingMailService implements MailService {
+        private volatile String lastBody;
+
+        @Override
+        public void sendMail(String from, String password, String to, String subject, String body) {
+            lastBody = body;
+        }
+
+        @Override
+        public List<Message> fetchInbox(String email, String password) {
+            return List.of();
+        }
+
+        @Override
+        public boolean testConnection(String email, String password) {
+            return true;
+        }
+
+        String getLastBody() {
+            return lastBody;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import crypto.CryptoUtils;
+import crypto.CurveCrypto;
+
+/**
+ * Per-recipient session key wrapping: RSA at 2048/4096 bits and the X25519 suite
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class KeyWrapBenchmark {
+
+    @Param({"RSA-2048", "RSA-4096", "X25519"})
+    public String keyType;
+
+    private KeyPair keyPair;
+    private SecretKey sessionKey;
+    private String wrappedKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keyPair = BenchmarkSupport.keyPair(keyType);
+        sessionKey = CryptoUtils.generateAESKey();
+        wrappedKey = wrap();
+    }
+
+    @Benchmark
+    public String wrap() throws Exception {
+        if (CurveCrypto.isX25519(keyPair.getPublic())) {
+            return CurveCrypto.wrapKey(sessionKey, keyPair.getPublic());
+        }
+        return CryptoUtils.wrapKeyRSA(sessionKey, keyPair.getPublic());
+    }
+
+    @Benchmark
+    public SecretKey unwrap() throws Exception {
+        if (CurveCrypto.isX25519(keyPair.getPrivate())) {
+            return CurveCrypto.unwrapKey(wrappedKey, keyPair.getPrivate());
+        }
+        return CryptoUtils.unwrapKeyRSA(wrappedKey, keyPair.getPrivate());
+    }
+}
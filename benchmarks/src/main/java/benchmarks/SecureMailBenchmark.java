@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.service.KeyService;
+import core.service.SecureMailService;
+import infra.crypto.DefaultCryptoService;
+import infra.crypto.DefaultSecureMailService;
+
+/**
+ * Full DefaultSecureMailService round trip: encrypt+sign on send, decrypt+verify on receive.
+ * Session key and verification caches are disabled so every operation pays the full crypto cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {
+        "-Xmx2g",
+        "-Dcrypto.sessionkey.cache.size=0",
+        "-Dcrypto.verify.cache.size=0",
+        "-Dcrypto.keypool.high=0"})
+@State(Scope.Benchmark)
+public class SecureMailBenchmark {
+
+    private static final String SENDER = "alice@bench.local";
+    private static final String RECIPIENT = "bob@bench.local";
+
+    @Param({"RSA", "X25519_ED25519"})
+    public String suite;
+
+    @Param({"1024", "1048576"})
+    public int bodySize;
+
+    private BenchmarkSupport.CapturingMailService mailService;
+    private DefaultSecureMailService secureMailService;
+    private String body;
+    private String receivedMessage;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() throws Exception {
+        // Per-message INFO logging to the console would dominate small bodies
+        Logger.getLogger("").setLevel(Level.WARNING);
+        for (Handler handler : Logger.getLogger("").getHandlers()) {
+            handler.setLevel(Level.WARNING);
+        }
+
+        BenchmarkSupport.MemoryKeyService keyService = new BenchmarkSupport.MemoryKeyService();
+        keyService.generateKeyPair(SENDER, KeyService.Suite.valueOf(suite));
+        keyService.generateKeyPair(RECIPIENT, KeyService.Suite.valueOf(suite));
+
+        mailService = new BenchmarkSupport.CapturingMailService();
+        secureMailService = new DefaultSecureMailService(mailService, new DefaultCryptoService(), keyService);
+        body = BenchmarkSupport.body(bodySize);
+        receivedMessage = encryptAndSign();
+
+        SecureMailService.ProcessedMessage processed = decryptAndVerify();
+        if (processed.getError() != null || !processed.isSignatureVerified()
+                || !body.equals(processed.getDecryptedContent())) {
+            throw new IllegalStateException("Round trip failed: " + processed);
+        }
+    }
+
+    @Benchmark
+    public String encryptAndSign() throws Exception {
+        secureMailService.sendSecureMail(SENDER, "", List.of(RECIPIENT), "benchmark", body, true, true);
+        return mailService.getLastBody();
+    }
+
+    @Benchmark
+    public SecureMailService.ProcessedMessage decryptAndVerify() throws Exception {
+        return secureMailService.processReceivedMessage(receivedMessage, RECIPIENT);
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import infra.crypto.DefaultCryptoService;
+
+/**
+ * Message signing and verification (SHA256withRSA at 2048/4096 bits, Ed25519)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SignatureBenchmark {
+
+    @Param({"RSA-2048", "RSA-4096", "Ed25519"})
+    public String keyType;
+
+    @Param({"1024", "1048576"})
+    public int messageSize;
+
+    private final DefaultCryptoService cryptoService = new DefaultCryptoService();
+    private KeyPair keyPair;
+    private String message;
+    private String signature;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keyPair = BenchmarkSupport.keyPair(keyType);
+        message = BenchmarkSupport.body(messageSize);
+        signature = sign();
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        return cryptoService.sign(message, keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return cryptoService.verify(message, signature, keyPair.getPublic());
+    }
+}
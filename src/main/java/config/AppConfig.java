@@ -153,6 +153,115 @@ public class AppConfig {
         return properties.getProperty("db.password", "secret");
     }
     
+    // Apply pending SchemaMigrator migrations at startup; when off, apply them by hand
+    // (sync ingest fails until migration 3's unique index exists)
+    public boolean isSchemaMigrationEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("db.migrate.enabled", "true"));
+    }
+    
+    // Emails fetched per page when listing a folder
+    public int getMailListPageSize() {
+        return Integer.parseInt(properties.getProperty("mail.list.page.size", "100"));
+    }
+    
+    // Crypto configuration
+    public int getSessionKeyCacheSize() {
+        return Integer.parseInt(properties.getProperty("crypto.sessionkey.cache.size", "256"));
+    }
+    
+    public int getSessionKeyCacheTtlSeconds() {
+        return Integer.parseInt(properties.getProperty("crypto.sessionkey.cache.ttl.seconds", "600"));
+    }
+    
+    public int getVerificationCacheSize() {
+        return Integer.parseInt(properties.getProperty("crypto.verify.cache.size", "1024"));
+    }
+    
+    // Envelope format emitted for encrypted mail: 2 = compact binary, 1 = legacy text headers
+    public int getEnvelopeVersion() {
+        return Integer.parseInt(properties.getProperty("crypto.envelope.version", "2"));
+    }
+    
+    // Bodies at least this many characters long are deflated before encryption; 0 disables
+    public int getCompressionThreshold() {
+        return Integer.parseInt(properties.getProperty("crypto.compression.threshold", "1024"));
+    }
+    
+    // Bodies of this many characters or more are not compressed; 0 for no limit. A deflated body
+    // can only be decrypted whole and serially, so the default keeps bodies of 256K+ characters
+    // decrypting chunk-parallel and displaying page by page. Raise it to shrink large log/CSV
+    // bodies in transit and in storage, at the cost of slower opening of those messages
+    public int getCompressionMax() {
+        return Integer.parseInt(properties.getProperty("crypto.compression.max", "262144"));
+    }
+    
+    // Background RSA key pair pool: refill below the low watermark up to the high watermark (0 disables)
+    public int getKeyPoolLowWatermark() {
+        return Integer.parseInt(properties.getProperty("crypto.keypool.low", "2"));
+    }
+    
+    public int getKeyPoolHighWatermark() {
+        return Integer.parseInt(properties.getProperty("crypto.keypool.high", "8"));
+    }
+    
+    // Key sizes pre-generated at startup, comma separated
+    public int[] getKeyPoolKeySizes() {
+        String sizes = properties.getProperty("crypto.keypool.sizes", "2048").trim();
+        if (sizes.isEmpty()) {
+            return new int[0];
+        }
+        return java.util.Arrays.stream(sizes.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+    
+    // JCA provider per primitive (aes-gcm, rsa, sha256withrsa, sha256, and x25519/ed25519 key factories): provider name or "auto"
+    public String getCryptoProvider(String primitive) {
+        return properties.getProperty("crypto.provider." + primitive, "auto").trim();
+    }
+    
+    // Measure candidate providers at startup; false keeps the JDK default order
+    public boolean isProviderCalibrationEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("crypto.provider.calibrate", "true"));
+    }
+    
+    // Time spent measuring each candidate provider per primitive
+    public long getProviderCalibrationMillis() {
+        return Long.parseLong(properties.getProperty("crypto.provider.calibration.ms", "50"));
+    }
+    
+    public String getProviderCacheFile() {
+        return properties.getProperty("crypto.provider.cache.file", "data/crypto_providers.properties");
+    }
+    
+    // How long PgKeyService and the signature verifier trust cached keys before loading them again
+    public int getKeyCacheTtlSeconds() {
+        return Integer.parseInt(properties.getProperty("crypto.keys.cache.ttl.seconds", "60"));
+    }
+    
+    // Keep parsed keys in memory, invalidated by a watch on the keys directory
+    public boolean isKeyCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("crypto.keycache.enabled", "true"));
+    }
+    
+    // Per-operation crypto counters and latency histograms (CryptoMetrics)
+    public boolean isCryptoMetricsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("crypto.metrics.enabled", "true"));
+    }
+    
+    // Publish the crypto metrics and the key pair pool as the encryptmail:type=CryptoMetrics
+    // and encryptmail:type=KeyPairPool MBeans
+    public boolean isCryptoMetricsJmxEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("crypto.metrics.jmx", "true"));
+    }
+    
+    // Key suite for an account: crypto.suite.<email>, falling back to crypto.suite.default
+    public String getCryptoSuite(String email) {
+        return properties.getProperty("crypto.suite." + email,
+                properties.getProperty("crypto.suite.default", "RSA"));
+    }
+    
     // Get current system user for CLI mode
     public String getCurrentSystemUser() {
         return System.getProperty("user.name");
@@ -19,6 +19,8 @@ import infra.service.DefaultMailHistoryService;
 import infra.db.DbConnectionManager;
 import infra.db.PgAccountRepository;
 import infra.db.PgEmailRepository;
+import infra.db.PgKeyService;
+import infra.db.SchemaMigrator;
 import infra.mail.SmtpImapMailService;
 import mail.MailClient;
 
@@ -59,6 +61,9 @@ public class ServiceRegistry {
             if (!config.isDemoMode()) {
                 logger.info("Initializing database connection...");
                 DbConnectionManager.initialize();
+                if (config.isSchemaMigrationEnabled()) {
+                    SchemaMigrator.migrate();
+                }
                 
                 // Initialize repositories
                 this.accountRepository = new PgAccountRepository();
@@ -72,7 +77,11 @@ public class ServiceRegistry {
                 
                 // Initialize crypto services
                 this.cryptoService = new DefaultCryptoService();
-                this.keyService = new DefaultKeyService();
+                // Public keys are shared through the keys table when the database is reachable;
+                // private keys and contacts' keys stay in the local key files
+                this.keyService = DbConnectionManager.isAvailable()
+                        ? new PgKeyService(new DefaultKeyService())
+                        : new DefaultKeyService();
                 
                 // Initialize mail service first for non-demo mode
                 this.mailService = new SmtpImapMailService();
@@ -155,6 +164,21 @@ public class ServiceRegistry {
         return config;
     }
     
+    /**
+     * Key algorithm suite used when generating keys for an account
+     * @param email account email
+     * @return configured suite, RSA if unset or invalid
+     */
+    public KeyService.Suite getCryptoSuite(String email) {
+        String suite = config.getCryptoSuite(email);
+        try {
+            return KeyService.Suite.valueOf(suite.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid crypto suite for " + email + ": " + suite + ", defaulting to RSA");
+            return KeyService.Suite.RSA;
+        }
+    }
+    
     /**
      * Shutdown all services
      */
@@ -0,0 +1,63 @@
+package core.model;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a folder listing (email summaries), newest first, with the keyset cursor for the next page
+ */
+public class EmailPage {
+    private final List<EmailSummary> emails;
+    private final Cursor nextCursor;
+    
+    public EmailPage(List<EmailSummary> emails, Cursor nextCursor) {
+        this.emails = Collections.unmodifiableList(emails);
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<EmailSummary> getEmails() {
+        return emails;
+    }
+    
+    /**
+     * Cursor to pass for the following page, null on the last page
+     */
+    public Cursor getNextCursor() {
+        return nextCursor;
+    }
+    
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+    
+    /**
+     * Position after the last email of a page: its (created_at, id), the listing's sort key
+     */
+    public static class Cursor {
+        private final LocalDateTime createdAt;
+        private final Long id;
+        
+        public Cursor(LocalDateTime createdAt, Long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+        
+        public static Cursor after(EmailSummary email) {
+            return new Cursor(email.getCreatedAt(), email.getId());
+        }
+        
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+        
+        public Long getId() {
+            return id;
+        }
+        
+        @Override
+        public String toString() {
+            return createdAt + "/" + id;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package core.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * List view projection of an email: header fields, flags and a short preview, without body or raw message
+ */
+public class EmailSummary {
+    // Characters of body text kept as preview
+    public static final int PREVIEW_LENGTH = 120;
+    
+    private Long id;
+    private Long accountId;
+    private String folder;
+    private String fromAddr;
+    private String toAddr;
+    private String subject;
+    private String preview;
+    private boolean encrypted;
+    private boolean signed;
+    private boolean signatureOk;
+    private boolean read;
+    private boolean important;
+    private LocalDateTime createdAt;
+    
+    public EmailSummary() {}
+    
+    /**
+     * Summary of a fully loaded email, preview computed like the repository's summary query
+     */
+    public static EmailSummary of(Email email) {
+        EmailSummary summary = new EmailSummary();
+        summary.setId(email.getId());
+        summary.setAccountId(email.getAccountId());
+        summary.setFolder(email.getFolder());
+        summary.setFromAddr(email.getFromAddr());
+        summary.setToAddr(email.getToAddr());
+        summary.setSubject(email.getSubject());
+        summary.setPreview(preview(email.getBody()));
+        summary.setEncrypted(email.isEncrypted());
+        summary.setSigned(email.isSigned());
+        summary.setSignatureOk(email.isSignatureOk());
+        summary.setRead(email.isRead());
+        summary.setImportant(email.isImportant());
+        summary.setCreatedAt(email.getCreatedAt());
+        return summary;
+    }
+    
+    /**
+     * Body text before any armored block, whitespace collapsed, cut to PREVIEW_LENGTH
+     */
+    public static String preview(String body) {
+        if (body == null) {
+            return null;
+        }
+        String text = body.length() > PREVIEW_LENGTH * 4 ? body.substring(0, PREVIEW_LENGTH * 4) : body;
+        int armor = text.indexOf("-----BEGIN ");
+        if (armor >= 0) {
+            text = text.substring(0, armor);
+        }
+        text = text.replaceAll("\\s+", " ").trim();
+        return text.length() > PREVIEW_LENGTH ? text.substring(0, PREVIEW_LENGTH) : text;
+    }
+    
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getAccountId() { return accountId; }
+    public void setAccountId(Long accountId) { this.accountId = accountId; }
+    
+    public String getFolder() { return folder; }
+    public void setFolder(String folder) { this.folder = folder; }
+    
+    public String getFromAddr() { return fromAddr; }
+    public void setFromAddr(String fromAddr) { this.fromAddr = fromAddr; }
+    
+    public String getToAddr() { return toAddr; }
+    public void setToAddr(String toAddr) { this.toAddr = toAddr; }
+    
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+    
+    public String getPreview() { return preview; }
+    public void setPreview(String preview) { this.preview = preview; }
+    
+    public boolean isEncrypted() { return encrypted; }
+    public void setEncrypted(boolean encrypted) { this.encrypted = encrypted; }
+    
+    public boolean isSigned() { return signed; }
+    public void setSigned(boolean signed) { this.signed = signed; }
+    
+    public boolean isSignatureOk() { return signatureOk; }
+    public void setSignatureOk(boolean signatureOk) { this.signatureOk = signatureOk; }
+    
+    public boolean isRead() { return read; }
+    public void setRead(boolean read) { this.read = read; }
+    
+    public boolean isImportant() { return important; }
+    public void setImportant(boolean important) { this.important = important; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    @Override
+    public String toString() {
+        return "EmailSummary{" +
+                "id=" + id +
+                ", folder='" + folder + '\'' +
+                ", fromAddr='" + fromAddr + '\'' +
+                ", subject='" + subject + '\'' +
+                ", read=" + read +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
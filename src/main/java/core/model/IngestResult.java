@@ -0,0 +1,40 @@
+package core.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of ingesting fetched emails: the ones stored now, and how many were already stored
+ */
+public class IngestResult {
+    private final List<Email> inserted;
+    private final int skipped;
+    
+    public IngestResult(List<Email> inserted, int skipped) {
+        this.inserted = Collections.unmodifiableList(inserted);
+        this.skipped = skipped;
+    }
+    
+    /**
+     * Emails newly stored, with their ID set
+     */
+    public List<Email> getInserted() {
+        return inserted;
+    }
+    
+    public int getInsertedCount() {
+        return inserted.size();
+    }
+    
+    /**
+     * Emails skipped because their server message ID was already stored for the account
+     */
+    public int getSkippedCount() {
+        return skipped;
+    }
+    
+    @Override
+    public String toString() {
+        return inserted.size() + " inserted, " + skipped + " skipped";
+    }
+}
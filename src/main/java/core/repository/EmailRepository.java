@@ -1,9 +1,12 @@
 package core.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import core.model.Email;
+import core.model.EmailPage;
+import core.model.IngestResult;
 
 /**
  * Repository interface for Email operations
@@ -17,6 +20,28 @@ public interface EmailRepository {
      */
     Email save(Email email);
     
+    /**
+     * Save or update many emails on one connection in one transaction
+     * @param emails emails to save; new ones get their ID and creation time set
+     * @return the saved emails
+     */
+    List<Email> saveAll(Collection<Email> emails);
+    
+    /**
+     * Insert fetched emails unless their server message ID is already stored for the account;
+     * safe to repeat with the same messages
+     * @param emails new emails (no ID), normally with a server message ID
+     * @return inserted emails and skipped count
+     */
+    IngestResult ingest(Collection<Email> emails);
+    
+    /**
+     * Store the encryption and signature flags of saved emails, in one batch;
+     * other columns (body, raw message, read state, folder) are left as they are
+     * @param emails saved emails (with ID)
+     */
+    void updateSecurityStatus(Collection<Email> emails);
+    
     /**
      * Find email by ID
      * @param id email ID
@@ -32,6 +57,17 @@ public interface EmailRepository {
      */
     List<Email> findByAccountAndFolder(Long accountId, String folder);
     
+    /**
+     * Find one page of email summaries by account and folder, newest first;
+     * only list columns and a preview are read, not body or raw message
+     * @param accountId account ID
+     * @param folder folder name
+     * @param after cursor from the previous page, null for the first page
+     * @param pageSize maximum emails in the page
+     * @return page of summaries with the cursor of the next page
+     */
+    EmailPage findSummariesByAccountAndFolder(Long accountId, String folder, EmailPage.Cursor after, int pageSize);
+    
     /**
      * Find unread emails count
      * @param accountId account ID
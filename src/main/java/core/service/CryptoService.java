@@ -1,5 +1,11 @@
 package core.service;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 
@@ -32,6 +38,83 @@ public interface CryptoService {
      */
     String decryptAES(String cipherText, SecretKey key) throws Exception;
     
+    /**
+     * Encrypt a stream using chunked AES-GCM; memory use does not grow with input size
+     * @param in plaintext source (read to end, not closed)
+     * @param out ciphertext sink (not closed)
+     * @param key AES key
+     */
+    void encryptAES(InputStream in, OutputStream out, SecretKey key) throws Exception;
+    
+    /**
+     * Decrypt a chunked AES-GCM stream
+     * @param in ciphertext source
+     * @param out plaintext sink (not closed)
+     * @param key AES key
+     */
+    void decryptAES(InputStream in, OutputStream out, SecretKey key) throws Exception;
+    
+    /**
+     * Encrypt a buffer into the chunked AES-GCM format without intermediate heap arrays.
+     * Works on heap, direct and memory-mapped buffers; {@code out} needs
+     * {@link #getEncryptedLength(long)} bytes remaining.
+     * @param plain plaintext, consumed from position to limit
+     * @param out ciphertext destination
+     * @param key AES key
+     * @return number of bytes written to {@code out}
+     */
+    int encryptAES(ByteBuffer plain, ByteBuffer out, SecretKey key) throws Exception;
+    
+    /**
+     * Decrypt a chunked AES-GCM buffer; {@code out} needs at most {@code cipherText.remaining()} bytes
+     * @param cipherText ciphertext, consumed from position to limit
+     * @param out plaintext destination
+     * @param key AES key
+     * @return number of bytes written to {@code out}
+     */
+    int decryptAES(ByteBuffer cipherText, ByteBuffer out, SecretKey key) throws Exception;
+    
+    /**
+     * Encrypt a buffer straight into a channel, e.g. {@code Channels.newChannel(mimeStream)}.
+     * Only one chunk of ciphertext is staged, in a direct buffer.
+     * @param plain plaintext, consumed from position to limit
+     * @param out ciphertext sink (not closed)
+     * @param key AES key
+     */
+    void encryptAES(ByteBuffer plain, WritableByteChannel out, SecretKey key) throws Exception;
+    
+    /**
+     * Encrypt a file (exported body, attachment) read through memory-mapped buffers
+     * @param file plaintext file
+     * @param out ciphertext sink (not closed)
+     * @param key AES key
+     */
+    void encryptAES(Path file, WritableByteChannel out, SecretKey key) throws Exception;
+    
+    /**
+     * Ciphertext size of the chunked AES-GCM format for a plaintext size
+     * @param plainLength plaintext length in bytes
+     * @return ciphertext length in bytes
+     */
+    long getEncryptedLength(long plainLength);
+    
+    /**
+     * Wrap an output stream so that everything written is AES-GCM encrypted chunk by chunk.
+     * Closing the returned stream writes the final chunk and closes {@code out}.
+     * @param out ciphertext sink
+     * @param key AES key
+     * @return encrypting stream
+     */
+    OutputStream newEncryptingStream(OutputStream out, SecretKey key) throws Exception;
+    
+    /**
+     * Wrap an input stream of chunked AES-GCM ciphertext so that reads return plaintext
+     * @param in ciphertext source
+     * @param key AES key
+     * @return decrypting stream
+     */
+    InputStream newDecryptingStream(InputStream in, SecretKey key) throws Exception;
+    
     /**
      * Wrap AES key using RSA public key
      * @param aesKey AES key to wrap
@@ -49,19 +132,74 @@ public interface CryptoService {
     SecretKey unwrapKeyRSA(String wrappedKey, PrivateKey privateKey) throws Exception;
     
     /**
-     * Sign message using RSA private key
+     * Wrap AES key for a recipient; the algorithm follows the key type (RSA or X25519)
+     * @param aesKey AES key to wrap
+     * @param publicKey recipient public key
+     * @return wrapped key (Base64)
+     */
+    String wrapKey(SecretKey aesKey, PublicKey publicKey) throws Exception;
+    
+    /**
+     * Unwrap AES key; the algorithm follows the key type (RSA or X25519)
+     * @param wrappedKey wrapped key (Base64)
+     * @param privateKey recipient private key
+     * @return unwrapped AES key
+     */
+    SecretKey unwrapKey(String wrappedKey, PrivateKey privateKey) throws Exception;
+    
+    /**
+     * Key wrap algorithm identifier recorded in envelopes for a recipient key
+     * @param key recipient public or private key
+     * @return algorithm identifier
+     */
+    String getKeyWrapAlgorithm(Key key);
+    
+    /**
+     * Signature algorithm identifier recorded in signature blocks for a signing key
+     * @param key signing public or private key
+     * @return algorithm identifier
+     */
+    String getSignatureAlgorithm(Key key);
+    
+    /**
+     * Sign message; SHA256withRSA for RSA keys, Ed25519 for Ed25519 keys
      * @param message message to sign
-     * @param privateKey RSA private key
+     * @param privateKey signing private key
      * @return signature (Base64)
      */
     String sign(String message, PrivateKey privateKey) throws Exception;
     
     /**
-     * Verify signature using RSA public key
+     * Verify signature; SHA256withRSA for RSA keys, Ed25519 for Ed25519 keys
      * @param message original message
      * @param signature signature (Base64)
-     * @param publicKey RSA public key
+     * @param publicKey signing public key
      * @return true if signature is valid
      */
     boolean verify(String message, String signature, PublicKey publicKey) throws Exception;
+    
+    /**
+     * Whether signatures for this key can be made and checked from a precomputed SHA-256
+     * digest (true for SHA256withRSA; Ed25519 signs the message itself)
+     * @param key signing public or private key
+     * @return true if signDigest/verifyDigest accept the key
+     */
+    boolean supportsDigestSigning(Key key);
+    
+    /**
+     * Sign a precomputed SHA-256 digest; the signature equals sign(message) for the same message
+     * @param sha256 SHA-256 of the message's UTF-8 bytes
+     * @param privateKey RSA signing private key
+     * @return signature (Base64)
+     */
+    String signDigest(byte[] sha256, PrivateKey privateKey) throws Exception;
+    
+    /**
+     * Verify a signature against a precomputed SHA-256 digest
+     * @param sha256 SHA-256 of the message's UTF-8 bytes
+     * @param signature signature (Base64)
+     * @param publicKey RSA signing public key
+     * @return true if signature is valid
+     */
+    boolean verifyDigest(byte[] sha256, String signature, PublicKey publicKey) throws Exception;
 }
@@ -3,12 +3,32 @@ package core.service;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Key management service interface
  */
 public interface KeyService {
     
+    /**
+     * Listener notified when a user's keys are created, replaced, imported or deleted
+     */
+    interface KeyChangeListener {
+        void onKeyChanged(String email);
+    }
+    
+    /**
+     * Key algorithm suite of an account
+     */
+    enum Suite {
+        RSA,            // RSA key wrap + SHA256withRSA, one key pair
+        X25519_ED25519  // X25519 key agreement + Ed25519 signatures, separate key pairs
+    }
+    
     /**
      * Generate RSA key pair for user
      * @param email user email
@@ -17,6 +37,14 @@ public interface KeyService {
      */
     KeyPair generateKeyPair(String email, int keySize) throws Exception;
     
+    /**
+     * Generate the keys of a suite for user (RSA uses 2048 bits)
+     * @param email user email
+     * @param suite key algorithm suite
+     * @return generated encryption key pair
+     */
+    KeyPair generateKeyPair(String email, Suite suite) throws Exception;
+    
     /**
      * Check if user has key pair
      * @param email user email
@@ -31,6 +59,21 @@ public interface KeyService {
      */
     PublicKey getPublicKey(String email) throws Exception;
     
+    /**
+     * Get the public keys of several users with as few lookups as the store allows
+     * @param emails user emails
+     * @return public key per email, in the given order; users without a public key are absent
+     */
+    default Map<String, PublicKey> getPublicKeys(Collection<String> emails) throws Exception {
+        Map<String, PublicKey> keys = new LinkedHashMap<>();
+        for (String email : emails) {
+            if (hasKeyPair(email)) {
+                keys.put(email, getPublicKey(email));
+            }
+        }
+        return keys;
+    }
+    
     /**
      * Get private key for user
      * @param email user email
@@ -38,6 +81,21 @@ public interface KeyService {
      */
     PrivateKey getPrivateKey(String email) throws Exception;
     
+    /**
+     * Get the public key used to verify the user's signatures
+     * (the encryption key for RSA accounts, the Ed25519 key otherwise)
+     * @param email user email
+     * @return signing public key
+     */
+    PublicKey getSigningPublicKey(String email) throws Exception;
+    
+    /**
+     * Get the private key used to sign the user's messages
+     * @param email user email
+     * @return signing private key
+     */
+    PrivateKey getSigningPrivateKey(String email) throws Exception;
+    
     /**
      * Save key pair for user
      * @param email user email
@@ -60,9 +118,39 @@ public interface KeyService {
     String exportPublicKey(String email) throws Exception;
     
     /**
-     * Import public key from string
+     * Import public key from string; Ed25519 keys are stored as the user's signing key
      * @param email user email
      * @param publicKeyString public key as Base64 string
      */
     void importPublicKey(String email, String publicKeyString) throws Exception;
+    
+    /**
+     * Import many public keys at once; a failing entry does not stop the others
+     * @param keys (email, public key) pairs, applied in order; an Ed25519 key becomes the user's signing key
+     * @return the failure of each entry that was not imported, by its index in keys
+     */
+    default Map<Integer, Exception> importPublicKeys(List<Map.Entry<String, PublicKey>> keys) {
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Map.Entry<String, PublicKey> entry = keys.get(i);
+            try {
+                importPublicKey(entry.getKey(), Base64.getEncoder().encodeToString(entry.getValue().getEncoded()));
+            } catch (Exception e) {
+                failures.put(i, e);
+            }
+        }
+        return failures;
+    }
+    
+    /**
+     * Users that have keys in this store, for exporting the whole keyring
+     * @return user emails
+     */
+    List<String> listKeyOwners() throws Exception;
+    
+    /**
+     * Register a listener for key changes (used to invalidate caches derived from keys)
+     * @param listener listener to add
+     */
+    void addKeyChangeListener(KeyChangeListener listener);
 }
@@ -1,9 +1,13 @@
 package core.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import core.model.Email;
+import core.model.EmailPage;
+import core.model.IngestResult;
 
 /**
  * Mail history service interface
@@ -17,6 +21,26 @@ public interface MailHistoryService {
      */
     Email saveEmail(Email email);
     
+    /**
+     * Save many emails to history in one batch
+     * @param emails emails to save
+     * @return saved emails
+     */
+    List<Email> saveEmails(Collection<Email> emails);
+    
+    /**
+     * Store fetched emails, skipping ones already stored (by server message ID)
+     * @param emails fetched emails
+     * @return inserted emails and skipped count
+     */
+    IngestResult ingestEmails(Collection<Email> emails);
+    
+    /**
+     * Store the encryption and signature verdicts of stored emails
+     * @param emails stored emails
+     */
+    void saveSecurityStatus(Collection<Email> emails);
+    
     /**
      * Get emails by folder
      * @param accountId account ID
@@ -25,6 +49,23 @@ public interface MailHistoryService {
      */
     List<Email> getEmailsByFolder(Long accountId, String folder);
     
+    /**
+     * Get one page of email summaries by folder, newest first
+     * @param accountId account ID
+     * @param folder folder name
+     * @param after cursor from the previous page, null for the first page
+     * @param pageSize maximum emails in the page
+     * @return page of summaries
+     */
+    EmailPage getEmailSummaries(Long accountId, String folder, EmailPage.Cursor after, int pageSize);
+    
+    /**
+     * Get a full email, e.g. the one opened from a summary list
+     * @param emailId email ID
+     * @return email if found
+     */
+    Optional<Email> getEmail(Long emailId);
+    
     /**
      * Get unread count by folder
      * @param accountId account ID
@@ -1,5 +1,7 @@
 package core.service;
 
+import java.util.List;
+
 /**
  * Secure mail service interface for encrypted and signed emails
  */
@@ -18,6 +20,20 @@ public interface SecureMailService {
     void sendSecureMail(String from, String password, String to, String subject, 
                        String body, boolean encrypt, boolean sign) throws Exception;
     
+    /**
+     * Send one secure mail to several recipients in a single SMTP transaction.
+     * The body is encrypted once; the session key is wrapped once per recipient.
+     * @param from sender email
+     * @param password sender password
+     * @param to recipient emails
+     * @param subject email subject
+     * @param body email body
+     * @param encrypt whether to encrypt
+     * @param sign whether to sign
+     */
+    void sendSecureMail(String from, String password, List<String> to, String subject,
+                       String body, boolean encrypt, boolean sign) throws Exception;
+    
     /**
      * Process received message (decrypt and verify)
      * @param rawMessage raw message content
@@ -26,6 +42,55 @@ public interface SecureMailService {
      */
     ProcessedMessage processReceivedMessage(String rawMessage, String recipientEmail) throws Exception;
     
+    /**
+     * Check a received message's signature without decrypting it, e.g. to store
+     * signature_ok when syncing so that later views need no verification
+     * @param rawMessage raw message content
+     * @return processed message with encryption and signature flags set; content is not decrypted
+     */
+    ProcessedMessage verifyReceivedMessage(String rawMessage) throws Exception;
+    
+    /**
+     * Decrypt a received message for display without checking its signature; viewers show
+     * the verdict stored at sync time (Email.isSignatureOk) instead
+     * @param rawMessage raw message content
+     * @param recipientEmail recipient email (for decryption)
+     * @return message text without its signature block
+     */
+    String decryptReceivedMessage(String rawMessage, String recipientEmail) throws Exception;
+    
+    /**
+     * Open an encrypted message for incremental reading: segments are decrypted only when read.
+     * Signature status is not checked here; it is stored at sync time (see verifyReceivedMessage).
+     * @param rawMessage raw message content
+     * @param recipientEmail recipient email (for decryption)
+     * @return body reader, or null if the message must be decrypted as a whole with
+     *         decryptReceivedMessage (not encrypted, compressed, or legacy format)
+     */
+    EncryptedBody openEncryptedBody(String rawMessage, String recipientEmail) throws Exception;
+    
+    /**
+     * Encrypted body split into independently authenticated segments of UTF-8 plaintext.
+     * A multi-byte character may span two segments.
+     */
+    interface EncryptedBody {
+        
+        int getSegmentCount();
+        
+        /**
+         * Plaintext length in bytes
+         */
+        long getLength();
+        
+        /**
+         * Decrypt one segment
+         * @param index segment index
+         * @return plaintext bytes
+         * @throws SecurityException if the segment fails authentication
+         */
+        byte[] readSegment(int index) throws Exception;
+    }
+    
     /**
      * Represents a processed secure message
      */
@@ -0,0 +1,232 @@
+package crypto;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+
+import static crypto.ChunkedAeadOutputStream.CHUNK_SIZE;
+import static crypto.ChunkedAeadOutputStream.FINAL_FLAG;
+import static crypto.ChunkedAeadOutputStream.HEADER_LENGTH;
+import static crypto.ChunkedAeadOutputStream.NONCE_PREFIX_LENGTH;
+import static crypto.ChunkedAeadOutputStream.TAG_LENGTH;
+
+/**
+ * ChunkedAeadBuffers: cùng định dạng chunk AES-GCM với ChunkedAeadOutputStream/InputStream,
+ * nhưng làm việc trực tiếp trên ByteBuffer (kể cả direct buffer, file memory-mapped).
+ * - Cipher.doFinal(ByteBuffer, ByteBuffer) trên từng lát (slice) của buffer nguồn: không copy sang byte[] trên heap.
+ * - Ghi ra channel dùng một direct buffer cỡ một chunk, tái sử dụng cho mọi chunk.
+ * - File lớn được map theo từng cửa sổ, nên không bị giới hạn 2 GB của MappedByteBuffer.
+ */
+public final class ChunkedAeadBuffers {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int LENGTH_FIELD = 4;
+    // Cửa sổ map file: bội số của CHUNK_SIZE để chunk không bị cắt giữa hai cửa sổ
+    private static final long MAP_WINDOW = 1024L * CHUNK_SIZE;
+
+    private ChunkedAeadBuffers() {
+    }
+
+    // Kích thước ciphertext cho một plaintext (header + mỗi chunk thêm 4 byte độ dài và 16 byte tag)
+    public static long encryptedLength(long plainLength) {
+        long chunks = Math.max(1, (plainLength + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return HEADER_LENGTH + plainLength + chunks * (LENGTH_FIELD + TAG_LENGTH);
+    }
+
+    // Mã hóa plain.remaining() byte vào out; trả về số byte đã ghi. out phải còn đủ encryptedLength() byte
+    public static int encrypt(ByteBuffer plain, ByteBuffer out, SecretKey key) throws IOException {
+        long needed = encryptedLength(plain.remaining());
+        if (out.remaining() < needed) {
+            throw new BufferOverflowException();
+        }
+        int start = out.position();
+        Encryptor encryptor = new Encryptor(key);
+        try {
+            encryptor.header(out);
+            do {
+                int n = Math.min(plain.remaining(), CHUNK_SIZE);
+                boolean last = plain.remaining() <= CHUNK_SIZE;
+                encryptor.chunk(plain.slice(plain.position(), n), out, last);
+                plain.position(plain.position() + n);
+            } while (plain.hasRemaining());
+        } finally {
+            encryptor.release();
+        }
+        return out.position() - start;
+    }
+
+    // Mã hóa plain.remaining() byte và ghi thẳng ra channel (ví dụ Channels.newChannel(mimeOutputStream))
+    public static void encrypt(ByteBuffer plain, WritableByteChannel out, SecretKey key) throws IOException {
+        Encryptor encryptor = new Encryptor(key);
+        try {
+            encryptor.header(out);
+            do {
+                int n = Math.min(plain.remaining(), CHUNK_SIZE);
+                boolean last = plain.remaining() <= CHUNK_SIZE;
+                encryptor.chunk(plain.slice(plain.position(), n), out, last);
+                plain.position(plain.position() + n);
+            } while (plain.hasRemaining());
+        } finally {
+            encryptor.release();
+        }
+    }
+
+    // Mã hóa một file: đọc qua memory-mapped buffer, ghi ciphertext ra channel
+    public static void encryptFile(Path file, WritableByteChannel out, SecretKey key) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Encryptor encryptor = new Encryptor(key);
+            try {
+                encryptor.header(out);
+                long offset = 0;
+                do {
+                    long windowLength = Math.min(MAP_WINDOW, size - offset);
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowLength);
+                    do {
+                        int n = Math.min(window.remaining(), CHUNK_SIZE);
+                        boolean last = offset + window.position() + n == size;
+                        encryptor.chunk(window.slice(window.position(), n), out, last);
+                        window.position(window.position() + n);
+                    } while (window.hasRemaining());
+                    offset += windowLength;
+                } while (offset < size);
+            } finally {
+                encryptor.release();
+            }
+        }
+    }
+
+    // Giải mã toàn bộ ciphertext trong buffer vào out; trả về số byte plaintext.
+    // out cần tối đa cipherText.remaining() byte
+    public static int decrypt(ByteBuffer cipherText, ByteBuffer out, SecretKey key) throws IOException {
+        int start = out.position();
+        Cipher cipher;
+        try {
+            cipher = CryptoUtils.AES_GCM_CIPHERS.borrow();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM not available", e);
+        }
+        try {
+            byte version = cipherText.get();
+            if (version != ChunkedAeadOutputStream.VERSION) {
+                throw new IOException("Unsupported chunked AEAD version: " + version);
+            }
+            byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            cipherText.get(noncePrefix);
+
+            boolean last = false;
+            for (int index = 0; !last; index++) {
+                int header = cipherText.getInt();
+                last = (header & FINAL_FLAG) != 0;
+                int length = header & ~FINAL_FLAG;
+                if (length < TAG_LENGTH || length > CHUNK_SIZE + TAG_LENGTH) {
+                    throw new IOException("Invalid chunk length: " + length);
+                }
+                if (cipherText.remaining() < length) {
+                    throw new IOException("Encrypted stream is truncated");
+                }
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8,
+                        ChunkedAeadOutputStream.nonce(noncePrefix, index, last)));
+                cipher.doFinal(cipherText.slice(cipherText.position(), length), out);
+                cipherText.position(cipherText.position() + length);
+            }
+            if (cipherText.hasRemaining()) {
+                throw new IOException("Unexpected data after final chunk");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Encrypted stream is truncated", e);
+        } catch (ShortBufferException e) {
+            throw new BufferOverflowException();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk authentication failed", e);
+        } finally {
+            CryptoUtils.AES_GCM_CIPHERS.release(cipher);
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * Trạng thái mã hóa của một message: cipher mượn từ pool, nonce prefix, số thứ tự chunk
+     * và direct buffer dùng chung khi ghi ra channel.
+     */
+    private static final class Encryptor {
+        private final SecretKey key;
+        private final byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        private Cipher cipher;
+        private ByteBuffer staging;
+        private int chunkIndex;
+
+        Encryptor(SecretKey key) throws IOException {
+            this.key = key;
+            RANDOM.nextBytes(noncePrefix);
+            try {
+                this.cipher = CryptoUtils.AES_GCM_CIPHERS.borrow();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("AES-GCM not available", e);
+            }
+        }
+
+        void header(ByteBuffer out) {
+            out.put(ChunkedAeadOutputStream.VERSION);
+            out.put(noncePrefix);
+        }
+
+        void header(WritableByteChannel out) throws IOException {
+            staging = ByteBuffer.allocateDirect(LENGTH_FIELD + CHUNK_SIZE + TAG_LENGTH);
+            staging.put(ChunkedAeadOutputStream.VERSION);
+            staging.put(noncePrefix);
+            drain(out);
+        }
+
+        // Ghi một chunk: 4 byte độ dài (điền sau khi biết kích thước) + ciphertext
+        void chunk(ByteBuffer plain, ByteBuffer out, boolean last) throws IOException {
+            int lengthPos = out.position();
+            out.position(lengthPos + LENGTH_FIELD);
+            int n;
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8,
+                        ChunkedAeadOutputStream.nonce(noncePrefix, chunkIndex, last)));
+                n = cipher.doFinal(plain, out);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Chunk encryption failed", e);
+            }
+            out.putInt(lengthPos, last ? (n | FINAL_FLAG) : n);
+            if (++chunkIndex < 0) {
+                throw new IOException("Too many chunks");
+            }
+        }
+
+        void chunk(ByteBuffer plain, WritableByteChannel out, boolean last) throws IOException {
+            staging.clear();
+            chunk(plain, staging, last);
+            drain(out);
+        }
+
+        private void drain(WritableByteChannel out) throws IOException {
+            staging.flip();
+            while (staging.hasRemaining()) {
+                out.write(staging);
+            }
+        }
+
+        void release() {
+            if (cipher != null) {
+                CryptoUtils.AES_GCM_CIPHERS.release(cipher);
+                cipher = null;
+            }
+        }
+    }
+}
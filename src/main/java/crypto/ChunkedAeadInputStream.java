@@ -0,0 +1,116 @@
+package crypto;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * ChunkedAeadInputStream: giải mã định dạng của ChunkedAeadOutputStream.
+ * Mỗi chunk được xác thực riêng; stream bị cắt, đảo chunk hoặc thừa dữ liệu đều báo lỗi.
+ */
+public class ChunkedAeadInputStream extends InputStream {
+
+    private final DataInputStream in;
+    private final SecretKey key;
+    private Cipher cipher;
+    private final byte[] noncePrefix = new byte[ChunkedAeadOutputStream.NONCE_PREFIX_LENGTH];
+    private final byte[] cipherBuffer = new byte[ChunkedAeadOutputStream.CHUNK_SIZE + ChunkedAeadOutputStream.TAG_LENGTH];
+    private final byte[] plainBuffer = new byte[ChunkedAeadOutputStream.CHUNK_SIZE];
+    private int plainPos;
+    private int plainLimit;
+    private int chunkIndex;
+    private boolean headerRead;
+    private boolean lastChunkRead;
+
+    public ChunkedAeadInputStream(InputStream in, SecretKey key) throws GeneralSecurityException {
+        this.in = new DataInputStream(in);
+        this.key = key;
+        this.cipher = CryptoUtils.AES_GCM_CIPHERS.borrow();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (plainPos == plainLimit) {
+            if (lastChunkRead) {
+                return -1;
+            }
+            readChunk();
+        }
+        int n = Math.min(len, plainLimit - plainPos);
+        System.arraycopy(plainBuffer, plainPos, b, off, n);
+        plainPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return plainLimit - plainPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        releaseCipher();
+        in.close();
+    }
+
+    private void releaseCipher() {
+        if (cipher != null) {
+            CryptoUtils.AES_GCM_CIPHERS.release(cipher);
+            cipher = null;
+        }
+    }
+
+    private void readChunk() throws IOException {
+        try {
+            if (!headerRead) {
+                byte version = in.readByte();
+                if (version != ChunkedAeadOutputStream.VERSION) {
+                    throw new IOException("Unsupported chunked AEAD version: " + version);
+                }
+                in.readFully(noncePrefix);
+                headerRead = true;
+            }
+            int header = in.readInt();
+            boolean last = (header & ChunkedAeadOutputStream.FINAL_FLAG) != 0;
+            int length = header & ~ChunkedAeadOutputStream.FINAL_FLAG;
+            if (length < ChunkedAeadOutputStream.TAG_LENGTH || length > cipherBuffer.length) {
+                throw new IOException("Invalid chunk length: " + length);
+            }
+            in.readFully(cipherBuffer, 0, length);
+
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(ChunkedAeadOutputStream.TAG_LENGTH * 8,
+                    ChunkedAeadOutputStream.nonce(noncePrefix, chunkIndex, last)));
+            plainLimit = cipher.doFinal(cipherBuffer, 0, length, plainBuffer, 0);
+            plainPos = 0;
+            chunkIndex++;
+
+            if (last) {
+                lastChunkRead = true;
+                releaseCipher();
+                if (in.read() != -1) {
+                    throw new IOException("Unexpected data after final chunk");
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Encrypted stream is truncated", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk authentication failed", e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package crypto;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * ChunkedAeadOutputStream: mã hóa AES-GCM dạng stream, chia dữ liệu thành từng chunk.
+ * - Header: 1 byte version + 7 byte nonce prefix ngẫu nhiên.
+ * - Mỗi chunk: 4 byte độ dài (bit cao = chunk cuối) + ciphertext (kèm tag 16 byte).
+ * - Nonce của chunk = prefix + số thứ tự chunk + cờ chunk cuối, nên không thể đảo/cắt chunk.
+ * Bộ nhớ dùng cố định (một chunk), không phụ thuộc kích thước message.
+ */
+public class ChunkedAeadOutputStream extends FilterOutputStream {
+
+    static final byte VERSION = 1;
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int TAG_LENGTH = 16;
+    static final int NONCE_PREFIX_LENGTH = 7;
+    static final int HEADER_LENGTH = 1 + NONCE_PREFIX_LENGTH;
+    static final int FINAL_FLAG = 0x80000000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final DataOutputStream dataOut;
+    private final SecretKey key;
+    private Cipher cipher;
+    private final byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private final byte[] cipherBuffer = new byte[CHUNK_SIZE + TAG_LENGTH];
+    private int buffered;
+    private int chunkIndex;
+    private boolean headerWritten;
+    private boolean finished;
+
+    public ChunkedAeadOutputStream(OutputStream out, SecretKey key) throws GeneralSecurityException {
+        super(out);
+        this.dataOut = new DataOutputStream(out);
+        this.key = key;
+        this.cipher = CryptoUtils.AES_GCM_CIPHERS.borrow();
+        RANDOM.nextBytes(noncePrefix);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+        while (len > 0) {
+            // Chỉ ghi chunk khi còn dữ liệu phía sau, để chunk cuối luôn mang cờ final
+            if (buffered == CHUNK_SIZE) {
+                writeChunk(false);
+            }
+            int n = Math.min(len, CHUNK_SIZE - buffered);
+            System.arraycopy(b, off, buffer, buffered, n);
+            buffered += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Không ép ghi chunk dở dang: chunk chỉ được đóng khi đầy hoặc khi finish()
+        out.flush();
+    }
+
+    /**
+     * Ghi chunk cuối mà không đóng stream bên dưới.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            writeChunk(true);
+            finished = true;
+            CryptoUtils.AES_GCM_CIPHERS.release(cipher);
+            cipher = null;
+            dataOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeChunk(boolean last) throws IOException {
+        if (!headerWritten) {
+            dataOut.writeByte(VERSION);
+            dataOut.write(noncePrefix);
+            headerWritten = true;
+        }
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce(noncePrefix, chunkIndex, last)));
+            int n = cipher.doFinal(buffer, 0, buffered, cipherBuffer, 0);
+            dataOut.writeInt(last ? (n | FINAL_FLAG) : n);
+            dataOut.write(cipherBuffer, 0, n);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk encryption failed", e);
+        }
+        buffered = 0;
+        if (++chunkIndex < 0) {
+            throw new IOException("Too many chunks");
+        }
+    }
+
+    // Nonce 12 byte = prefix (7) + chỉ số chunk (4, big-endian) + cờ chunk cuối (1)
+    static byte[] nonce(byte[] prefix, int index, boolean last) {
+        byte[] nonce = new byte[12];
+        System.arraycopy(prefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+}
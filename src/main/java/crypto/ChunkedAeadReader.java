@@ -0,0 +1,257 @@
+package crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import static crypto.ChunkedAeadOutputStream.CHUNK_SIZE;
+import static crypto.ChunkedAeadOutputStream.FINAL_FLAG;
+import static crypto.ChunkedAeadOutputStream.HEADER_LENGTH;
+import static crypto.ChunkedAeadOutputStream.NONCE_PREFIX_LENGTH;
+import static crypto.ChunkedAeadOutputStream.TAG_LENGTH;
+
+/**
+ * ChunkedAeadReader: đọc ngẫu nhiên (random access) ciphertext định dạng chunk AES-GCM đã nằm trọn trong bộ nhớ.
+ * - Mọi chunk trừ chunk cuối đều đầy (CHUNK_SIZE), nên vị trí của chunk i tính trực tiếp, không cần duyệt.
+ * - Mỗi chunk được xác thực riêng với nonce theo số thứ tự; chunk cuối được xác định từ tổng độ dài
+ *   và phải mang cờ final, nên cắt bớt chunk ở cuối vẫn bị phát hiện.
+ * - decryptAll() giải mã các chunk song song trên ForkJoinPool.
+ * - decryptStream() giải mã stream theo từng cửa sổ chunk, song song trong mỗi cửa sổ, với bộ nhớ giới hạn.
+ */
+public final class ChunkedAeadReader {
+
+    private static final int LENGTH_FIELD = 4;
+    private static final int STRIDE = LENGTH_FIELD + CHUNK_SIZE + TAG_LENGTH;
+    // Số chunk mỗi tác vụ song song (256 KB plaintext), đủ lớn để chi phí chia việc không đáng kể
+    private static final int CHUNKS_PER_TASK = 4;
+
+    /**
+     * Nhận plaintext của từng cửa sổ trong decryptStream(), theo đúng thứ tự
+     */
+    @FunctionalInterface
+    public interface PlainSink {
+        // plain chỉ hợp lệ trong lời gọi này (bộ đệm được dùng lại); last = cửa sổ cuối
+        void accept(ByteBuffer plain, boolean last) throws IOException;
+    }
+
+    private final ByteBuffer cipherText;
+    private final SecretKey key;
+    private final byte[] noncePrefix;
+    // Vị trí chunk đầu tiên trong cipherText và số thứ tự của nó trong stream
+    private final int bodyOffset;
+    private final int firstIndex;
+    // Chunk cuối của reader có phải chunk cuối của stream (mang cờ final) không
+    private final boolean endsStream;
+    private final int chunkCount;
+    private final long plainLength;
+
+    // cipherText: toàn bộ stream (header + các chunk) từ position đến limit; không bị thay đổi
+    public ChunkedAeadReader(ByteBuffer cipherText, SecretKey key) throws IOException {
+        this(cipherText.slice().asReadOnlyBuffer(), key, readHeader(cipherText), HEADER_LENGTH, 0, true);
+    }
+
+    // Một cửa sổ các chunk liền nhau (không có header), bắt đầu từ chunk số firstIndex của stream
+    private ChunkedAeadReader(ByteBuffer cipherText, SecretKey key, byte[] noncePrefix, int bodyOffset,
+                              int firstIndex, boolean endsStream) throws IOException {
+        this.cipherText = cipherText;
+        this.key = key;
+        this.noncePrefix = noncePrefix;
+        this.bodyOffset = bodyOffset;
+        this.firstIndex = firstIndex;
+        this.endsStream = endsStream;
+
+        long body = cipherText.remaining() - bodyOffset;
+        if (!endsStream) {
+            // Chưa tới cuối stream: cửa sổ chỉ gồm các chunk đầy
+            if (body == 0 || body % STRIDE != 0) {
+                throw new IllegalArgumentException("Window must hold whole chunks");
+            }
+            this.chunkCount = (int) (body / STRIDE);
+            this.plainLength = (long) chunkCount * CHUNK_SIZE;
+            return;
+        }
+        long chunks = (body + STRIDE - 1) / STRIDE;
+        long lastLength = body - (chunks - 1) * STRIDE;
+        if (chunks == 0 || lastLength < LENGTH_FIELD + TAG_LENGTH) {
+            throw new IOException("Encrypted stream is truncated");
+        }
+        this.chunkCount = (int) chunks;
+        this.plainLength = (chunks - 1) * CHUNK_SIZE + lastLength - LENGTH_FIELD - TAG_LENGTH;
+    }
+
+    // Kiểm tra header (version + nonce prefix) ở đầu buffer, trả về nonce prefix
+    private static byte[] readHeader(ByteBuffer cipherText) throws IOException {
+        if (cipherText.remaining() < HEADER_LENGTH + LENGTH_FIELD + TAG_LENGTH) {
+            throw new IOException("Encrypted stream is truncated");
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        cipherText.get(cipherText.position(), header);
+        return checkHeader(header);
+    }
+
+    private static byte[] checkHeader(byte[] header) throws IOException {
+        if (header[0] != ChunkedAeadOutputStream.VERSION) {
+            throw new IOException("Unsupported chunked AEAD version: " + header[0]);
+        }
+        return Arrays.copyOfRange(header, 1, HEADER_LENGTH);
+    }
+
+    /**
+     * Giải mã cả stream theo từng cửa sổ windowChunks chunk: đọc một cửa sổ ciphertext, giải mã
+     * song song trên pool rồi đưa plaintext cho sink theo thứ tự. Bộ nhớ cố định (hai bộ đệm cỡ cửa sổ),
+     * không phụ thuộc kích thước message. Cắt bớt, đảo thứ tự chunk hay cờ final sai đều bị phát hiện
+     * như khi đọc toàn bộ.
+     * @return tổng số byte plaintext
+     */
+    public static long decryptStream(InputStream in, SecretKey key, ForkJoinPool pool, int windowChunks,
+                                     PlainSink sink) throws IOException {
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        if (header.length < HEADER_LENGTH) {
+            throw new IOException("Encrypted stream is truncated");
+        }
+        byte[] noncePrefix = checkHeader(header);
+
+        byte[] window = new byte[windowChunks * STRIDE];
+        ByteBuffer plain = ByteBuffer.allocate(windowChunks * CHUNK_SIZE);
+        int carried = 0;
+        int firstIndex = 0;
+        long total = 0;
+        while (true) {
+            int n = carried + in.readNBytes(window, carried, window.length - carried);
+            // Cửa sổ đầy: đọc trước một byte để biết chunk cuối cửa sổ có phải chunk cuối stream không
+            int next = n == window.length ? in.read() : -1;
+            boolean last = next == -1;
+            ChunkedAeadReader reader = new ChunkedAeadReader(ByteBuffer.wrap(window, 0, n).slice(), key,
+                    noncePrefix, 0, firstIndex, last);
+            plain.clear();
+            reader.decryptAll(plain, pool);
+            plain.flip();
+            total += plain.remaining();
+            sink.accept(plain.asReadOnlyBuffer(), last);
+            if (last) {
+                return total;
+            }
+            window[0] = (byte) next;
+            carried = 1;
+            firstIndex += reader.chunkCount;
+        }
+    }
+
+    public int getChunkCount() { return chunkCount; }
+
+    public long getPlainLength() { return plainLength; }
+
+    // Số byte plaintext của một chunk
+    public int getChunkLength(int index) {
+        checkIndex(index);
+        return index < chunkCount - 1 ? CHUNK_SIZE : (int) (plainLength - (long) index * CHUNK_SIZE);
+    }
+
+    // Giải mã một chunk
+    public byte[] readChunk(int index) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(getChunkLength(index));
+        decryptChunk(index, out);
+        return out.array();
+    }
+
+    // Giải mã một chunk vào out (cần getChunkLength(index) byte)
+    public void decryptChunk(int index, ByteBuffer out) throws IOException {
+        Cipher cipher = borrowCipher();
+        try {
+            decryptChunk(cipher, index, out);
+        } finally {
+            CryptoUtils.AES_GCM_CIPHERS.release(cipher);
+        }
+    }
+
+    // Giải mã toàn bộ vào out (cần getPlainLength() byte), nhiều chunk chạy song song trên pool
+    public void decryptAll(ByteBuffer out, ForkJoinPool pool) throws IOException {
+        if (out.remaining() < plainLength) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.remaining() + " < " + plainLength);
+        }
+        int start = out.position();
+        if (chunkCount <= CHUNKS_PER_TASK || pool.getParallelism() < 2) {
+            decryptRange(0, chunkCount, out.duplicate());
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int first = 0; first < chunkCount; first += CHUNKS_PER_TASK) {
+                int from = first;
+                int to = Math.min(chunkCount, first + CHUNKS_PER_TASK);
+                ByteBuffer target = out.duplicate().position(start + from * CHUNK_SIZE);
+                tasks.add(() -> {
+                    decryptRange(from, to, target);
+                    return null;
+                });
+            }
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Decryption interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Chunk decryption failed", e.getCause());
+                }
+            }
+        }
+        out.position(start + (int) plainLength);
+    }
+
+    private void decryptRange(int from, int to, ByteBuffer out) throws IOException {
+        Cipher cipher = borrowCipher();
+        try {
+            for (int index = from; index < to; index++) {
+                decryptChunk(cipher, index, out);
+            }
+        } finally {
+            CryptoUtils.AES_GCM_CIPHERS.release(cipher);
+        }
+    }
+
+    private void decryptChunk(Cipher cipher, int index, ByteBuffer out) throws IOException {
+        checkIndex(index);
+        boolean last = endsStream && index == chunkCount - 1;
+        int offset = bodyOffset + index * STRIDE;
+        int header = cipherText.getInt(offset);
+        int length = header & ~FINAL_FLAG;
+        if (((header & FINAL_FLAG) != 0) != last || length != getChunkLength(index) + TAG_LENGTH) {
+            throw new IOException("Invalid chunk length: " + length);
+        }
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8,
+                    ChunkedAeadOutputStream.nonce(noncePrefix, firstIndex + index, last)));
+            cipher.doFinal(cipherText.slice(offset + LENGTH_FIELD, length), out);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk authentication failed", e);
+        }
+    }
+
+    private Cipher borrowCipher() throws IOException {
+        try {
+            return CryptoUtils.AES_GCM_CIPHERS.borrow();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM not available", e);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " of " + chunkCount);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import config.AppConfig;
+
+/**
+ * CryptoProviders: chọn provider JCA cho từng primitive (AES-GCM, RSA, SHA256withRSA, SHA-256).
+ * - Ứng viên: các provider đã đăng ký trong JDK và BouncyCastle nếu có trên classpath (nạp bằng reflection).
+ * - Lúc khởi động chạy đo nhanh từng ứng viên và ghim provider nhanh nhất; kết quả được lưu vào file
+ *   và dùng lại khi JDK/CPU/danh sách provider không đổi.
+ * - Ghi đè trong AppConfig: crypto.provider.&lt;primitive&gt; = tên provider (vd. SunJCE, BC) hoặc auto;
+ *   crypto.provider.calibrate=false để dùng provider mặc định mà không đo.
+ * - KeyFactory (đọc khóa trong KeyUtil): RSA theo provider của cipher RSA; X25519/Ed25519 theo
+ *   crypto.provider.x25519 / crypto.provider.ed25519 nếu có, ngược lại mặc định của JDK (không đo).
+ * Các InstancePool trong CryptoUtils/KeyUtil lấy instance qua lớp này.
+ */
+public final class CryptoProviders {
+
+    private static final Logger logger = Logger.getLogger(CryptoProviders.class.getName());
+
+    private static final String BOUNCY_CASTLE_CLASS = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+    private static final String AUTO = "auto";
+    private static final double MIN_SPEEDUP = 1.10;
+
+    // Primitive được chọn provider; transformation ghi rõ padding để mọi provider cho cùng kết quả
+    public enum Primitive {
+        AES_GCM("Cipher", "AES/GCM/NoPadding"),
+        RSA("Cipher", "RSA/ECB/PKCS1Padding"),
+        SHA256_WITH_RSA("Signature", "SHA256withRSA"),
+        SHA256("MessageDigest", "SHA-256");
+
+        private final String type;
+        private final String algorithm;
+
+        Primitive(String type, String algorithm) {
+            this.type = type;
+            this.algorithm = algorithm;
+        }
+
+        public String getAlgorithm() { return algorithm; }
+
+        // Tên dùng trong cấu hình: aes-gcm, rsa, sha256withrsa, sha256
+        public String configName() {
+            return name().toLowerCase().replace("_with_", "with").replace('_', '-');
+        }
+    }
+
+    private static volatile CryptoProviders instance;
+
+    private final List<Provider> candidates;
+    private final Map<Primitive, Provider> selected;
+    private final Map<Primitive, Map<String, Double>> scores;
+    private final String source;
+
+    private CryptoProviders(List<Provider> candidates, Map<Primitive, Provider> selected,
+                            Map<Primitive, Map<String, Double>> scores, String source) {
+        this.candidates = candidates;
+        this.selected = selected;
+        this.scores = scores;
+        this.source = source;
+    }
+
+    // Lựa chọn dùng chung; lần gọi đầu tiên đọc cấu hình, file cache hoặc chạy đo
+    public static CryptoProviders getInstance() {
+        CryptoProviders current = instance;
+        if (current == null) {
+            synchronized (CryptoProviders.class) {
+                current = instance;
+                if (current == null) {
+                    current = select(AppConfig.getInstance());
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Provider đã chọn cho primitive
+    public Provider getProvider(Primitive primitive) {
+        return selected.get(primitive);
+    }
+
+    // Nguồn của lựa chọn: calibrated, cached hoặc default
+    public String getSource() {
+        return source;
+    }
+
+    // Báo cáo một dòng mỗi primitive, kèm số đo (ops/s) của các ứng viên nếu có
+    public String describe() {
+        StringBuilder report = new StringBuilder("Crypto providers (" + source + "):");
+        for (Primitive primitive : Primitive.values()) {
+            report.append("\n  ").append(primitive.configName()).append(" -> ")
+                  .append(selected.get(primitive).getName());
+            Map<String, Double> measured = scores.get(primitive);
+            if (measured != null && !measured.isEmpty()) {
+                report.append(" ").append(formatScores(measured));
+            }
+        }
+        return report.toString();
+    }
+
+    public static Cipher cipher(Primitive primitive) throws GeneralSecurityException {
+        return Cipher.getInstance(primitive.algorithm, getInstance().getProvider(primitive));
+    }
+
+    public static Signature signature(Primitive primitive) throws GeneralSecurityException {
+        return Signature.getInstance(primitive.algorithm, getInstance().getProvider(primitive));
+    }
+
+    public static MessageDigest sha256() throws GeneralSecurityException {
+        return MessageDigest.getInstance(Primitive.SHA256.algorithm, getInstance().getProvider(Primitive.SHA256));
+    }
+
+    // KeyFactory cho RSA, X25519 hoặc Ed25519; provider được chọn không có thuật toán này thì dùng mặc định
+    public static KeyFactory keyFactory(String algorithm) throws GeneralSecurityException {
+        CryptoProviders providers = getInstance();
+        Provider provider = "RSA".equals(algorithm)
+                ? providers.getProvider(Primitive.RSA)
+                : byName(providers.candidates, AppConfig.getInstance().getCryptoProvider(algorithm.toLowerCase()));
+        if (provider != null) {
+            try {
+                return KeyFactory.getInstance(algorithm, provider);
+            } catch (NoSuchAlgorithmException e) {
+                logger.fine("Provider " + provider.getName() + " has no " + algorithm + " KeyFactory, using default");
+            }
+        }
+        return KeyFactory.getInstance(algorithm);
+    }
+
+    private static CryptoProviders select(AppConfig config) {
+        List<Provider> candidates = candidates();
+        Map<Primitive, Provider> selected = new EnumMap<>(Primitive.class);
+        Map<Primitive, Map<String, Double>> scores = new EnumMap<>(Primitive.class);
+        Map<Primitive, Provider> automatic = new EnumMap<>(Primitive.class);
+        boolean calibrate = config.isProviderCalibrationEnabled();
+        Path cacheFile = Paths.get(config.getProviderCacheFile());
+        String fingerprint = environmentFingerprint(candidates);
+        Properties cached = calibrate ? loadCache(cacheFile, fingerprint) : null;
+        boolean measuredAny = false;
+        boolean usedCache = false;
+        // Một cặp khóa RSA dùng chung cho RSA và SHA256withRSA, chỉ lấy khi thật sự phải đo
+        KeyPair[] rsaKeyPair = new KeyPair[1];
+
+        for (Primitive primitive : Primitive.values()) {
+            List<Provider> supporting = supporting(candidates, primitive);
+            Provider provider = null;
+
+            String override = config.getCryptoProvider(primitive.configName());
+            if (!AUTO.equalsIgnoreCase(override)) {
+                provider = byName(supporting, override);
+                if (provider == null) {
+                    logger.warning("Configured provider " + override + " does not offer "
+                            + primitive.algorithm + ", selecting automatically");
+                }
+            }
+            if (provider == null && cached != null) {
+                provider = byName(supporting, cached.getProperty(primitive.configName()));
+                usedCache |= provider != null;
+            }
+            if (provider == null && calibrate && supporting.size() > 1) {
+                Map<String, Double> measured = calibrate(primitive, supporting, config.getProviderCalibrationMillis(),
+                        rsaKeyPair);
+                scores.put(primitive, measured);
+                provider = fastest(supporting, measured);
+                measuredAny = true;
+            }
+            if (provider == null) {
+                provider = supporting.get(0);
+            }
+            selected.put(primitive, provider);
+            if (AUTO.equalsIgnoreCase(override)) {
+                automatic.put(primitive, provider);
+            }
+        }
+
+        // Chỉ lưu lựa chọn tự động, để bỏ ghi đè trong cấu hình thì lần sau không còn hiệu lực
+        if (measuredAny) {
+            saveCache(cacheFile, fingerprint, automatic);
+        }
+        CryptoProviders providers = new CryptoProviders(candidates, selected, scores,
+                measuredAny ? "calibrated" : usedCache ? "cached" : "default");
+        logger.info(providers.describe());
+        return providers;
+    }
+
+    // Provider đã đăng ký (theo thứ tự ưu tiên của JDK) + BouncyCastle nếu có trên classpath
+    private static List<Provider> candidates() {
+        List<Provider> candidates = new ArrayList<>(List.of(Security.getProviders()));
+        if (candidates.stream().noneMatch(p -> "BC".equals(p.getName()))) {
+            try {
+                Class<?> bcClass = Class.forName(BOUNCY_CASTLE_CLASS);
+                candidates.add((Provider) bcClass.getDeclaredConstructor().newInstance());
+            } catch (ClassNotFoundException e) {
+                logger.fine("BouncyCastle not on classpath");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warning("Could not load BouncyCastle provider: " + e.getMessage());
+            }
+        }
+        return candidates;
+    }
+
+    private static List<Provider> supporting(List<Provider> candidates, Primitive primitive) {
+        List<Provider> supporting = new ArrayList<>();
+        for (Provider provider : candidates) {
+            try {
+                switch (primitive.type) {
+                    case "Cipher":
+                        Cipher.getInstance(primitive.algorithm, provider);
+                        break;
+                    case "Signature":
+                        Signature.getInstance(primitive.algorithm, provider);
+                        break;
+                    default:
+                        MessageDigest.getInstance(primitive.algorithm, provider);
+                        break;
+                }
+                supporting.add(provider);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                // Provider không hỗ trợ primitive này (hoặc chưa được cấu hình, vd. SunPKCS11)
+            }
+        }
+        if (supporting.isEmpty()) {
+            throw new IllegalStateException("No provider offers " + primitive.algorithm);
+        }
+        return supporting;
+    }
+
+    private static Provider byName(List<Provider> providers, String name) {
+        if (name == null) {
+            return null;
+        }
+        for (Provider provider : providers) {
+            if (provider.getName().equalsIgnoreCase(name.trim())) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    // Nhanh nhất theo số đo; provider mặc định (đứng đầu) chỉ bị thay khi chậm hơn rõ rệt,
+    // để sai số đo không làm lựa chọn thay đổi qua lại giữa các lần khởi động
+    private static Provider fastest(List<Provider> providers, Map<String, Double> measured) {
+        Provider best = null;
+        double bestScore = 0;
+        for (Provider provider : providers) {
+            Double score = measured.get(provider.getName());
+            if (score != null && score > bestScore) {
+                best = provider;
+                bestScore = score;
+            }
+        }
+        Double defaultScore = measured.get(providers.get(0).getName());
+        if (defaultScore != null && bestScore < defaultScore * MIN_SPEEDUP) {
+            return providers.get(0);
+        }
+        return best;
+    }
+
+    // Đo ops/s của từng ứng viên; ứng viên lỗi bị loại (không có trong kết quả)
+    private static Map<String, Double> calibrate(Primitive primitive, List<Provider> providers, long millis,
+                                                 KeyPair[] rsaKeyPair) {
+        Map<String, Double> measured = new LinkedHashMap<>();
+        Fixture fixture;
+        try {
+            fixture = new Fixture(primitive, rsaKeyPair);
+        } catch (Exception e) {
+            logger.warning("Provider calibration setup failed for " + primitive.algorithm + ": " + e.getMessage());
+            return measured;
+        }
+        for (Provider provider : providers) {
+            try {
+                Operation operation = fixture.operation(provider);
+                // Khởi động cho JIT trước khi đo: intrinsic AES/GHASH của SunJCE chỉ có sau khi C2 biên dịch
+                run(operation, millis * 2);
+                measured.put(provider.getName(), run(operation, millis));
+            } catch (Exception e) {
+                logger.fine("Provider " + provider.getName() + " failed calibration for "
+                        + primitive.algorithm + ": " + e.getMessage());
+            }
+        }
+        return measured;
+    }
+
+    private static double run(Operation operation, long millis) throws Exception {
+        long deadline = System.nanoTime() + Math.max(1, millis) * 1_000_000L;
+        long start = System.nanoTime();
+        long ops = 0;
+        do {
+            operation.run();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return ops * 1e9 / (System.nanoTime() - start);
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Dữ liệu đo cho một primitive: 8 KB cho AES-GCM và SHA-256 (nhiều vòng lặp ngắn để JIT sớm),
+     * một cặp khóa RSA-2048 cho RSA (giải bọc là thao tác tốn kém) và chữ ký. Cặp khóa lấy từ KeyPairPool
+     * (thường đã sinh sẵn ở nền) và dùng chung giữa hai primitive, thay vì sinh mới trên đường khởi động.
+     */
+    private static final class Fixture {
+        private final Primitive primitive;
+        private final byte[] data = new byte[8 * 1024];
+        private SecretKey aesKey;
+        private KeyPair rsaKeyPair;
+        private byte[] wrapped;
+
+        Fixture(Primitive primitive, KeyPair[] sharedRsaKeyPair) throws Exception {
+            this.primitive = primitive;
+            if (primitive == Primitive.AES_GCM || primitive == Primitive.RSA) {
+                aesKey = CryptoUtils.generateAESKey();
+            }
+            if (primitive == Primitive.RSA || primitive == Primitive.SHA256_WITH_RSA) {
+                if (sharedRsaKeyPair[0] == null) {
+                    sharedRsaKeyPair[0] = KeyPairPool.getInstance().take(2048);
+                }
+                rsaKeyPair = sharedRsaKeyPair[0];
+            }
+            if (primitive == Primitive.RSA) {
+                Cipher cipher = Cipher.getInstance(primitive.algorithm);
+                cipher.init(Cipher.WRAP_MODE, rsaKeyPair.getPublic());
+                wrapped = cipher.wrap(aesKey);
+            }
+        }
+
+        Operation operation(Provider provider) throws Exception {
+            switch (primitive) {
+                case AES_GCM: {
+                    Cipher cipher = Cipher.getInstance(primitive.algorithm, provider);
+                    byte[] out = new byte[data.length + ChunkedAeadOutputStream.TAG_LENGTH];
+                    byte[] nonce = new byte[12];
+                    int[] counter = { 0 };
+                    return () -> {
+                        // Nonce mới mỗi lần: provider không cho init lại GCM với cùng key + nonce
+                        int c = ++counter[0];
+                        nonce[8] = (byte) (c >>> 24);
+                        nonce[9] = (byte) (c >>> 16);
+                        nonce[10] = (byte) (c >>> 8);
+                        nonce[11] = (byte) c;
+                        cipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, nonce));
+                        cipher.doFinal(data, 0, data.length, out, 0);
+                    };
+                }
+                case RSA: {
+                    Cipher cipher = Cipher.getInstance(primitive.algorithm, provider);
+                    return () -> {
+                        cipher.init(Cipher.UNWRAP_MODE, rsaKeyPair.getPrivate());
+                        cipher.unwrap(wrapped, "AES", Cipher.SECRET_KEY);
+                    };
+                }
+                case SHA256_WITH_RSA: {
+                    Signature signature = Signature.getInstance(primitive.algorithm, provider);
+                    return () -> {
+                        signature.initSign(rsaKeyPair.getPrivate());
+                        signature.update(data, 0, 1024);
+                        signature.sign();
+                    };
+                }
+                default: {
+                    MessageDigest digest = MessageDigest.getInstance(primitive.algorithm, provider);
+                    return () -> digest.digest(data);
+                }
+            }
+        }
+    }
+
+    // Kết quả đo chỉ còn đúng khi JDK, kiến trúc CPU và danh sách provider không đổi
+    private static String environmentFingerprint(List<Provider> candidates) {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(System.getProperty("java.vm.name")).append(' ')
+                   .append(System.getProperty("java.runtime.version")).append(' ')
+                   .append(System.getProperty("os.arch")).append(' ')
+                   .append(Runtime.getRuntime().availableProcessors());
+        for (Provider provider : candidates) {
+            fingerprint.append(' ').append(provider.getName()).append('/').append(provider.getVersionStr());
+        }
+        return fingerprint.toString();
+    }
+
+    private static Properties loadCache(Path cacheFile, String fingerprint) {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        Properties cached = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            cached.load(in);
+        } catch (IOException e) {
+            logger.warning("Could not read provider cache " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+        if (!fingerprint.equals(cached.getProperty("environment"))) {
+            logger.info("Crypto environment changed, recalibrating providers");
+            return null;
+        }
+        return cached;
+    }
+
+    private static void saveCache(Path cacheFile, String fingerprint, Map<Primitive, Provider> selected) {
+        Properties cached = new Properties();
+        cached.setProperty("environment", fingerprint);
+        selected.forEach((primitive, provider) -> cached.setProperty(primitive.configName(), provider.getName()));
+        try {
+            if (cacheFile.getParent() != null) {
+                Files.createDirectories(cacheFile.getParent());
+            }
+            try (OutputStream out = Files.newOutputStream(cacheFile)) {
+                cached.store(out, "Crypto provider calibration");
+            }
+        } catch (IOException e) {
+            logger.warning("Could not write provider cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    private static String formatScores(Map<String, Double> measured) {
+        StringBuilder text = new StringBuilder("[");
+        measured.forEach((name, score) -> {
+            if (text.length() > 1) {
+                text.append(", ");
+            }
+            text.append(name).append(' ').append(Math.round(score)).append(" ops/s");
+        });
+        return text.append(']').toString();
+    }
+}
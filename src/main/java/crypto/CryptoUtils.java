@@ -1,5 +1,7 @@
 package crypto;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
@@ -12,65 +14,138 @@ import javax.crypto.SecretKey;
 /**
  * CryptoUtils: hỗ trợ mã hóa + chữ ký số.
  * - AES: mã hóa/giải mã nội dung mail.
- * - RSA: bọc/giải bọc AES key, ký/verify.
+ * - RSA: bọc/giải bọc AES key, ký/verify (trên message hoặc trên SHA-256 digest đã tính sẵn).
+ * Cipher/Signature/KeyGenerator được tái sử dụng qua InstancePool thay vì getInstance mỗi lần gọi.
  */
 public class CryptoUtils {
 
-    // Tạo AES key 256-bit
-    public static SecretKey generateAESKey() throws Exception {
+    static final InstancePool<KeyGenerator> AES_KEY_GENERATORS = new InstancePool<>(() -> {
         KeyGenerator gen = KeyGenerator.getInstance("AES");
         gen.init(256);
-        return gen.generateKey();
+        return gen;
+    });
+    static final InstancePool<Cipher> AES_CIPHERS = new InstancePool<>(() -> Cipher.getInstance("AES"));
+    // AES-GCM, RSA và chữ ký lấy từ provider đã chọn (xem CryptoProviders)
+    static final InstancePool<Cipher> AES_GCM_CIPHERS = new InstancePool<>(
+            () -> CryptoProviders.cipher(CryptoProviders.Primitive.AES_GCM));
+    static final InstancePool<Cipher> RSA_CIPHERS = new InstancePool<>(
+            () -> CryptoProviders.cipher(CryptoProviders.Primitive.RSA));
+    static final InstancePool<Signature> RSA_SIGNATURES = new InstancePool<>(
+            () -> CryptoProviders.signature(CryptoProviders.Primitive.SHA256_WITH_RSA));
+    // Ký trên digest có sẵn: NONEwithRSA dựa trên cipher RSA/PKCS1, nên lấy từ provider của cipher RSA
+    static final InstancePool<Signature> RSA_DIGEST_SIGNATURES = new InstancePool<>(
+            () -> Signature.getInstance("NONEwithRSA",
+                    CryptoProviders.getInstance().getProvider(CryptoProviders.Primitive.RSA)));
+
+    // DigestInfo (DER) của SHA-256, đứng trước digest trong chữ ký PKCS#1 v1.5
+    private static final byte[] SHA256_DIGEST_INFO = {
+            0x30, 0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x01,
+            0x05, 0x00, 0x04, 0x20 };
+    private static final int SHA256_LENGTH = 32;
+
+    // Tạo AES key 256-bit
+    public static SecretKey generateAESKey() throws Exception {
+        return AES_KEY_GENERATORS.use(KeyGenerator::generateKey);
     }
 
     // Mã hóa AES (Base64 output)
     public static String encryptAES(String plainText, SecretKey key) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        byte[] encrypted = cipher.doFinal(plainText.getBytes("UTF-8"));
+        byte[] encrypted = AES_CIPHERS.use(cipher -> {
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher.doFinal(plainText.getBytes("UTF-8"));
+        });
         return Base64.getEncoder().encodeToString(encrypted);
     }
 
     // Giải mã AES
     public static String decryptAES(String cipherText, SecretKey key) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, key);
         byte[] decoded = Base64.getDecoder().decode(cipherText);
-        byte[] decrypted = cipher.doFinal(decoded);
+        byte[] decrypted = AES_CIPHERS.use(cipher -> {
+            cipher.init(Cipher.DECRYPT_MODE, key);
+            return cipher.doFinal(decoded);
+        });
         return new String(decrypted, "UTF-8");
     }
 
+    // Mã hóa AES-GCM dạng stream theo chunk (bộ nhớ cố định, không phụ thuộc kích thước)
+    public static void encryptAESStream(InputStream in, OutputStream out, SecretKey key) throws Exception {
+        ChunkedAeadOutputStream encrypting = new ChunkedAeadOutputStream(out, key);
+        in.transferTo(encrypting);
+        encrypting.finish();
+    }
+
+    // Giải mã stream AES-GCM theo chunk
+    public static void decryptAESStream(InputStream in, OutputStream out, SecretKey key) throws Exception {
+        new ChunkedAeadInputStream(in, key).transferTo(out);
+    }
+
     // Bọc AES key bằng RSA PublicKey
     public static String wrapKeyRSA(SecretKey key, PublicKey publicKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.WRAP_MODE, publicKey);
-        byte[] wrapped = cipher.wrap(key);
+        byte[] wrapped = RSA_CIPHERS.use(cipher -> {
+            cipher.init(Cipher.WRAP_MODE, publicKey);
+            return cipher.wrap(key);
+        });
         return Base64.getEncoder().encodeToString(wrapped);
     }
 
     // Giải bọc AES key bằng RSA PrivateKey
     public static SecretKey unwrapKeyRSA(String wrappedKey, PrivateKey privateKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.UNWRAP_MODE, privateKey);
         byte[] decoded = Base64.getDecoder().decode(wrappedKey);
-        return (SecretKey) cipher.unwrap(decoded, "AES", Cipher.SECRET_KEY);
+        return RSA_CIPHERS.use(cipher -> {
+            cipher.init(Cipher.UNWRAP_MODE, privateKey);
+            return (SecretKey) cipher.unwrap(decoded, "AES", Cipher.SECRET_KEY);
+        });
     }
 
     // Tạo chữ ký số bằng RSA
     public static String sign(String message, PrivateKey privateKey) throws Exception {
-        Signature sig = Signature.getInstance("SHA256withRSA");
-        sig.initSign(privateKey);
-        sig.update(message.getBytes("UTF-8"));
-        byte[] signature = sig.sign();
+        byte[] signature = RSA_SIGNATURES.use(sig -> {
+            sig.initSign(privateKey);
+            sig.update(message.getBytes("UTF-8"));
+            return sig.sign();
+        });
         return Base64.getEncoder().encodeToString(signature);
     }
 
+    // Ký trên SHA-256 digest đã tính sẵn; chữ ký giống hệt sign(message) với SHA256withRSA
+    public static String signDigest(byte[] sha256, PrivateKey privateKey) throws Exception {
+        byte[] digestInfo = digestInfo(sha256);
+        byte[] signature = RSA_DIGEST_SIGNATURES.use(sig -> {
+            sig.initSign(privateKey);
+            sig.update(digestInfo);
+            return sig.sign();
+        });
+        return Base64.getEncoder().encodeToString(signature);
+    }
+
+    // Xác minh chữ ký SHA256withRSA trên SHA-256 digest đã tính sẵn
+    public static boolean verifyDigest(byte[] sha256, String signatureBase64, PublicKey publicKey) throws Exception {
+        byte[] signature = Base64.getDecoder().decode(signatureBase64);
+        byte[] digestInfo = digestInfo(sha256);
+        return RSA_DIGEST_SIGNATURES.use(sig -> {
+            sig.initVerify(publicKey);
+            sig.update(digestInfo);
+            return sig.verify(signature);
+        });
+    }
+
     // Xác minh chữ ký số
     public static boolean verify(String message, String signatureBase64, PublicKey publicKey) throws Exception {
-        Signature sig = Signature.getInstance("SHA256withRSA");
-        sig.initVerify(publicKey);
-        sig.update(message.getBytes("UTF-8"));
         byte[] signature = Base64.getDecoder().decode(signatureBase64);
-        return sig.verify(signature);
+        return RSA_SIGNATURES.use(sig -> {
+            sig.initVerify(publicKey);
+            sig.update(message.getBytes("UTF-8"));
+            return sig.verify(signature);
+        });
+    }
+
+    private static byte[] digestInfo(byte[] sha256) {
+        if (sha256.length != SHA256_LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-256 digest: " + sha256.length + " bytes");
+        }
+        byte[] digestInfo = new byte[SHA256_DIGEST_INFO.length + SHA256_LENGTH];
+        System.arraycopy(SHA256_DIGEST_INFO, 0, digestInfo, 0, SHA256_DIGEST_INFO.length);
+        System.arraycopy(sha256, 0, digestInfo, SHA256_DIGEST_INFO.length, SHA256_LENGTH);
+        return digestInfo;
     }
 }
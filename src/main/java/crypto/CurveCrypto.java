@@ -0,0 +1,144 @@
+package crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * CurveCrypto: bộ thuật toán dựa trên đường cong elliptic (có sẵn trong JDK).
+ * - X25519: thỏa thuận khóa với cặp khóa tạm (ephemeral), KEK = HKDF-SHA256(shared secret),
+ *   AES key được bọc bằng AES Key Wrap (RFC 3394).
+ * - Ed25519: ký/verify.
+ * Nhanh hơn RSA nhiều bậc cả khi sinh khóa lẫn khi bọc khóa/ký từng message.
+ */
+public class CurveCrypto {
+
+    public static final String KEY_WRAP_ALGORITHM = "X25519-HKDF-SHA256-AESKW";
+    public static final String SIGNATURE_ALGORITHM = "Ed25519";
+
+    private static final byte[] HKDF_INFO = "encryptmail aes key wrap".getBytes(StandardCharsets.US_ASCII);
+
+    static final InstancePool<KeyPairGenerator> X25519_GENERATORS = new InstancePool<>(
+            () -> KeyPairGenerator.getInstance("X25519"));
+    static final InstancePool<KeyAgreement> X25519_AGREEMENTS = new InstancePool<>(
+            () -> KeyAgreement.getInstance("X25519"));
+    static final InstancePool<Cipher> AES_WRAP_CIPHERS = new InstancePool<>(() -> Cipher.getInstance("AESWrap"));
+    static final InstancePool<Mac> HMAC_SHA256 = new InstancePool<>(() -> Mac.getInstance("HmacSHA256"));
+    static final InstancePool<Signature> ED25519_SIGNATURES = new InstancePool<>(
+            () -> Signature.getInstance("Ed25519"));
+
+    // Sinh cặp khóa X25519 (dùng cho mã hóa)
+    public static KeyPair generateX25519KeyPair() throws Exception {
+        return X25519_GENERATORS.use(KeyPairGenerator::generateKeyPair);
+    }
+
+    // Sinh cặp khóa Ed25519 (dùng cho chữ ký)
+    public static KeyPair generateEd25519KeyPair() throws Exception {
+        return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+    }
+
+    // Khóa X25519? (JDK báo thuật toán là "XDH")
+    public static boolean isX25519(Key key) {
+        return "XDH".equals(key.getAlgorithm()) || "X25519".equals(key.getAlgorithm());
+    }
+
+    // Khóa Ed25519? (JDK báo thuật toán là "EdDSA")
+    public static boolean isEd25519(Key key) {
+        return "EdDSA".equals(key.getAlgorithm()) || "Ed25519".equals(key.getAlgorithm());
+    }
+
+    // Bọc AES key cho người nhận: 1 byte độ dài + khóa tạm (X.509) + AES-KW(KEK, AES key), Base64
+    public static String wrapKey(SecretKey aesKey, PublicKey recipientKey) throws Exception {
+        KeyPair ephemeral = generateX25519KeyPair();
+        byte[] ephemeralPublic = ephemeral.getPublic().getEncoded();
+        SecretKey kek = deriveKek(ephemeral.getPrivate(), recipientKey, ephemeralPublic);
+        byte[] wrapped = AES_WRAP_CIPHERS.use(cipher -> {
+            cipher.init(Cipher.WRAP_MODE, kek);
+            return cipher.wrap(aesKey);
+        });
+
+        byte[] out = new byte[1 + ephemeralPublic.length + wrapped.length];
+        out[0] = (byte) ephemeralPublic.length;
+        System.arraycopy(ephemeralPublic, 0, out, 1, ephemeralPublic.length);
+        System.arraycopy(wrapped, 0, out, 1 + ephemeralPublic.length, wrapped.length);
+        return Base64.getEncoder().encodeToString(out);
+    }
+
+    // Giải bọc AES key bằng private key X25519 của người nhận
+    public static SecretKey unwrapKey(String wrappedKey, PrivateKey recipientKey) throws Exception {
+        byte[] in = Base64.getDecoder().decode(wrappedKey);
+        int ephemeralLength = in.length > 0 ? in[0] & 0xff : 0;
+        if (ephemeralLength == 0 || in.length <= 1 + ephemeralLength) {
+            throw new IllegalArgumentException("Invalid X25519 wrapped key");
+        }
+        byte[] ephemeralPublic = Arrays.copyOfRange(in, 1, 1 + ephemeralLength);
+        byte[] wrapped = Arrays.copyOfRange(in, 1 + ephemeralLength, in.length);
+
+        PublicKey ephemeral = KeyUtil.decodePublicKey(ephemeralPublic);
+        SecretKey kek = deriveKek(recipientKey, ephemeral, ephemeralPublic);
+        return (SecretKey) AES_WRAP_CIPHERS.use(cipher -> {
+            cipher.init(Cipher.UNWRAP_MODE, kek);
+            return cipher.unwrap(wrapped, "AES", Cipher.SECRET_KEY);
+        });
+    }
+
+    // Ký message bằng Ed25519 (Base64 output)
+    public static String sign(String message, PrivateKey privateKey) throws Exception {
+        byte[] signature = ED25519_SIGNATURES.use(sig -> {
+            sig.initSign(privateKey);
+            sig.update(message.getBytes(StandardCharsets.UTF_8));
+            return sig.sign();
+        });
+        return Base64.getEncoder().encodeToString(signature);
+    }
+
+    // Verify chữ ký Ed25519
+    public static boolean verify(String message, String signature, PublicKey publicKey) throws Exception {
+        byte[] decoded = Base64.getDecoder().decode(signature);
+        return ED25519_SIGNATURES.use(sig -> {
+            sig.initVerify(publicKey);
+            sig.update(message.getBytes(StandardCharsets.UTF_8));
+            return sig.verify(decoded);
+        });
+    }
+
+    // KEK = HKDF-SHA256(salt = khóa tạm, IKM = X25519(priv, pub), info) -> AES-256
+    private static SecretKey deriveKek(PrivateKey privateKey, PublicKey publicKey, byte[] salt) throws Exception {
+        byte[] shared = X25519_AGREEMENTS.use(agreement -> {
+            agreement.init(privateKey);
+            agreement.doPhase(publicKey, true);
+            return agreement.generateSecret();
+        });
+        try {
+            byte[] okm = HMAC_SHA256.use(mac -> {
+                // HKDF-Extract
+                mac.init(new SecretKeySpec(salt, "HmacSHA256"));
+                byte[] prk = mac.doFinal(shared);
+                // HKDF-Expand, một block là đủ cho 32 byte
+                mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+                mac.update(HKDF_INFO);
+                mac.update((byte) 1);
+                byte[] t = mac.doFinal();
+                Arrays.fill(prk, (byte) 0);
+                return t;
+            });
+            SecretKey kek = new SecretKeySpec(okm, "AES");
+            Arrays.fill(okm, (byte) 0);
+            return kek;
+        } finally {
+            Arrays.fill(shared, (byte) 0);
+        }
+    }
+}
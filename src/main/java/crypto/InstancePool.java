@@ -0,0 +1,76 @@
+package crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InstancePool: pool không khóa cho các đối tượng JCA (Cipher, Signature, KeyFactory...).
+ * - Tránh gọi getInstance (duyệt danh sách provider) trên mỗi message.
+ * - Mỗi instance chỉ được một thread dùng tại một thời điểm (borrow/release).
+ * - Không dùng ThreadLocal hay synchronized nên an toàn cho cả virtual thread
+ *   (không tạo một instance cho mỗi virtual thread, không pin carrier thread).
+ * Người dùng luôn phải init lại instance trước khi dùng.
+ */
+public final class InstancePool<T> {
+
+    @FunctionalInterface
+    public interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    @FunctionalInterface
+    public interface Operation<T, R> {
+        R apply(T instance) throws Exception;
+    }
+
+    private final Factory<T> factory;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public InstancePool(Factory<T> factory) {
+        this(factory, Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    public InstancePool(Factory<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    // Lấy instance từ pool, tạo mới nếu pool rỗng
+    public T borrow() throws GeneralSecurityException {
+        T instance = idle.poll();
+        if (instance != null) {
+            idleCount.decrementAndGet();
+            return instance;
+        }
+        return factory.create();
+    }
+
+    // Trả instance về pool; bỏ đi nếu pool đã đầy
+    public void release(T instance) {
+        if (instance == null) {
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(instance);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    // Mượn instance, chạy thao tác rồi trả lại
+    public <R> R use(Operation<T, R> operation) throws Exception {
+        T instance = borrow();
+        try {
+            return operation.apply(instance);
+        } finally {
+            release(instance);
+        }
+    }
+
+    public int idleCount() {
+        return idleCount.get();
+    }
+}
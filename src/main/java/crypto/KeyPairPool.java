@@ -0,0 +1,179 @@
+package crypto;
+
+import java.lang.management.ManagementFactory;
+import java.security.KeyPair;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import config.AppConfig;
+
+/**
+ * KeyPairPool: kho cặp khóa RSA sinh sẵn ở nền, mỗi kích thước khóa một hàng đợi.
+ * - Khi số cặp khóa xuống dưới low watermark, một thread nền độ ưu tiên thấp sinh thêm đến high watermark.
+ * - take() lấy từ pool nếu có, nếu pool rỗng thì sinh trực tiếp (không bao giờ chờ thread nền).
+ * - Có số liệu: độ sâu từng pool, số lần lấy trúng/trượt, số cặp khóa đã sinh nền (xem KeyPairPoolMXBean).
+ */
+public final class KeyPairPool implements KeyPairPoolMXBean {
+
+    public static final String OBJECT_NAME = "encryptmail:type=KeyPairPool";
+
+    private static final Logger logger = Logger.getLogger(KeyPairPool.class.getName());
+
+    private static KeyPairPool instance;
+
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final Map<Integer, Pool> pools = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+
+    public KeyPairPool(int lowWatermark, int highWatermark) {
+        this.lowWatermark = Math.max(0, lowWatermark);
+        this.highWatermark = Math.max(this.lowWatermark, highWatermark);
+        // Một thread daemon độ ưu tiên thấp: không tranh CPU với UI/gửi mail, không giữ JVM khi thoát
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "rsa-keypair-pool");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    // Pool dùng chung, cấu hình từ AppConfig (crypto.keypool.*); sinh sẵn cho các kích thước mặc định
+    // và đăng ký với JMX cùng CryptoMetrics (crypto.metrics.jmx)
+    public static synchronized KeyPairPool getInstance() {
+        if (instance == null) {
+            AppConfig config = AppConfig.getInstance();
+            instance = new KeyPairPool(config.getKeyPoolLowWatermark(), config.getKeyPoolHighWatermark());
+            for (int keySize : config.getKeyPoolKeySizes()) {
+                instance.prefill(keySize);
+            }
+            if (config.isCryptoMetricsJmxEnabled()) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+                } catch (Exception e) {
+                    logger.warning("Could not register the key pair pool with JMX: " + e.getMessage());
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Lấy một cặp khóa: từ pool nếu có, ngược lại sinh ngay trên thread hiện tại
+    public KeyPair take(int keySize) throws Exception {
+        Pool pool = pool(keySize);
+        KeyPair keyPair = pool.poll();
+        if (keyPair != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        refillIfLow(keySize, pool);
+        return keyPair != null ? keyPair : KeyUtil.generateRSAKeyPair(keySize);
+    }
+
+    // Bắt đầu sinh nền cho một kích thước khóa (ví dụ lúc khởi động)
+    public void prefill(int keySize) {
+        refillIfLow(keySize, pool(keySize));
+    }
+
+    // Số cặp khóa đang có sẵn cho một kích thước
+    public int getDepth(int keySize) {
+        Pool pool = pools.get(keySize);
+        return pool == null ? 0 : pool.depth.get();
+    }
+
+    // Độ sâu của mọi pool, theo kích thước khóa
+    @Override
+    public Map<Integer, Integer> getDepths() {
+        Map<Integer, Integer> depths = new TreeMap<>();
+        pools.forEach((keySize, pool) -> depths.put(keySize, pool.depth.get()));
+        return depths;
+    }
+
+    @Override
+    public long getHitCount() { return hits.sum(); }
+
+    @Override
+    public long getMissCount() { return misses.sum(); }
+
+    @Override
+    public long getGeneratedCount() { return generated.sum(); }
+
+    @Override
+    public int getLowWatermark() { return lowWatermark; }
+
+    @Override
+    public int getHighWatermark() { return highWatermark; }
+
+    // Dừng sinh nền; các cặp khóa còn lại vẫn lấy được
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Pool pool(int keySize) {
+        return pools.computeIfAbsent(keySize, size -> new Pool());
+    }
+
+    private void refillIfLow(int keySize, Pool pool) {
+        int depth = pool.depth.get();
+        if (highWatermark == 0 || (depth >= lowWatermark && depth > 0)) {
+            return;
+        }
+        // Mỗi kích thước chỉ có một tác vụ sinh nền tại một thời điểm
+        if (!pool.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> fill(keySize, pool));
+        } catch (RejectedExecutionException e) {
+            pool.refilling.set(false);
+        }
+    }
+
+    private void fill(int keySize, Pool pool) {
+        try {
+            while (pool.depth.get() < highWatermark && !Thread.currentThread().isInterrupted()) {
+                pool.offer(KeyUtil.generateRSAKeyPair(keySize));
+                generated.increment();
+            }
+            logger.fine("RSA-" + keySize + " key pair pool refilled to " + pool.depth.get());
+        } catch (Exception e) {
+            logger.warning("Background RSA-" + keySize + " key generation failed: " + e.getMessage());
+        } finally {
+            pool.refilling.set(false);
+        }
+    }
+
+    private static final class Pool {
+        final ConcurrentLinkedQueue<KeyPair> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicBoolean refilling = new AtomicBoolean();
+
+        KeyPair poll() {
+            KeyPair keyPair = queue.poll();
+            if (keyPair != null) {
+                depth.decrementAndGet();
+            }
+            return keyPair;
+        }
+
+        void offer(KeyPair keyPair) {
+            queue.offer(keyPair);
+            depth.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package crypto;
+
+import java.util.Map;
+
+/**
+ * KeyPairPoolMXBean: số liệu của KeyPairPool qua JMX, đăng ký là encryptmail:type=KeyPairPool
+ */
+public interface KeyPairPoolMXBean {
+
+    // Số cặp khóa đang có sẵn, theo kích thước khóa
+    Map<Integer, Integer> getDepths();
+
+    // Số lần take() lấy được cặp khóa sinh sẵn
+    long getHitCount();
+
+    // Số lần take() phải sinh trực tiếp vì pool rỗng
+    long getMissCount();
+
+    // Số cặp khóa đã sinh nền
+    long getGeneratedCount();
+
+    int getLowWatermark();
+
+    int getHighWatermark();
+}
@@ -6,10 +6,19 @@ import java.security.*;
 import java.security.spec.*;
 
 /**
- * KeyUtil: tiện ích quản lý RSA KeyPair (tạo, lưu, đọc).
+ * KeyUtil: tiện ích quản lý KeyPair RSA / X25519 / Ed25519 (tạo, lưu, đọc).
  */
 public class KeyUtil {
 
+    // KeyFactory dùng lại qua pool, tránh getInstance mỗi lần đọc khóa; provider chọn qua CryptoProviders
+    private static final InstancePool<KeyFactory> RSA_KEY_FACTORIES = new InstancePool<>(() -> CryptoProviders.keyFactory("RSA"));
+    private static final InstancePool<KeyFactory> X25519_KEY_FACTORIES = new InstancePool<>(() -> CryptoProviders.keyFactory("X25519"));
+    private static final InstancePool<KeyFactory> ED25519_KEY_FACTORIES = new InstancePool<>(() -> CryptoProviders.keyFactory("Ed25519"));
+
+    // OID 1.3.101.110 (X25519) và 1.3.101.112 (Ed25519): 06 03 2B 65 xx
+    private static final int OID_X25519 = 0x6E;
+    private static final int OID_ED25519 = 0x70;
+
     // Sinh cặp khóa RSA (2048-bit hoặc 4096-bit)
     public static KeyPair generateRSAKeyPair(int keySize) throws Exception {
         KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
@@ -36,20 +45,53 @@ public class KeyUtil {
     // Đọc PrivateKey từ file
     public static PrivateKey loadPrivateKey(String filename) throws Exception {
         try (FileInputStream fis = new FileInputStream(filename)) {
-            byte[] bytes = fis.readAllBytes();
-            PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(bytes);
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            return kf.generatePrivate(spec);
+            return decodePrivateKey(fis.readAllBytes());
         }
     }
 
     // Đọc PublicKey từ file
     public static PublicKey loadPublicKey(String filename) throws Exception {
         try (FileInputStream fis = new FileInputStream(filename)) {
-            byte[] bytes = fis.readAllBytes();
-            X509EncodedKeySpec spec = new X509EncodedKeySpec(bytes);
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            return kf.generatePublic(spec);
+            return decodePublicKey(fis.readAllBytes());
+        }
+    }
+
+    // Fingerprint của PublicKey: 16 byte đầu SHA-256(X.509) dạng hex
+    public static String fingerprint(PublicKey publicKey) throws Exception {
+        byte[] digest = CryptoProviders.sha256().digest(publicKey.getEncoded());
+        StringBuilder hex = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            hex.append(String.format("%02x", digest[i]));
+        }
+        return hex.toString();
+    }
+
+    // Dựng PrivateKey từ bytes PKCS#8
+    public static PrivateKey decodePrivateKey(byte[] bytes) throws Exception {
+        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(bytes);
+        return keyFactories(bytes).use(kf -> kf.generatePrivate(spec));
+    }
+
+    // Dựng PublicKey từ bytes X.509
+    public static PublicKey decodePublicKey(byte[] bytes) throws Exception {
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(bytes);
+        return keyFactories(bytes).use(kf -> kf.generatePublic(spec));
+    }
+
+    // Chọn KeyFactory theo OID thuật toán ở đầu bản mã hóa X.509/PKCS#8 (mặc định RSA)
+    private static InstancePool<KeyFactory> keyFactories(byte[] encoded) {
+        int limit = Math.min(encoded.length - 4, 16);
+        for (int i = 0; i < limit; i++) {
+            if (encoded[i] == 0x06 && encoded[i + 1] == 0x03 && encoded[i + 2] == 0x2B && encoded[i + 3] == 0x65) {
+                int id = encoded[i + 4] & 0xff;
+                if (id == OID_X25519) {
+                    return X25519_KEY_FACTORIES;
+                }
+                if (id == OID_ED25519) {
+                    return ED25519_KEY_FACTORIES;
+                }
+            }
         }
+        return RSA_KEY_FACTORIES;
     }
 }
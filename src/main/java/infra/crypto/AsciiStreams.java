@@ -0,0 +1,93 @@
+package infra.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Byte stream adapters over character buffers holding ASCII-only data (Base64 armor),
+ * so encrypted content can be streamed into and out of message text without
+ * materialising intermediate byte arrays.
+ */
+final class AsciiStreams {
+    
+    private AsciiStreams() {
+        // Utility class
+    }
+    
+    /**
+     * Stream that appends each written byte to the builder as an ASCII character
+     */
+    static OutputStream appendingTo(StringBuilder target) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                target.append((char) (b & 0x7f));
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) {
+                target.ensureCapacity(target.length() + len);
+                for (int i = off; i < off + len; i++) {
+                    target.append((char) (b[i] & 0x7f));
+                }
+            }
+        };
+    }
+    
+    /**
+     * Like {@link #appendingTo(StringBuilder)}, also feeding every written byte to the digest,
+     * so armored content is hashed in the same pass that produces it
+     */
+    static OutputStream appendingTo(StringBuilder target, MessageDigest digest) {
+        OutputStream appending = appendingTo(target);
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                appending.write(b);
+                digest.update((byte) b);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                appending.write(b, off, len);
+                digest.update(b, off, len);
+            }
+        };
+    }
+    
+    /**
+     * Stream that reads characters {@code [start, end)} of the sequence as ASCII bytes
+     */
+    static InputStream reading(CharSequence source, int start, int end) {
+        return new InputStream() {
+            private int pos = start;
+            
+            @Override
+            public int read() {
+                return pos < end ? source.charAt(pos++) & 0x7f : -1;
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (pos >= end) {
+                    return -1;
+                }
+                int n = Math.min(len, end - pos);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (byte) (source.charAt(pos++) & 0x7f);
+                }
+                return n;
+            }
+            
+            @Override
+            public int available() {
+                return end - pos;
+            }
+        };
+    }
+}
@@ -0,0 +1,157 @@
+package infra.crypto;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+import crypto.CurveCrypto;
+
+/**
+ * Header of the version 2 binary envelope. Layout (big-endian):
+ * <pre>
+ *   magic "SM" | version (1) | flags (1) | recipient count (2)
+ *   per recipient: [key wrap algorithm (1)] | fingerprint length (1) + bytes | wrapped key length (2) + bytes
+ *   content: chunked AES-GCM stream up to the end of the payload
+ * </pre>
+ * The algorithm byte is present when FLAG_KEY_ALGORITHMS is set; without it entries are RSA.
+ * The content stream is self-delimiting, so it is not length-prefixed and can be
+ * written and read without buffering.
+ */
+final class BinaryEnvelope {
+
+    static final int VERSION = 2;
+    /** Content was deflated before encryption */
+    static final int FLAG_DEFLATE = 0x01;
+    /** Recipient entries start with a key wrap algorithm byte */
+    static final int FLAG_KEY_ALGORITHMS = 0x02;
+
+    // Key wrap algorithm ids; names as reported by CryptoService.getKeyWrapAlgorithm
+    private static final String[] KEY_WRAP_ALGORITHMS = { null, "RSA", CurveCrypto.KEY_WRAP_ALGORITHM };
+    private static final byte[] MAGIC = { 'S', 'M' };
+    private static final int MAX_RECIPIENTS = 0xFFFF;
+
+    private final int flags;
+    private final List<Recipient> recipients;
+
+    BinaryEnvelope(int flags, List<Recipient> recipients) {
+        flags |= FLAG_KEY_ALGORITHMS;
+        if (recipients.size() > MAX_RECIPIENTS) {
+            throw new IllegalArgumentException("Too many recipients: " + recipients.size());
+        }
+        this.flags = flags;
+        this.recipients = Collections.unmodifiableList(recipients);
+    }
+
+    int getFlags() { return flags; }
+
+    boolean isCompressed() { return (flags & FLAG_DEFLATE) != 0; }
+
+    List<Recipient> getRecipients() { return recipients; }
+
+    /**
+     * Entry for the recipient key fingerprint (hex, as from KeyUtil.fingerprint)
+     * @return recipient entry or null
+     */
+    Recipient getRecipient(String fingerprint) {
+        byte[] wanted = HexFormat.of().parseHex(fingerprint);
+        for (Recipient recipient : recipients) {
+            if (Arrays.equals(recipient.fingerprint, wanted)) {
+                return recipient;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write the header; the caller continues with the content stream
+     */
+    void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(flags);
+        data.writeShort(recipients.size());
+        for (Recipient recipient : recipients) {
+            data.writeByte(algorithmId(recipient.algorithm));
+            data.writeByte(recipient.fingerprint.length);
+            data.write(recipient.fingerprint);
+            data.writeShort(recipient.wrappedKey.length);
+            data.write(recipient.wrappedKey);
+        }
+        data.flush();
+    }
+
+    /**
+     * Read the header, leaving the stream positioned at the content
+     * @throws IllegalArgumentException if the payload is not a version 2 envelope
+     */
+    static BinaryEnvelope readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readUnsignedByte() != MAGIC[0] || data.readUnsignedByte() != MAGIC[1]) {
+                throw new IllegalArgumentException("Invalid encrypted message format");
+            }
+            int version = data.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported envelope version: " + version);
+            }
+            int flags = data.readUnsignedByte();
+            int count = data.readUnsignedShort();
+            List<Recipient> recipients = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String algorithm = "RSA";
+                if ((flags & FLAG_KEY_ALGORITHMS) != 0) {
+                    int id = data.readUnsignedByte();
+                    if (id == 0 || id >= KEY_WRAP_ALGORITHMS.length) {
+                        throw new IllegalArgumentException("Unknown key wrap algorithm id: " + id);
+                    }
+                    algorithm = KEY_WRAP_ALGORITHMS[id];
+                }
+                byte[] fingerprint = new byte[data.readUnsignedByte()];
+                data.readFully(fingerprint);
+                byte[] wrappedKey = new byte[data.readUnsignedShort()];
+                data.readFully(wrappedKey);
+                recipients.add(new Recipient(algorithm, fingerprint, wrappedKey));
+            }
+            return new BinaryEnvelope(flags, recipients);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Encrypted envelope header is truncated");
+        }
+    }
+
+    private static int algorithmId(String algorithm) {
+        for (int i = 1; i < KEY_WRAP_ALGORITHMS.length; i++) {
+            if (KEY_WRAP_ALGORITHMS[i].equals(algorithm)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported key wrap algorithm: " + algorithm);
+    }
+
+    static class Recipient {
+        final String algorithm;
+        final byte[] fingerprint;
+        final byte[] wrappedKey;
+
+        Recipient(String algorithm, byte[] fingerprint, byte[] wrappedKey) {
+            if (fingerprint.length > 0xFF || wrappedKey.length > 0xFFFF) {
+                throw new IllegalArgumentException("Recipient entry too large");
+            }
+            this.algorithm = algorithm;
+            this.fingerprint = fingerprint;
+            this.wrappedKey = wrappedKey;
+        }
+
+        Recipient(String algorithm, String fingerprintHex, byte[] wrappedKey) {
+            this(algorithm, HexFormat.of().parseHex(fingerprintHex), wrappedKey);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package infra.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import crypto.CryptoProviders;
+
+/**
+ * Canonical form of signed text: the UTF-8 bytes of the whitespace-trimmed text.
+ * Characters are encoded into a small buffer and fed to the digest block by block,
+ * so no substring or full-size byte array is created.
+ */
+final class CanonicalText {
+    
+    private static final int BLOCK_SIZE = 8192;
+    
+    private CanonicalText() {
+        // Utility class
+    }
+    
+    /**
+     * SHA-256 of the canonical bytes of {@code text}
+     */
+    static byte[] sha256(CharSequence text) throws GeneralSecurityException {
+        int[] region = signedRegion(text, text.length());
+        MessageDigest digest = CryptoProviders.sha256();
+        update(digest, text, region[0], region[1]);
+        return digest.digest();
+    }
+    
+    /**
+     * Signed region of characters {@code [0, end)}: { start, end } with surrounding whitespace trimmed.
+     * Signing and verification both take the region from here.
+     */
+    static int[] signedRegion(CharSequence text, int end) {
+        int start = trimStart(text, 0, end);
+        return new int[] { start, trimEnd(text, start, end) };
+    }
+    
+    /**
+     * Feed the UTF-8 bytes of characters {@code [start, end)} to the digest.
+     * Unpaired surrogates become '?', as with String.getBytes.
+     */
+    static void update(MessageDigest digest, CharSequence text, int start, int end) {
+        byte[] block = new byte[BLOCK_SIZE];
+        int n = 0;
+        int i = start;
+        // ASCII needs no encoder; most signed text (Base64 armor) is entirely ASCII
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            block[n++] = (byte) c;
+            i++;
+            if (n == block.length) {
+                digest.update(block, 0, n);
+                n = 0;
+            }
+        }
+        digest.update(block, 0, n);
+        if (i == end) {
+            return;
+        }
+        
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.wrap(text, i, end);
+        ByteBuffer out = ByteBuffer.wrap(block);
+        boolean done;
+        do {
+            done = !encoder.encode(in, out, true).isOverflow();
+            if (done) {
+                encoder.flush(out);
+            }
+            out.flip();
+            digest.update(out);
+            out.clear();
+        } while (!done);
+    }
+    
+    private static int trimStart(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+    
+    private static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
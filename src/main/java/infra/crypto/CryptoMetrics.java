@@ -0,0 +1,510 @@
+package infra.crypto;
+
+import java.beans.ConstructorProperties;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.security.Key;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.crypto.SecretKey;
+import javax.management.ObjectName;
+
+import config.AppConfig;
+import crypto.CurveCrypto;
+
+/**
+ * Per-operation counters and latency histograms for the crypto and key services.
+ * Each operation is broken down by key type (e.g. RSA-2048, X25519, AES) and payload size bucket.
+ * Recording is lock-free and allocation-free (LongAdder counters, fixed log2 latency buckets),
+ * so it stays on in production; the shared instance is also published over JMX.
+ */
+public class CryptoMetrics implements CryptoMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(CryptoMetrics.class.getName());
+    
+    public static final String OBJECT_NAME = "encryptmail:type=CryptoMetrics";
+    
+    /** Size passed for operations whose cost does not depend on a payload */
+    public static final long NO_SIZE = -1;
+    
+    private static final String[] SIZE_BUCKETS = { "n/a", "<1K", "1K-16K", "16K-256K", "256K-4M", ">=4M" };
+    // Latency bucket i holds durations in [2^(i-1), 2^i) ns; the last one everything above ~9 minutes
+    private static final int LATENCY_BUCKETS = 40;
+    
+    private static CryptoMetrics instance;
+    
+    /**
+     * Instrumented operations
+     */
+    public enum Operation {
+        GENERATE_AES_KEY("generateAESKey"),
+        ENCRYPT_AES("encryptAES"),
+        DECRYPT_AES("decryptAES"),
+        WRAP_KEY("wrapKey"),
+        UNWRAP_KEY("unwrapKey"),
+        SIGN("sign"),
+        VERIFY("verify"),
+        KEY_LOAD("keyLoad");
+        
+        private final String label;
+        
+        Operation(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * A timed call
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws Exception;
+    }
+    
+    private final Map<Operation, ConcurrentHashMap<String, Series[]>> series = new EnumMap<>(Operation.class);
+    private final ConcurrentHashMap<Integer, String> rsaLabels = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    
+    public CryptoMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (Operation operation : Operation.values()) {
+            series.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+    
+    /**
+     * Shared instance, configured from AppConfig (crypto.metrics.*) and registered with the
+     * platform MBean server on first use
+     */
+    public static synchronized CryptoMetrics getInstance() {
+        if (instance == null) {
+            AppConfig config = AppConfig.getInstance();
+            instance = new CryptoMetrics(config.isCryptoMetricsEnabled());
+            if (config.isCryptoMetricsJmxEnabled()) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+                } catch (Exception e) {
+                    logger.warning("Could not register crypto metrics with JMX: " + e.getMessage());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * Run a call and record its latency; failures are counted as errors and rethrown
+     * @param key key the operation uses, for the key type breakdown (may be null)
+     * @param size payload size in bytes or characters, or NO_SIZE
+     */
+    public <T> T time(Operation operation, Key key, long size, Call<T> call) throws Exception {
+        if (!enabled) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = call.call();
+            succeeded = true;
+            return result;
+        } finally {
+            record(operation, key, size, System.nanoTime() - start, succeeded);
+        }
+    }
+    
+    /**
+     * Run a call that produces a key (generation, loading) and record it under that key's type
+     */
+    public <K extends Key> K timeKey(Operation operation, Call<K> call) throws Exception {
+        if (!enabled) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        K key = null;
+        try {
+            key = call.call();
+            return key;
+        } finally {
+            record(operation, key, NO_SIZE, System.nanoTime() - start, key != null);
+        }
+    }
+    
+    /**
+     * Record one operation measured by the caller
+     */
+    public void record(Operation operation, Key key, long size, long nanos, boolean succeeded) {
+        if (!enabled) {
+            return;
+        }
+        ConcurrentHashMap<String, Series[]> byKeyType = series.get(operation);
+        String keyType = keyType(key);
+        Series[] bySize = byKeyType.get(keyType);
+        if (bySize == null) {
+            bySize = byKeyType.computeIfAbsent(keyType, type -> newSeries());
+        }
+        bySize[sizeBucket(size)].record(nanos, succeeded);
+    }
+    
+    /**
+     * Wrap an encrypting stream so the time spent in write and close is recorded once on close
+     */
+    public OutputStream meter(OutputStream out, Operation operation, Key key) {
+        return enabled ? new MeteredOutputStream(out, operation, key) : out;
+    }
+    
+    /**
+     * Wrap a decrypting stream so the time spent in read and close is recorded once on close
+     */
+    public InputStream meter(InputStream in, Operation operation, Key key) {
+        return enabled ? new MeteredInputStream(in, operation, key) : in;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Current counters of every operation, key type and size bucket seen so far
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> result = new ArrayList<>();
+        for (Map.Entry<Operation, ConcurrentHashMap<String, Series[]>> entry : series.entrySet()) {
+            entry.getValue().forEach((keyType, bySize) -> {
+                for (int bucket = 0; bucket < bySize.length; bucket++) {
+                    if (bySize[bucket].count.sum() > 0) {
+                        result.add(bySize[bucket].snapshot(entry.getKey().getLabel(), keyType, SIZE_BUCKETS[bucket]));
+                    }
+                }
+            });
+        }
+        return result;
+    }
+    
+    @Override
+    public List<Snapshot> getOperations() {
+        return snapshot();
+    }
+    
+    @Override
+    public long getOperationCount() {
+        long total = 0;
+        for (Snapshot snapshot : snapshot()) {
+            total += snapshot.getCount();
+        }
+        return total;
+    }
+    
+    @Override
+    public long getErrorCount() {
+        long total = 0;
+        for (Snapshot snapshot : snapshot()) {
+            total += snapshot.getErrors();
+        }
+        return total;
+    }
+    
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Snapshot snapshot : snapshot()) {
+            report.append(snapshot).append("\n");
+        }
+        return report.toString();
+    }
+    
+    @Override
+    public void reset() {
+        for (ConcurrentHashMap<String, Series[]> byKeyType : series.values()) {
+            byKeyType.clear();
+        }
+    }
+    
+    private static Series[] newSeries() {
+        Series[] bySize = new Series[SIZE_BUCKETS.length];
+        for (int i = 0; i < bySize.length; i++) {
+            bySize[i] = new Series();
+        }
+        return bySize;
+    }
+    
+    // Buckets grow 16x: <1K, 1K-16K, 16K-256K, 256K-4M, >=4M
+    private static int sizeBucket(long size) {
+        if (size < 0) {
+            return 0;
+        }
+        int bucket = 1;
+        for (long limit = 1024; size >= limit && bucket < SIZE_BUCKETS.length - 1; limit <<= 4) {
+            bucket++;
+        }
+        return bucket;
+    }
+    
+    private String keyType(Key key) {
+        if (key == null) {
+            return "unknown";
+        }
+        if (key instanceof RSAKey) {
+            return rsaLabels.computeIfAbsent(((RSAKey) key).getModulus().bitLength(), bits -> "RSA-" + bits);
+        }
+        if (CurveCrypto.isX25519(key)) {
+            return "X25519";
+        }
+        if (CurveCrypto.isEd25519(key)) {
+            return "Ed25519";
+        }
+        return key instanceof SecretKey ? key.getAlgorithm() : key.getAlgorithm() + "-key";
+    }
+    
+    /**
+     * Counters of one operation / key type / size bucket
+     */
+    private static class Series {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final LongAdder[] latencies = new LongAdder[LATENCY_BUCKETS];
+        
+        Series() {
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LongAdder();
+            }
+        }
+        
+        void record(long nanos, boolean succeeded) {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            if (!succeeded) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            latencies[Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+        }
+        
+        Snapshot snapshot(String operation, String keyType, String sizeBucket) {
+            long[] histogram = new long[LATENCY_BUCKETS];
+            long total = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = latencies[i].sum();
+                total += histogram[i];
+            }
+            long n = count.sum();
+            return new Snapshot(operation, keyType, sizeBucket, n, errors.sum(),
+                    n == 0 ? 0 : totalNanos.sum() / 1000.0 / n,
+                    percentile(histogram, total, 0.50), percentile(histogram, total, 0.90),
+                    percentile(histogram, total, 0.99), maxNanos.get() / 1000.0);
+        }
+        
+        // Upper bound of the bucket holding the quantile, in microseconds
+        private static double percentile(long[] histogram, long total, double quantile) {
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return (1L << i) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+    
+    /**
+     * Point-in-time counters of one operation / key type / size bucket; latencies in microseconds,
+     * percentiles accurate to a factor of two
+     */
+    public static class Snapshot {
+        private final String operation;
+        private final String keyType;
+        private final String sizeBucket;
+        private final long count;
+        private final long errors;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p90Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+        
+        @ConstructorProperties({ "operation", "keyType", "sizeBucket", "count", "errors",
+                "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros" })
+        public Snapshot(String operation, String keyType, String sizeBucket, long count, long errors,
+                        double meanMicros, double p50Micros, double p90Micros, double p99Micros, double maxMicros) {
+            this.operation = operation;
+            this.keyType = keyType;
+            this.sizeBucket = sizeBucket;
+            this.count = count;
+            this.errors = errors;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+        
+        public String getOperation() { return operation; }
+        public String getKeyType() { return keyType; }
+        public String getSizeBucket() { return sizeBucket; }
+        public long getCount() { return count; }
+        public long getErrors() { return errors; }
+        public double getMeanMicros() { return meanMicros; }
+        public double getP50Micros() { return p50Micros; }
+        public double getP90Micros() { return p90Micros; }
+        public double getP99Micros() { return p99Micros; }
+        public double getMaxMicros() { return maxMicros; }
+        
+        @Override
+        public String toString() {
+            return String.format("%-14s %-10s %-9s count=%d errors=%d mean=%.1fus p50<=%.1fus p90<=%.1fus p99<=%.1fus max=%.1fus",
+                    operation, keyType, sizeBucket, count, errors, meanMicros, p50Micros, p90Micros, p99Micros, maxMicros);
+        }
+    }
+    
+    /**
+     * Times the calls into an encrypting stream and records them, with the byte count, on close
+     */
+    private class MeteredOutputStream extends FilterOutputStream {
+        private final Operation operation;
+        private final Key key;
+        private long nanos;
+        private long bytes;
+        private boolean failed;
+        private boolean closed;
+        
+        MeteredOutputStream(OutputStream out, Operation operation, Key key) {
+            super(out);
+            this.operation = operation;
+            this.key = key;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.write(b);
+                bytes++;
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.write(b, off, len);
+                bytes += len;
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                record(operation, key, bytes, nanos + System.nanoTime() - start, !failed);
+            }
+        }
+    }
+    
+    /**
+     * Times the calls into a decrypting stream and records them, with the byte count, on close
+     */
+    private class MeteredInputStream extends FilterInputStream {
+        private final Operation operation;
+        private final Key key;
+        private long nanos;
+        private long bytes;
+        private boolean failed;
+        private boolean closed;
+        
+        MeteredInputStream(InputStream in, Operation operation, Key key) {
+            super(in);
+            this.operation = operation;
+            this.key = key;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                int b = in.read();
+                if (b >= 0) {
+                    bytes++;
+                }
+                return b;
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    bytes += n;
+                }
+                return n;
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+            } finally {
+                record(operation, key, bytes, nanos, !failed);
+            }
+        }
+    }
+}
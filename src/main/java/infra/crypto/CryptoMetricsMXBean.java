@@ -0,0 +1,29 @@
+package infra.crypto;
+
+import java.util.List;
+
+/**
+ * JMX view of CryptoMetrics, registered as encryptmail:type=CryptoMetrics
+ */
+public interface CryptoMetricsMXBean {
+    
+    boolean isEnabled();
+    
+    void setEnabled(boolean enabled);
+    
+    /**
+     * Counters and latency percentiles per operation, key type and payload size bucket
+     */
+    List<CryptoMetrics.Snapshot> getOperations();
+    
+    long getOperationCount();
+    
+    long getErrorCount();
+    
+    /**
+     * One line per operation / key type / size bucket, for logs and the console
+     */
+    String getReport();
+    
+    void reset();
+}
@@ -1,5 +1,11 @@
 package infra.crypto;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.logging.Logger;
@@ -7,47 +13,218 @@ import java.util.logging.Logger;
 import javax.crypto.SecretKey;
 
 import core.service.CryptoService;
+import crypto.ChunkedAeadBuffers;
+import crypto.ChunkedAeadInputStream;
+import crypto.ChunkedAeadOutputStream;
+import crypto.CryptoProviders;
 import crypto.CryptoUtils;
+import crypto.CurveCrypto;
+import infra.crypto.CryptoMetrics.Operation;
 
 /**
- * Default implementation of CryptoService using existing CryptoUtils
+ * Default implementation of CryptoService using existing CryptoUtils.
+ * JCA primitives are borrowed from CryptoUtils' instance pools, so provider lookup
+ * happens once per pooled instance rather than once per message.
+ * Key wrapping and signatures pick RSA or the X25519/Ed25519 suite from the key type.
+ * The JCA provider behind AES-GCM, RSA, SHA256withRSA and SHA-256 is chosen once at
+ * construction by CryptoProviders (calibrated, cached or configured) and reported in the log.
+ * Every operation is timed into CryptoMetrics, by key type and payload size.
  */
 public class DefaultCryptoService implements CryptoService {
     private static final Logger logger = Logger.getLogger(DefaultCryptoService.class.getName());
     
+    private static final String RSA_KEY_WRAP = "RSA";
+    private static final String RSA_SIGNATURE = "SHA256withRSA";
+    
+    private final CryptoProviders providers;
+    private final CryptoMetrics metrics;
+    
+    public DefaultCryptoService() {
+        this(CryptoMetrics.getInstance());
+    }
+    
+    public DefaultCryptoService(CryptoMetrics metrics) {
+        // Select providers at startup rather than on the first message
+        this.providers = CryptoProviders.getInstance();
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Provider selection in effect for the crypto primitives
+     */
+    public CryptoProviders getProviders() {
+        return providers;
+    }
+    
+    /**
+     * Per-operation counters and latency histograms of this service
+     */
+    public CryptoMetrics getMetrics() {
+        return metrics;
+    }
+    
     @Override
     public SecretKey generateAESKey() throws Exception {
         logger.fine("Generating new AES key");
-        return CryptoUtils.generateAESKey();
+        return metrics.timeKey(Operation.GENERATE_AES_KEY, CryptoUtils::generateAESKey);
     }
     
     @Override
     public String encryptAES(String plainText, SecretKey key) throws Exception {
-        return CryptoUtils.encryptAES(plainText, key);
+        return metrics.time(Operation.ENCRYPT_AES, key, plainText.length(),
+                () -> CryptoUtils.encryptAES(plainText, key));
     }
     
     @Override
     public String decryptAES(String cipherText, SecretKey key) throws Exception {
-        return CryptoUtils.decryptAES(cipherText, key);
+        return metrics.time(Operation.DECRYPT_AES, key, cipherText.length(),
+                () -> CryptoUtils.decryptAES(cipherText, key));
+    }
+    
+    @Override
+    public void encryptAES(InputStream in, OutputStream out, SecretKey key) throws Exception {
+        metrics.time(Operation.ENCRYPT_AES, key, CryptoMetrics.NO_SIZE, () -> {
+            CryptoUtils.encryptAESStream(in, out, key);
+            return null;
+        });
+    }
+    
+    @Override
+    public void decryptAES(InputStream in, OutputStream out, SecretKey key) throws Exception {
+        metrics.time(Operation.DECRYPT_AES, key, CryptoMetrics.NO_SIZE, () -> {
+            CryptoUtils.decryptAESStream(in, out, key);
+            return null;
+        });
+    }
+    
+    @Override
+    public int encryptAES(ByteBuffer plain, ByteBuffer out, SecretKey key) throws Exception {
+        return metrics.time(Operation.ENCRYPT_AES, key, plain.remaining(),
+                () -> ChunkedAeadBuffers.encrypt(plain, out, key));
+    }
+    
+    @Override
+    public int decryptAES(ByteBuffer cipherText, ByteBuffer out, SecretKey key) throws Exception {
+        return metrics.time(Operation.DECRYPT_AES, key, cipherText.remaining(),
+                () -> ChunkedAeadBuffers.decrypt(cipherText, out, key));
+    }
+    
+    @Override
+    public void encryptAES(ByteBuffer plain, WritableByteChannel out, SecretKey key) throws Exception {
+        metrics.time(Operation.ENCRYPT_AES, key, plain.remaining(), () -> {
+            ChunkedAeadBuffers.encrypt(plain, out, key);
+            return null;
+        });
+    }
+    
+    @Override
+    public void encryptAES(Path file, WritableByteChannel out, SecretKey key) throws Exception {
+        logger.fine("Encrypting memory-mapped file: " + file);
+        metrics.time(Operation.ENCRYPT_AES, key, java.nio.file.Files.size(file), () -> {
+            ChunkedAeadBuffers.encryptFile(file, out, key);
+            return null;
+        });
+    }
+    
+    @Override
+    public long getEncryptedLength(long plainLength) {
+        return ChunkedAeadBuffers.encryptedLength(plainLength);
+    }
+    
+    @Override
+    public OutputStream newEncryptingStream(OutputStream out, SecretKey key) throws Exception {
+        // Timed per write and recorded on close, since the size is only known then
+        return metrics.meter(new ChunkedAeadOutputStream(out, key), Operation.ENCRYPT_AES, key);
+    }
+    
+    @Override
+    public InputStream newDecryptingStream(InputStream in, SecretKey key) throws Exception {
+        return metrics.meter(new ChunkedAeadInputStream(in, key), Operation.DECRYPT_AES, key);
     }
     
     @Override
     public String wrapKeyRSA(SecretKey aesKey, PublicKey publicKey) throws Exception {
-        return CryptoUtils.wrapKeyRSA(aesKey, publicKey);
+        return metrics.time(Operation.WRAP_KEY, publicKey, CryptoMetrics.NO_SIZE,
+                () -> CryptoUtils.wrapKeyRSA(aesKey, publicKey));
     }
     
     @Override
     public SecretKey unwrapKeyRSA(String wrappedKey, PrivateKey privateKey) throws Exception {
-        return CryptoUtils.unwrapKeyRSA(wrappedKey, privateKey);
+        return metrics.time(Operation.UNWRAP_KEY, privateKey, CryptoMetrics.NO_SIZE,
+                () -> CryptoUtils.unwrapKeyRSA(wrappedKey, privateKey));
+    }
+    
+    @Override
+    public String wrapKey(SecretKey aesKey, PublicKey publicKey) throws Exception {
+        return metrics.time(Operation.WRAP_KEY, publicKey, CryptoMetrics.NO_SIZE, () -> {
+            if (CurveCrypto.isX25519(publicKey)) {
+                return CurveCrypto.wrapKey(aesKey, publicKey);
+            }
+            return CryptoUtils.wrapKeyRSA(aesKey, publicKey);
+        });
+    }
+    
+    @Override
+    public SecretKey unwrapKey(String wrappedKey, PrivateKey privateKey) throws Exception {
+        return metrics.time(Operation.UNWRAP_KEY, privateKey, CryptoMetrics.NO_SIZE, () -> {
+            if (CurveCrypto.isX25519(privateKey)) {
+                return CurveCrypto.unwrapKey(wrappedKey, privateKey);
+            }
+            return CryptoUtils.unwrapKeyRSA(wrappedKey, privateKey);
+        });
+    }
+    
+    @Override
+    public String getKeyWrapAlgorithm(Key key) {
+        return CurveCrypto.isX25519(key) ? CurveCrypto.KEY_WRAP_ALGORITHM : RSA_KEY_WRAP;
+    }
+    
+    @Override
+    public String getSignatureAlgorithm(Key key) {
+        return CurveCrypto.isEd25519(key) ? CurveCrypto.SIGNATURE_ALGORITHM : RSA_SIGNATURE;
     }
     
     @Override
     public String sign(String message, PrivateKey privateKey) throws Exception {
-        return CryptoUtils.sign(message, privateKey);
+        return metrics.time(Operation.SIGN, privateKey, message.length(), () -> {
+            if (CurveCrypto.isEd25519(privateKey)) {
+                return CurveCrypto.sign(message, privateKey);
+            }
+            return CryptoUtils.sign(message, privateKey);
+        });
     }
     
     @Override
     public boolean verify(String message, String signature, PublicKey publicKey) throws Exception {
-        return CryptoUtils.verify(message, signature, publicKey);
+        return metrics.time(Operation.VERIFY, publicKey, message.length(), () -> {
+            if (CurveCrypto.isEd25519(publicKey)) {
+                return CurveCrypto.verify(message, signature, publicKey);
+            }
+            return CryptoUtils.verify(message, signature, publicKey);
+        });
+    }
+    
+    @Override
+    public boolean supportsDigestSigning(Key key) {
+        return !CurveCrypto.isEd25519(key);
+    }
+    
+    @Override
+    public String signDigest(byte[] sha256, PrivateKey privateKey) throws Exception {
+        if (!supportsDigestSigning(privateKey)) {
+            throw new IllegalArgumentException("Digest signing not supported for " + privateKey.getAlgorithm() + " keys");
+        }
+        // The message was hashed by the caller; only the RSA operation is timed
+        return metrics.time(Operation.SIGN, privateKey, CryptoMetrics.NO_SIZE,
+                () -> CryptoUtils.signDigest(sha256, privateKey));
+    }
+    
+    @Override
+    public boolean verifyDigest(byte[] sha256, String signature, PublicKey publicKey) throws Exception {
+        if (!supportsDigestSigning(publicKey)) {
+            throw new IllegalArgumentException("Digest signing not supported for " + publicKey.getAlgorithm() + " keys");
+        }
+        return metrics.time(Operation.VERIFY, publicKey, CryptoMetrics.NO_SIZE,
+                () -> CryptoUtils.verifyDigest(sha256, signature, publicKey));
     }
 }
@@ -4,34 +4,96 @@ import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
+import config.AppConfig;
 import core.service.KeyService;
+import crypto.CurveCrypto;
+import crypto.KeyPairPool;
 import crypto.KeyUtil;
+import infra.crypto.KeyDirectory.KeyFile;
 
 /**
- * Default implementation of KeyService using existing KeyUtil and file storage
+ * Default implementation of KeyService using existing KeyUtil and file storage.
+ * Key files live in a sharded KeyDirectory whose memory-mapped index answers existence checks.
+ * X25519/Ed25519 accounts keep their Ed25519 signing pair next to the encryption pair.
+ * Parsed keys and key file existence are cached in memory (KeyFileCache), invalidated by a
+ * watch on the keys directory and by this service's own writes; loads are timed into CryptoMetrics.
+ * Key files changed by another instance update the index from the watch and fire KeyChangeListeners.
  */
 public class DefaultKeyService implements KeyService {
     private static final Logger logger = Logger.getLogger(DefaultKeyService.class.getName());
     private static final String KEYS_DIR = "keys";
     
+    private final List<KeyChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final KeyPairPool keyPairPool;
+    private final CryptoMetrics metrics;
+    private final KeyFileCache keyCache = new KeyFileCache(KEYS_DIR);
+    // Index misses are checked against the watch-driven cache (plain file checks while it is off)
+    private final KeyDirectory keyDirectory = new KeyDirectory(KEYS_DIR, keyCache::exists);
+    
+    public DefaultKeyService() {
+        this(KeyPairPool.getInstance());
+    }
+    
+    public DefaultKeyService(KeyPairPool keyPairPool) {
+        this(keyPairPool, CryptoMetrics.getInstance());
+    }
+    
+    public DefaultKeyService(KeyPairPool keyPairPool, CryptoMetrics metrics) {
+        this.keyPairPool = keyPairPool;
+        this.metrics = metrics;
+        try {
+            keyDirectory.open();
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Cannot open key directory " + KEYS_DIR + ": " + e.getMessage(), e);
+        }
+        if (AppConfig.getInstance().isKeyCacheEnabled()) {
+            keyCache.setChangeListener(this::keyFileChanged);
+            keyCache.start();
+        }
+    }
+    
     @Override
     public KeyPair generateKeyPair(String email, int keySize) throws Exception {
-        KeyPair keyPair = KeyUtil.generateRSAKeyPair(keySize);
+        // Pre-generated in the background when available, generated inline otherwise
+        KeyPair keyPair = keyPairPool.take(keySize);
         saveKeyPair(email, keyPair);
         logger.info("Generated " + keySize + "-bit RSA key pair for: " + email);
         return keyPair;
     }
     
+    @Override
+    public KeyPair generateKeyPair(String email, Suite suite) throws Exception {
+        if (suite == Suite.RSA) {
+            return generateKeyPair(email, 2048);
+        }
+        
+        KeyPair encryptionPair = CurveCrypto.generateX25519KeyPair();
+        KeyPair signingPair = CurveCrypto.generateEd25519KeyPair();
+        writeKeyPair(email, encryptionPair);
+        KeyUtil.savePrivateKey(signingPair.getPrivate(), keyDirectory.pathForWrite(email, KeyFile.SIGNING_PRIVATE));
+        KeyUtil.savePublicKey(signingPair.getPublic(), keyDirectory.pathForWrite(email, KeyFile.SIGNING_PUBLIC));
+        keyCache.invalidate(getSigningPrivateKeyFileName(email), getSigningPublicKeyFileName(email));
+        keyDirectory.written(email, 0, KeyFile.SIGNING_PRIVATE, KeyFile.SIGNING_PUBLIC);
+        keyDirectory.flush();
+        
+        logger.info("Generated X25519/Ed25519 key pairs for: " + email);
+        fireKeyChanged(email);
+        return encryptionPair;
+    }
+    
     @Override
     public boolean hasKeyPair(String email) {
         try {
-            String privateKeyFile = getPrivateKeyFileName(email);
-            String publicKeyFile = getPublicKeyFileName(email);
-            
-            return java.nio.file.Files.exists(java.nio.file.Paths.get(privateKeyFile)) &&
-                   java.nio.file.Files.exists(java.nio.file.Paths.get(publicKeyFile));
+            return keyDirectory.exists(email, KeyFile.PRIVATE, KeyFile.PUBLIC);
         } catch (Exception e) {
             logger.warning("Error checking key pair existence for " + email + ": " + e.getMessage());
             return false;
@@ -41,30 +103,68 @@ public class DefaultKeyService implements KeyService {
     @Override
     public PublicKey getPublicKey(String email) throws Exception {
         String publicKeyFile = getPublicKeyFileName(email);
-        return KeyUtil.loadPublicKey(publicKeyFile);
+        return keyCache.get(publicKeyFile, this::loadPublicKey);
+    }
+    
+    @Override
+    public Map<String, PublicKey> getPublicKeys(Collection<String> emails) throws Exception {
+        // Imported contacts have only the public key file, which is all encryption needs
+        Map<String, PublicKey> keys = new LinkedHashMap<>();
+        for (String email : emails) {
+            if (keyDirectory.exists(email, KeyFile.PUBLIC)) {
+                keys.put(email, keyCache.get(getPublicKeyFileName(email), this::loadPublicKey));
+            }
+        }
+        return keys;
     }
     
     @Override
     public PrivateKey getPrivateKey(String email) throws Exception {
         String privateKeyFile = getPrivateKeyFileName(email);
-        return KeyUtil.loadPrivateKey(privateKeyFile);
+        return keyCache.get(privateKeyFile, this::loadPrivateKey);
     }
     
     @Override
-    public void saveKeyPair(String email, KeyPair keyPair) throws Exception {
-        // Ensure keys directory exists
-        java.nio.file.Path keysDir = java.nio.file.Paths.get(KEYS_DIR);
-        if (!java.nio.file.Files.exists(keysDir)) {
-            java.nio.file.Files.createDirectories(keysDir);
+    public PublicKey getSigningPublicKey(String email) throws Exception {
+        if (keyDirectory.exists(email, KeyFile.SIGNING_PUBLIC)) {
+            return keyCache.get(getSigningPublicKeyFileName(email), this::loadPublicKey);
         }
+        return getPublicKey(email);
+    }
+    
+    @Override
+    public PrivateKey getSigningPrivateKey(String email) throws Exception {
+        if (keyDirectory.exists(email, KeyFile.SIGNING_PRIVATE)) {
+            return keyCache.get(getSigningPrivateKeyFileName(email), this::loadPrivateKey);
+        }
+        return getPrivateKey(email);
+    }
+    
+    @Override
+    public void saveKeyPair(String email, KeyPair keyPair) throws Exception {
+        writeKeyPair(email, keyPair);
         
-        String privateKeyFile = getPrivateKeyFileName(email);
-        String publicKeyFile = getPublicKeyFileName(email);
+        // A key pair saved on its own also signs (RSA); drop a signing pair from another suite
+        java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(getSigningPrivateKeyFileName(email)));
+        java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(getSigningPublicKeyFileName(email)));
+        keyCache.invalidate(getSigningPrivateKeyFileName(email), getSigningPublicKeyFileName(email));
+        keyDirectory.deleted(email, KeyFile.SIGNING_PRIVATE, KeyFile.SIGNING_PUBLIC);
+        keyDirectory.flush();
+        
+        logger.info("Saved key pair for: " + email);
+        fireKeyChanged(email);
+    }
+    
+    private void writeKeyPair(String email, KeyPair keyPair) throws Exception {
+        // Creates the user's shard directory
+        String privateKeyFile = keyDirectory.pathForWrite(email, KeyFile.PRIVATE);
+        String publicKeyFile = keyDirectory.pathForWrite(email, KeyFile.PUBLIC);
         
         KeyUtil.savePrivateKey(keyPair.getPrivate(), privateKeyFile);
         KeyUtil.savePublicKey(keyPair.getPublic(), publicKeyFile);
-        
-        logger.info("Saved key pair for: " + email);
+        keyCache.invalidate(privateKeyFile, publicKeyFile);
+        keyDirectory.written(email, KeyIndex.fingerprint(keyPair.getPublic().getEncoded()),
+                KeyFile.PRIVATE, KeyFile.PUBLIC);
     }
     
     @Override
@@ -75,9 +175,16 @@ public class DefaultKeyService implements KeyService {
             
             boolean deletedPrivate = java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(privateKeyFile));
             boolean deletedPublic = java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(publicKeyFile));
+            java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(getSigningPrivateKeyFileName(email)));
+            java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(getSigningPublicKeyFileName(email)));
+            keyCache.invalidate(privateKeyFile, publicKeyFile,
+                    getSigningPrivateKeyFileName(email), getSigningPublicKeyFileName(email));
+            keyDirectory.deleted(email, KeyFile.values());
+            keyDirectory.flush();
             
             if (deletedPrivate || deletedPublic) {
                 logger.info("Deleted key pair for: " + email);
+                fireKeyChanged(email);
                 return true;
             }
             
@@ -98,24 +205,146 @@ public class DefaultKeyService implements KeyService {
     @Override
     public void importPublicKey(String email, String publicKeyString) throws Exception {
         byte[] keyBytes = Base64.getDecoder().decode(publicKeyString);
-        java.security.spec.X509EncodedKeySpec spec = new java.security.spec.X509EncodedKeySpec(keyBytes);
-        java.security.KeyFactory keyFactory = java.security.KeyFactory.getInstance("RSA");
-        PublicKey publicKey = keyFactory.generatePublic(spec);
-        
-        // Save only the public key
-        String publicKeyFile = getPublicKeyFileName(email);
-        KeyUtil.savePublicKey(publicKey, publicKeyFile);
+        storePublicKey(email, KeyUtil.decodePublicKey(keyBytes));
+        keyDirectory.flush();
         
         logger.info("Imported public key for: " + email);
+        fireKeyChanged(email);
+    }
+    
+    @Override
+    public Map<Integer, Exception> importPublicKeys(List<Map.Entry<String, PublicKey>> keys) {
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        Set<String> changed = new LinkedHashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Map.Entry<String, PublicKey> entry = keys.get(i);
+            try {
+                storePublicKey(entry.getKey(), entry.getValue());
+                changed.add(entry.getKey());
+            } catch (Exception e) {
+                failures.put(i, e);
+            }
+        }
+        
+        try {
+            keyDirectory.flush();
+        } catch (java.io.IOException e) {
+            logger.warning("Flushing key index failed: " + e.getMessage());
+        }
+        logger.info("Imported " + (keys.size() - failures.size()) + " public key(s) for "
+                + changed.size() + " user(s)");
+        changed.forEach(this::fireKeyChanged);
+        return failures;
+    }
+    
+    private void storePublicKey(String email, PublicKey publicKey) throws Exception {
+        // Save only the public key; Ed25519 keys only verify signatures
+        if (CurveCrypto.isEd25519(publicKey)) {
+            KeyUtil.savePublicKey(publicKey, keyDirectory.pathForWrite(email, KeyFile.SIGNING_PUBLIC));
+            keyCache.invalidate(getSigningPublicKeyFileName(email));
+            keyDirectory.written(email, 0, KeyFile.SIGNING_PUBLIC);
+            return;
+        }
+        
+        long fingerprint = KeyIndex.fingerprint(publicKey.getEncoded());
+        boolean signs = !CurveCrypto.isX25519(publicKey);
+        if (fingerprint == keyDirectory.fingerprint(email) && keyDirectory.exists(email, KeyFile.PUBLIC)
+                && !(signs && keyDirectory.exists(email, KeyFile.SIGNING_PUBLIC))) {
+            // Re-import of the key already stored, e.g. the same keyring imported again
+            return;
+        }
+        KeyUtil.savePublicKey(publicKey, keyDirectory.pathForWrite(email, KeyFile.PUBLIC));
+        keyDirectory.written(email, fingerprint, KeyFile.PUBLIC);
+        if (signs) {
+            // RSA keys sign too; a leftover Ed25519 key would shadow it
+            java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(getSigningPublicKeyFileName(email)));
+            keyDirectory.deleted(email, KeyFile.SIGNING_PUBLIC);
+        }
+        keyCache.invalidate(getPublicKeyFileName(email), getSigningPublicKeyFileName(email));
+    }
+    
+    @Override
+    public List<String> listKeyOwners() throws Exception {
+        return keyDirectory.owners();
+    }
+    
+    /**
+     * Sharded key file layout and its index
+     */
+    public KeyDirectory getKeyDirectory() {
+        return keyDirectory;
+    }
+    
+    /**
+     * In-memory cache of parsed keys
+     */
+    public KeyFileCache getKeyCache() {
+        return keyCache;
+    }
+    
+    // Only cache misses reach these, so KEY_LOAD metrics count actual file reads
+    private PublicKey loadPublicKey(String file) throws Exception {
+        return metrics.timeKey(CryptoMetrics.Operation.KEY_LOAD, () -> KeyUtil.loadPublicKey(file));
+    }
+    
+    private PrivateKey loadPrivateKey(String file) throws Exception {
+        return metrics.timeKey(CryptoMetrics.Operation.KEY_LOAD, () -> KeyUtil.loadPrivateKey(file));
+    }
+    
+    /**
+     * Background RSA key pair pool backing generateKeyPair (depth and hit/miss metrics)
+     */
+    public KeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+    
+    @Override
+    public void addKeyChangeListener(KeyChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * A key file changed on disk, possibly by another instance; null if events were lost
+     */
+    private void keyFileChanged(java.nio.file.Path file) {
+        try {
+            if (file == null) {
+                keyDirectory.resync().forEach(this::fireKeyChanged);
+                return;
+            }
+            String email = keyDirectory.refresh(file);
+            if (email != null) {
+                logger.fine("Key files changed on disk for: " + email);
+                fireKeyChanged(email);
+            }
+        } catch (java.io.IOException e) {
+            logger.warning("Updating key index for " + file + " failed: " + e.getMessage());
+        }
+    }
+    
+    private void fireKeyChanged(String email) {
+        for (KeyChangeListener listener : listeners) {
+            try {
+                listener.onKeyChanged(email);
+            } catch (Exception e) {
+                logger.warning("Key change listener failed for " + email + ": " + e.getMessage());
+            }
+        }
     }
     
     private String getPrivateKeyFileName(String email) {
-        String sanitizedEmail = email.replace("@", "_").replace(".", "_");
-        return KEYS_DIR + "/" + sanitizedEmail + "_private.key";
+        return keyDirectory.path(email, KeyFile.PRIVATE);
     }
     
     private String getPublicKeyFileName(String email) {
-        String sanitizedEmail = email.replace("@", "_").replace(".", "_");
-        return KEYS_DIR + "/" + sanitizedEmail + "_public.key";
+        return keyDirectory.path(email, KeyFile.PUBLIC);
+    }
+    
+    private String getSigningPrivateKeyFileName(String email) {
+        return keyDirectory.path(email, KeyFile.SIGNING_PRIVATE);
+    }
+    
+    private String getSigningPublicKeyFileName(String email) {
+        return keyDirectory.path(email, KeyFile.SIGNING_PUBLIC);
     }
 }
@@ -1,17 +1,44 @@
 package infra.crypto;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.SecretKey;
 
+import config.AppConfig;
 import core.service.CryptoService;
 import core.service.KeyService;
 import core.service.MailService;
 import core.service.SecureMailService;
+import crypto.ChunkedAeadReader;
+import crypto.CryptoProviders;
+import crypto.KeyUtil;
 
 /**
  * Default implementation of SecureMailService
@@ -19,38 +46,90 @@ import core.service.SecureMailService;
 public class DefaultSecureMailService implements SecureMailService {
     private static final Logger logger = Logger.getLogger(DefaultSecureMailService.class.getName());
     
-    // Message format markers
-    private static final String ENCRYPTED_START = "-----BEGIN ENCRYPTED MESSAGE-----";
-    private static final String ENCRYPTED_END = "-----END ENCRYPTED MESSAGE-----";
-    private static final String SIGNATURE_START = "-----BEGIN DIGITAL SIGNATURE-----";
-    private static final String SIGNATURE_END = "-----END DIGITAL SIGNATURE-----";
+    // Content cipher marker; envelopes without it use the legacy whole-body AES format
+    private static final String STREAM_CIPHER = "AES-GCM-CHUNKED";
+    
+    // Key wrap algorithm of envelopes that do not name one
+    private static final String RSA_KEY_WRAP = "RSA";
+    
+    // Compression marker for text envelopes (binary envelopes use a flag bit)
+    private static final String DEFLATE = "deflate";
+    private static final int MAX_BODY_LENGTH = 10 * 1024 * 1024;
+    
+    // Uncompressed ciphertext at least this large is decrypted chunk-parallel
+    private static final int PARALLEL_MIN_LENGTH = 256 * 1024;
+    // Chunks decrypted per window and worker thread; bounds the ciphertext and plaintext held at once
+    private static final int PARALLEL_WINDOW_CHUNKS = 8;
     
     private final MailService mailService;
     private final CryptoService cryptoService;
     private final KeyService keyService;
+    private final SessionKeyCache sessionKeyCache;
+    private final VerificationCache verificationCache;
+    private final int envelopeVersion;
+    private final int compressionThreshold;
+    private final int compressionMax;
     
     public DefaultSecureMailService(MailService mailService, CryptoService cryptoService, KeyService keyService) {
+        this(mailService, cryptoService, keyService, new SessionKeyCache(
+                AppConfig.getInstance().getSessionKeyCacheSize(),
+                Duration.ofSeconds(AppConfig.getInstance().getSessionKeyCacheTtlSeconds())));
+    }
+    
+    public DefaultSecureMailService(MailService mailService, CryptoService cryptoService, KeyService keyService,
+                                    SessionKeyCache sessionKeyCache) {
         this.mailService = mailService;
         this.cryptoService = cryptoService;
         this.keyService = keyService;
+        this.sessionKeyCache = sessionKeyCache;
+        this.envelopeVersion = AppConfig.getInstance().getEnvelopeVersion();
+        this.compressionThreshold = AppConfig.getInstance().getCompressionThreshold();
+        this.compressionMax = AppConfig.getInstance().getCompressionMax();
+        
+        // Memoized signing keys expire like PgKeyService's cache, so keys rotated elsewhere are seen
+        this.verificationCache = new VerificationCache(AppConfig.getInstance().getVerificationCacheSize(),
+                Duration.ofSeconds(AppConfig.getInstance().getKeyCacheTtlSeconds()));
+        
+        // Cached session keys must not outlive the private key that unwrapped them,
+        // nor cached verdicts the sender key they were checked against
+        keyService.addKeyChangeListener(sessionKeyCache::invalidate);
+        keyService.addKeyChangeListener(verificationCache::invalidate);
     }
     
     @Override
     public void sendSecureMail(String from, String password, String to, String subject, 
                               String body, boolean encrypt, boolean sign) throws Exception {
+        sendSecureMail(from, password, List.of(to), subject, body, encrypt, sign);
+    }
+    
+    @Override
+    public void sendSecureMail(String from, String password, List<String> to, String subject,
+                              String body, boolean encrypt, boolean sign) throws Exception {
+        if (to == null || to.isEmpty()) {
+            throw new IllegalArgumentException("At least one recipient is required");
+        }
         
-        logger.info("Sending secure mail from " + from + " to " + to + 
+        logger.info("Sending secure mail from " + from + " to " + to.size() + " recipient(s)" + 
                    " (encrypt=" + encrypt + ", sign=" + sign + ")");
         
-        String processedBody = body;
+        // The signature block is appended to the envelope in place, without copying it
+        StringBuilder processed = null;
+        byte[] contentDigest = null;
         
         // Apply encryption if requested
         if (encrypt) {
-            if (!keyService.hasKeyPair(to)) {
-                throw new IllegalStateException("Recipient " + to + " does not have a public key for encryption");
+            // All recipient keys in one lookup
+            Map<String, PublicKey> recipientKeys = keyService.getPublicKeys(to);
+            for (String recipient : to) {
+                if (!recipientKeys.containsKey(recipient)) {
+                    throw new IllegalStateException("Recipient " + recipient + " does not have a public key for encryption");
+                }
             }
-            processedBody = encryptMessage(processedBody, to);
-            logger.info("Message encrypted for recipient: " + to);
+            // When signing, the envelope is hashed in the same pass that writes it
+            MessageDigest digest = sign ? CryptoProviders.sha256() : null;
+            processed = encryptMessage(body, to, recipientKeys, digest);
+            contentDigest = digest != null ? digest.digest() : null;
+            logger.info("Message encrypted for recipients: " + to);
         }
         
         // Apply digital signature if requested
@@ -58,12 +137,18 @@ public class DefaultSecureMailService implements SecureMailService {
             if (!keyService.hasKeyPair(from)) {
                 throw new IllegalStateException("Sender " + from + " does not have a private key for signing");
             }
-            processedBody = signMessage(processedBody, from);
+            if (processed == null) {
+                contentDigest = CanonicalText.sha256(body);
+                processed = new StringBuilder(body.length() + 1024).append(body);
+            }
+            signMessage(processed, contentDigest, from);
             logger.info("Message digitally signed by: " + from);
         }
         
-        // Send the processed message
-        mailService.sendMail(from, password, to, subject, processedBody);
+        String processedBody = processed != null ? processed.toString() : body;
+        
+        // Send the processed message once, addressed to every recipient
+        mailService.sendMail(from, password, String.join(", ", to), subject, processedBody);
         logger.info("Secure mail sent successfully");
     }
     
@@ -73,36 +158,31 @@ public class DefaultSecureMailService implements SecureMailService {
         processed.setOriginalMessage(rawMessage);
         
         try {
-            String currentContent = rawMessage;
+            // Parse the envelope once; every later step works on its offsets
+            SecureEnvelope envelope = SecureEnvelope.parse(rawMessage);
             
-            // Check for encryption
-            if (isEncrypted(currentContent)) {
-                processed.setEncrypted(true);
-                currentContent = decryptMessage(currentContent, recipientEmail);
-                logger.info("Message decrypted for: " + recipientEmail);
-            } else {
-                processed.setEncrypted(false);
+            // The signature covers the transmitted (possibly encrypted) content, so verify first
+            if (envelope.isSigned()) {
+                verifySignature(envelope, processed);
             }
             
-            // Check for digital signature
-            if (isSigned(currentContent)) {
-                processed.setSigned(true);
-                SignatureInfo sigInfo = extractSignatureInfo(currentContent);
-                processed.setSenderEmail(sigInfo.senderEmail);
-                
-                // Verify signature
-                String messageContent = removeSignature(currentContent);
-                processed.setSignatureVerified(verifySignature(messageContent, sigInfo, processed.getSenderEmail()));
-                
-                // Remove signature from display content
-                currentContent = messageContent;
+            String currentContent;
+            if (envelope.isEncrypted()) {
+                processed.setEncrypted(true);
+                currentContent = decryptMessage(envelope, recipientEmail);
+                logger.info("Message decrypted for: " + recipientEmail);
                 
-                logger.info("Digital signature verification: " + 
-                           (processed.isSignatureVerified() ? "PASSED" : "FAILED") + 
-                           " for sender: " + processed.getSenderEmail());
+                // A signature may also have been applied before encryption
+                if (!envelope.isSigned()) {
+                    SecureEnvelope inner = SecureEnvelope.parse(currentContent);
+                    if (inner.isSigned()) {
+                        verifySignature(inner, processed);
+                        currentContent = inner.getSignedContent();
+                    }
+                }
             } else {
-                processed.setSigned(false);
-                processed.setSignatureVerified(false);
+                processed.setEncrypted(false);
+                currentContent = envelope.isSigned() ? envelope.getSignedContent() : rawMessage;
             }
             
             processed.setDecryptedContent(currentContent);
@@ -121,121 +201,482 @@ public class DefaultSecureMailService implements SecureMailService {
         return processed;
     }
     
-    private String encryptMessage(String message, String recipientEmail) throws Exception {
-        // Generate AES key
+    @Override
+    public String decryptReceivedMessage(String rawMessage, String recipientEmail) throws Exception {
+        SecureEnvelope envelope = SecureEnvelope.parse(rawMessage);
+        if (!envelope.isEncrypted()) {
+            return envelope.isSigned() ? envelope.getSignedContent() : rawMessage;
+        }
+        String content = decryptMessage(envelope, recipientEmail);
+        if (!envelope.isSigned()) {
+            // A signature applied before encryption is inside the decrypted text
+            SecureEnvelope inner = SecureEnvelope.parse(content);
+            if (inner.isSigned()) {
+                return inner.getSignedContent();
+            }
+        }
+        return content;
+    }
+    
+    @Override
+    public ProcessedMessage verifyReceivedMessage(String rawMessage) throws Exception {
+        ProcessedMessage processed = new ProcessedMessage();
+        processed.setOriginalMessage(rawMessage);
+        
+        SecureEnvelope envelope = SecureEnvelope.parse(rawMessage);
+        processed.setEncrypted(envelope.isEncrypted());
+        if (envelope.isSigned()) {
+            verifySignature(envelope, processed);
+        }
+        return processed;
+    }
+    
+    /**
+     * Build the encrypted envelope; if a digest is given, the envelope's canonical bytes are fed to it
+     */
+    private StringBuilder encryptMessage(String message, List<String> recipients,
+                                         Map<String, PublicKey> recipientKeys, MessageDigest digest) throws Exception {
+        // Generate one AES key for all recipients
         SecretKey aesKey = cryptoService.generateAESKey();
         
-        // Encrypt message with AES
-        String encryptedContent = cryptoService.encryptAES(message, aesKey);
+        // Compress before encrypting; ciphertext cannot be compressed afterwards. Bodies from
+        // crypto.compression.max up stay uncompressed: a deflate stream cannot be entered at a chunk
+        // boundary, so compressing them gives up chunk-parallel and lazy decryption
+        boolean compress = compressionThreshold > 0 && message.length() >= compressionThreshold
+                && (compressionMax <= 0 || message.length() < compressionMax);
         
-        // Wrap AES key with recipient's public key
-        PublicKey recipientPublicKey = keyService.getPublicKey(recipientEmail);
-        String wrappedKey = cryptoService.wrapKeyRSA(aesKey, recipientPublicKey);
+        if (envelopeVersion >= BinaryEnvelope.VERSION) {
+            return encryptBinary(message, recipients, recipientKeys, aesKey, compress, digest);
+        }
         
-        // Format encrypted message
-        StringBuilder encrypted = new StringBuilder();
-        encrypted.append(ENCRYPTED_START).append("\n");
-        encrypted.append("Recipient: ").append(recipientEmail).append("\n");
-        encrypted.append("Wrapped-Key: ").append(wrappedKey).append("\n");
-        encrypted.append("Content: ").append(encryptedContent).append("\n");
-        encrypted.append(ENCRYPTED_END);
+        // Format encrypted message; the body is streamed UTF-8 -> AES-GCM chunks -> Base64
+        // straight into the envelope, so no full-size byte[] copies are held on the heap
+        StringBuilder encrypted = new StringBuilder(message.length() / 3 * 4 + 512 * recipients.size() + 1024);
+        encrypted.append(SecureEnvelope.ENCRYPTED_START).append("\n");
+        encrypted.append("Recipient: ").append(String.join(", ", recipients)).append("\n");
+        encrypted.append("Cipher: ").append(STREAM_CIPHER).append("\n");
+        if (compress) {
+            encrypted.append("Compression: ").append(DEFLATE).append("\n");
+        }
         
-        return encrypted.toString();
-    }
-    
-    private String decryptMessage(String encryptedMessage, String recipientEmail) throws Exception {
-        // Extract wrapped key and content
-        Pattern keyPattern = Pattern.compile("Wrapped-Key: (.+)");
-        Pattern contentPattern = Pattern.compile("Content: (.+)");
+        // Wrap AES key once per recipient, tagged with the recipient key fingerprint
+        // Non-RSA wraps carry their algorithm as "<algorithm>:<wrapped key>"
+        for (String recipient : recipients) {
+            PublicKey recipientPublicKey = recipientKeys.get(recipient);
+            String wrappedKey = cryptoService.wrapKey(aesKey, recipientPublicKey);
+            String algorithm = cryptoService.getKeyWrapAlgorithm(recipientPublicKey);
+            encrypted.append("Wrapped-Key: ").append(KeyUtil.fingerprint(recipientPublicKey)).append(' ');
+            if (!RSA_KEY_WRAP.equals(algorithm)) {
+                encrypted.append(algorithm).append(':');
+            }
+            encrypted.append(wrappedKey).append("\n");
+        }
         
-        Matcher keyMatcher = keyPattern.matcher(encryptedMessage);
-        Matcher contentMatcher = contentPattern.matcher(encryptedMessage);
+        encrypted.append("Content: ");
+        writePlaintext(message, cryptoService.newEncryptingStream(
+                Base64.getEncoder().wrap(armorSink(encrypted, digest)), aesKey), compress);
+        appendTrailer(encrypted, digest);
         
-        if (!keyMatcher.find() || !contentMatcher.find()) {
-            throw new IllegalArgumentException("Invalid encrypted message format");
+        return encrypted;
+    }
+    
+    /**
+     * Version 2 envelope: binary header and chunked ciphertext, carried as one
+     * MIME-style Base64 block (76 columns) inside the armor markers
+     */
+    private StringBuilder encryptBinary(String message, List<String> recipients, Map<String, PublicKey> recipientKeys,
+                                        SecretKey aesKey, boolean compress, MessageDigest digest) throws Exception {
+        List<BinaryEnvelope.Recipient> entries = new ArrayList<>(recipients.size());
+        for (String recipient : recipients) {
+            PublicKey recipientPublicKey = recipientKeys.get(recipient);
+            byte[] wrappedKey = Base64.getDecoder().decode(cryptoService.wrapKey(aesKey, recipientPublicKey));
+            entries.add(new BinaryEnvelope.Recipient(cryptoService.getKeyWrapAlgorithm(recipientPublicKey),
+                    KeyUtil.fingerprint(recipientPublicKey), wrappedKey));
         }
         
-        String wrappedKey = keyMatcher.group(1);
-        String encryptedContent = contentMatcher.group(1);
+        StringBuilder encrypted = new StringBuilder(message.length() / 3 * 4 + 350 * recipients.size() + 256);
+        encrypted.append(SecureEnvelope.ENCRYPTED_START).append("\n");
+        encrypted.append("Version: ").append(BinaryEnvelope.VERSION).append("\n");
         
-        // Unwrap AES key with recipient's private key
-        PrivateKey recipientPrivateKey = keyService.getPrivateKey(recipientEmail);
-        SecretKey aesKey = cryptoService.unwrapKeyRSA(wrappedKey, recipientPrivateKey);
+        OutputStream payload = Base64.getMimeEncoder(76, new byte[] { '\n' })
+                .wrap(armorSink(encrypted, digest));
+        new BinaryEnvelope(compress ? BinaryEnvelope.FLAG_DEFLATE : 0, entries).writeTo(payload);
+        writePlaintext(message, cryptoService.newEncryptingStream(payload, aesKey), compress);
+        appendTrailer(encrypted, digest);
         
-        // Decrypt content
-        return cryptoService.decryptAES(encryptedContent, aesKey);
+        return encrypted;
+    }
+    
+    /**
+     * Sink for the Base64 armor; hashes the header written so far and then every armor byte
+     */
+    private static OutputStream armorSink(StringBuilder envelope, MessageDigest digest) {
+        if (digest == null) {
+            return AsciiStreams.appendingTo(envelope);
+        }
+        CanonicalText.update(digest, envelope, 0, envelope.length());
+        return AsciiStreams.appendingTo(envelope, digest);
+    }
+    
+    private static void appendTrailer(StringBuilder envelope, MessageDigest digest) {
+        int start = envelope.length();
+        envelope.append("\n");
+        envelope.append(SecureEnvelope.ENCRYPTED_END);
+        if (digest != null) {
+            CanonicalText.update(digest, envelope, start, envelope.length());
+        }
     }
     
-    private String signMessage(String message, String senderEmail) throws Exception {
-        // Sign the message
-        PrivateKey senderPrivateKey = keyService.getPrivateKey(senderEmail);
-        String signature = cryptoService.sign(message, senderPrivateKey);
+    /**
+     * Write the body as UTF-8 into the encrypting stream, optionally deflating it first, and close it
+     */
+    private void writePlaintext(String message, OutputStream encrypting, boolean compress) throws IOException {
+        if (!compress) {
+            try (Writer writer = new OutputStreamWriter(encrypting, StandardCharsets.UTF_8)) {
+                writer.write(message);
+            }
+            return;
+        }
         
-        // Format signed message
-        StringBuilder signed = new StringBuilder();
-        signed.append(message).append("\n\n");
-        signed.append(SIGNATURE_START).append("\n");
-        signed.append("Sender: ").append(senderEmail).append("\n");
-        signed.append("Signature: ").append(signature).append("\n");
-        signed.append("Timestamp: ").append(new java.util.Date().toString()).append("\n");
-        signed.append(SIGNATURE_END);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (Writer writer = new OutputStreamWriter(
+                new DeflaterOutputStream(encrypting, deflater, 8192), StandardCharsets.UTF_8)) {
+            writer.write(message);
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private String decryptMessage(SecureEnvelope envelope, String recipientEmail) throws Exception {
+        EncryptedContent content = openContent(envelope, recipientEmail);
+        if (content.legacyCipherText != null) {
+            return cryptoService.decryptAES(content.legacyCipherText, content.aesKey);
+        }
+        if (!content.compressed && content.sizeHint >= PARALLEL_MIN_LENGTH) {
+            return decryptParallel(content);
+        }
+        return readPlaintext(content.cipherText, content.aesKey, content.compressed, content.sizeHint);
+    }
+    
+    @Override
+    public EncryptedBody openEncryptedBody(String rawMessage, String recipientEmail) throws Exception {
+        SecureEnvelope envelope = SecureEnvelope.parse(rawMessage);
+        if (!envelope.isEncrypted()) {
+            return null;
+        }
+        EncryptedContent content = openContent(envelope, recipientEmail);
+        if (content.legacyCipherText != null || content.compressed) {
+            // Deflate output cannot be entered mid-stream; the old format is one block
+            return null;
+        }
+        ChunkedAeadReader reader = new ChunkedAeadReader(
+                ByteBuffer.wrap(content.cipherText.readAllBytes()), content.aesKey);
+        return new ChunkedBody(reader);
+    }
+    
+    /**
+     * Locate the ciphertext for the recipient and unwrap its session key
+     */
+    private EncryptedContent openContent(SecureEnvelope envelope, String recipientEmail) throws Exception {
+        String fingerprint = KeyUtil.fingerprint(keyService.getPublicKey(recipientEmail));
+        String message = envelope.getMessage();
+        
+        if (envelope.getVersion() >= BinaryEnvelope.VERSION) {
+            if (!envelope.hasPayload()) {
+                throw new IllegalArgumentException("Invalid encrypted message format");
+            }
+            InputStream payload = Base64.getMimeDecoder().wrap(
+                    AsciiStreams.reading(message, envelope.getPayloadStart(), envelope.getPayloadEnd()));
+            BinaryEnvelope header = BinaryEnvelope.readFrom(payload);
+            BinaryEnvelope.Recipient entry = header.getRecipient(fingerprint);
+            if (entry == null) {
+                throw new SecurityException("Message is not encrypted for " + recipientEmail);
+            }
+            SecretKey aesKey = unwrapSessionKey(entry.algorithm,
+                    Base64.getEncoder().encodeToString(entry.wrappedKey), recipientEmail);
+            return new EncryptedContent(aesKey, payload, header.isCompressed(),
+                    (envelope.getPayloadEnd() - envelope.getPayloadStart()) / 4 * 3, null);
+        }
+        
+        if (!envelope.hasContent()) {
+            throw new IllegalArgumentException("Invalid encrypted message format");
+        }
         
-        return signed.toString();
+        // Find our wrapped key by public key fingerprint
+        String wrappedKey = envelope.getWrappedKey(fingerprint);
+        if (wrappedKey == null) {
+            throw new SecurityException("Message is not encrypted for " + recipientEmail);
+        }
+        String algorithm = RSA_KEY_WRAP;
+        int separator = wrappedKey.indexOf(':');
+        if (separator > 0) {
+            algorithm = wrappedKey.substring(0, separator);
+            wrappedKey = wrappedKey.substring(separator + 1);
+        }
+        SecretKey aesKey = unwrapSessionKey(algorithm, wrappedKey, recipientEmail);
+        
+        int start = envelope.getContentStart();
+        int end = envelope.getContentEnd();
+        if (!STREAM_CIPHER.equals(envelope.getCipher())) {
+            return new EncryptedContent(aesKey, null, false, 0, message.substring(start, end).trim());
+        }
+        InputStream ciphertext = Base64.getDecoder().wrap(AsciiStreams.reading(message, start, end));
+        return new EncryptedContent(aesKey, ciphertext, DEFLATE.equals(envelope.getCompression()),
+                (end - start) / 4 * 3, null);
     }
     
-    private boolean isEncrypted(String message) {
-        return message.contains(ENCRYPTED_START) && message.contains(ENCRYPTED_END);
+    /**
+     * Decrypt an uncompressed chunked body with its chunks spread over the common ForkJoin pool.
+     * The ciphertext is read a window of chunks at a time and each window is decoded straight
+     * into the text, so besides the text only one window is held, whatever the body size.
+     */
+    private String decryptParallel(EncryptedContent content) throws Exception {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int windowChunks = PARALLEL_WINDOW_CHUNKS * Math.max(1, pool.getParallelism());
+        TextSink text = new TextSink(content.sizeHint);
+        try {
+            CryptoMetrics.getInstance().time(CryptoMetrics.Operation.DECRYPT_AES, content.aesKey, content.sizeHint, () ->
+                    ChunkedAeadReader.decryptStream(content.cipherText, content.aesKey, pool, windowChunks, text));
+            return text.toString();
+        } catch (IOException e) {
+            throw authenticationFailure(e);
+        }
     }
     
-    private boolean isSigned(String message) {
-        return message.contains(SIGNATURE_START) && message.contains(SIGNATURE_END);
+    /**
+     * Unwrap AES key with recipient's private key, unless it was unwrapped recently
+     */
+    private SecretKey unwrapSessionKey(String algorithm, String wrappedKey, String recipientEmail) throws Exception {
+        SecretKey aesKey = sessionKeyCache.get(wrappedKey, recipientEmail);
+        if (aesKey == null) {
+            PrivateKey recipientPrivateKey = keyService.getPrivateKey(recipientEmail);
+            if (!algorithm.equals(cryptoService.getKeyWrapAlgorithm(recipientPrivateKey))) {
+                throw new SecurityException("Key wrap algorithm " + algorithm + " does not match key of " + recipientEmail);
+            }
+            aesKey = cryptoService.unwrapKey(wrappedKey, recipientPrivateKey);
+            sessionKeyCache.put(wrappedKey, recipientEmail, aesKey);
+        }
+        return aesKey;
     }
     
-    private SignatureInfo extractSignatureInfo(String message) {
-        Pattern senderPattern = Pattern.compile("Sender: (.+)");
-        Pattern signaturePattern = Pattern.compile("Signature: (.+)");
-        Pattern timestampPattern = Pattern.compile("Timestamp: (.+)");
+    private String readPlaintext(InputStream ciphertext, SecretKey aesKey, boolean compressed,
+                                 int sizeHint) throws Exception {
+        InputStream decrypting = cryptoService.newDecryptingStream(ciphertext, aesKey);
+        Inflater inflater = compressed ? new Inflater(true) : null;
+        StringBuilder plain = new StringBuilder(compressed ? sizeHint * 2 : sizeHint);
+        try (Reader reader = new InputStreamReader(
+                compressed ? new InflaterInputStream(decrypting, inflater, 8192) : decrypting,
+                StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                plain.append(buffer, 0, n);
+                // Same bound as ValidationUtil.isValidBody, guards against inflation bombs
+                if (compressed && plain.length() > MAX_BODY_LENGTH) {
+                    throw new IllegalArgumentException("Decompressed content exceeds size limit");
+                }
+            }
+            // The inflater stops at the end of the deflate data; make the cipher stream
+            // reach its authenticated end so truncation and trailing data are still detected
+            if (compressed && decrypting.read() != -1) {
+                throw new SecurityException("Unexpected data after compressed content");
+            }
+        } catch (ZipException e) {
+            throw new IllegalArgumentException("Corrupt compressed content");
+        } catch (IOException e) {
+            throw authenticationFailure(e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        return plain.toString();
+    }
+    
+    /**
+     * Report chunk authentication failures as SecurityException; other I/O errors unchanged
+     */
+    private static IOException authenticationFailure(IOException e) {
+        if (e.getCause() instanceof AEADBadTagException) {
+            throw new SecurityException("Encrypted content failed authentication");
+        }
+        return e;
+    }
+    
+    /**
+     * Append the signature block. The signature covers the message's canonical bytes,
+     * whose SHA-256 the caller has already computed.
+     */
+    private void signMessage(StringBuilder message, byte[] contentDigest, String senderEmail) throws Exception {
+        PrivateKey senderPrivateKey = keyService.getSigningPrivateKey(senderEmail);
+        String signature;
+        if (cryptoService.supportsDigestSigning(senderPrivateKey)) {
+            signature = cryptoService.signDigest(contentDigest, senderPrivateKey);
+        } else {
+            // Ed25519 signs the message itself rather than a digest
+            int[] region = CanonicalText.signedRegion(message, message.length());
+            signature = cryptoService.sign(message.substring(region[0], region[1]), senderPrivateKey);
+        }
         
-        Matcher senderMatcher = senderPattern.matcher(message);
-        Matcher signatureMatcher = signaturePattern.matcher(message);
-        Matcher timestampMatcher = timestampPattern.matcher(message);
+        // Format signed message
+        message.append("\n\n");
+        message.append(SecureEnvelope.SIGNATURE_START).append("\n");
+        message.append("Sender: ").append(senderEmail).append("\n");
+        message.append("Algorithm: ").append(cryptoService.getSignatureAlgorithm(senderPrivateKey)).append("\n");
+        message.append("Signature: ").append(signature).append("\n");
+        message.append("Timestamp: ").append(new java.util.Date().toString()).append("\n");
+        message.append(SecureEnvelope.SIGNATURE_END);
+    }
+    
+    /**
+     * Verify the envelope's signature block against the content preceding it
+     */
+    private void verifySignature(SecureEnvelope envelope, ProcessedMessage processed) {
+        String senderEmail = envelope.getSender();
+        String signature = envelope.getSignature();
+        processed.setSigned(true);
+        processed.setSenderEmail(senderEmail);
+        logger.fine("Extracted signature timestamp: " + envelope.getTimestamp());
         
-        SignatureInfo info = new SignatureInfo();
-        if (senderMatcher.find()) info.senderEmail = senderMatcher.group(1);
-        if (signatureMatcher.find()) info.signature = signatureMatcher.group(1);
-        if (timestampMatcher.find()) {
-            info.timestamp = timestampMatcher.group(1);
-            logger.fine("Extracted signature timestamp: " + info.timestamp);
+        boolean verified = false;
+        if (signature != null && senderEmail != null) {
+            try {
+                VerificationCache.SigningKey signingKey =
+                        verificationCache.getSigningKey(senderEmail, keyService::getSigningPublicKey);
+                PublicKey senderPublicKey = signingKey.getPublicKey();
+                String algorithm = envelope.getSignatureAlgorithm();
+                if (algorithm != null && !algorithm.equals(cryptoService.getSignatureAlgorithm(senderPublicKey))) {
+                    logger.warning("Signature algorithm " + algorithm + " does not match key of " + senderEmail);
+                } else {
+                    // Hash the signed region once, straight from the message text; the digest
+                    // keys the verdict cache and is what RSA signatures are checked against
+                    MessageDigest digest = CryptoProviders.sha256();
+                    CanonicalText.update(digest, envelope.getMessage(),
+                            envelope.getSignedStart(), envelope.getSignedEnd());
+                    byte[] contentDigest = digest.digest();
+                    // Same content, signature and key always give the same verdict
+                    Boolean cached = verificationCache.get(senderEmail, contentDigest, signature,
+                            signingKey.getFingerprint());
+                    if (cached != null) {
+                        verified = cached;
+                    } else if (cryptoService.supportsDigestSigning(senderPublicKey)) {
+                        verified = cryptoService.verifyDigest(contentDigest, signature, senderPublicKey);
+                        verificationCache.put(senderEmail, contentDigest, signature,
+                                signingKey.getFingerprint(), verified);
+                    } else {
+                        verified = cryptoService.verify(envelope.getSignedContent(), signature, senderPublicKey);
+                        verificationCache.put(senderEmail, contentDigest, signature,
+                                signingKey.getFingerprint(), verified);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warning("Signature verification failed: " + e.getMessage());
+            }
         }
+        processed.setSignatureVerified(verified);
         
-        return info;
+        logger.info("Digital signature verification: " + 
+                   (verified ? "PASSED" : "FAILED") + 
+                   " for sender: " + senderEmail);
     }
     
-    private String removeSignature(String message) {
-        int signatureStart = message.indexOf(SIGNATURE_START);
-        if (signatureStart > 0) {
-            return message.substring(0, signatureStart).trim();
+    /**
+     * Ciphertext located in an envelope with its unwrapped session key.
+     * Legacy whole-body AES envelopes carry the Base64 text in legacyCipherText instead of a stream.
+     */
+    private static class EncryptedContent {
+        final SecretKey aesKey;
+        final InputStream cipherText;
+        final boolean compressed;
+        final int sizeHint;
+        final String legacyCipherText;
+        
+        EncryptedContent(SecretKey aesKey, InputStream cipherText, boolean compressed, int sizeHint,
+                         String legacyCipherText) {
+            this.aesKey = aesKey;
+            this.cipherText = cipherText;
+            this.compressed = compressed;
+            this.sizeHint = sizeHint;
+            this.legacyCipherText = legacyCipherText;
         }
-        return message;
     }
     
-    private boolean verifySignature(String message, SignatureInfo sigInfo, String senderEmail) throws Exception {
-        if (sigInfo.signature == null || senderEmail == null) {
-            return false;
+    /**
+     * Decodes decrypted UTF-8 windows, in order, into text; a sequence split between two
+     * windows is carried over to the next one
+     */
+    private static class TextSink implements ChunkedAeadReader.PlainSink {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(8192);
+        private final StringBuilder text;
+        private ByteBuffer pending = ByteBuffer.allocate(0);
+        
+        TextSink(int sizeHint) {
+            this.text = new StringBuilder(sizeHint);
         }
         
-        try {
-            PublicKey senderPublicKey = keyService.getPublicKey(senderEmail);
-            return cryptoService.verify(message, sigInfo.signature, senderPublicKey);
-        } catch (Exception e) {
-            logger.warning("Signature verification failed: " + e.getMessage());
-            return false;
+        @Override
+        public void accept(ByteBuffer plain, boolean last) {
+            ByteBuffer in = plain;
+            if (pending.hasRemaining()) {
+                in = ByteBuffer.allocate(pending.remaining() + plain.remaining());
+                in.put(pending).put(plain).flip();
+            }
+            while (decoder.decode(in, chars, last).isOverflow()) {
+                drain();
+            }
+            if (last) {
+                while (decoder.flush(chars).isOverflow()) {
+                    drain();
+                }
+            }
+            drain();
+            // The window's buffer is reused; keep a copy of the undecoded tail
+            pending = ByteBuffer.allocate(in.remaining());
+            pending.put(in).flip();
+        }
+        
+        private void drain() {
+            chars.flip();
+            text.append(chars);
+            chars.clear();
+        }
+        
+        @Override
+        public String toString() {
+            return text.toString();
         }
     }
     
-    private static class SignatureInfo {
-        String senderEmail;
-        String signature;
-        String timestamp;
+    /**
+     * EncryptedBody over the chunks of a decoded chunked AES-GCM payload
+     */
+    private static class ChunkedBody implements EncryptedBody {
+        private final ChunkedAeadReader reader;
+        
+        ChunkedBody(ChunkedAeadReader reader) {
+            this.reader = reader;
+        }
+        
+        @Override
+        public int getSegmentCount() {
+            return reader.getChunkCount();
+        }
+        
+        @Override
+        public long getLength() {
+            return reader.getPlainLength();
+        }
+        
+        @Override
+        public byte[] readSegment(int index) throws Exception {
+            try {
+                return reader.readChunk(index);
+            } catch (IOException e) {
+                throw authenticationFailure(e);
+            }
+        }
     }
 }
@@ -0,0 +1,383 @@
+package infra.crypto;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Sharded key directory: a user's key files live in keys/&lt;ab&gt;/&lt;hash&gt;_public.key etc., where
+ * hash is the hex SHA-256 prefix of the email and ab its first byte, so no directory grows past a
+ * few hundred files and distinct emails never share a file name.
+ * A KeyIndex in the root records which key files each email has and its public key fingerprint;
+ * existence checks go to the index first. The key files stay authoritative, since another app
+ * instance may write the directory: a file missing from the index is looked for on disk, and
+ * refresh() applies file changes reported by a watch on the directory.
+ * Key files from the old flat layout (keys/alice_example_com_public.key) are moved into shards by
+ * a one-shot migration on open. Their emails cannot be recovered from the sanitised names, so they
+ * are indexed under the sanitised name and re-keyed to the email on first lookup.
+ */
+public class KeyDirectory {
+    private static final Logger logger = Logger.getLogger(KeyDirectory.class.getName());
+    
+    private static final String INDEX_FILE = "index.dat";
+    private static final String NAMES_FILE = "index.names";
+    // Index names of migrated flat files whose email is not known yet
+    private static final String LEGACY_PREFIX = "legacy:";
+    // Hex characters of the email hash used in file names (128 bits)
+    private static final int HASH_CHARS = 32;
+    
+    /**
+     * Key files kept per user, with their index flag
+     */
+    public enum KeyFile {
+        // Longer suffixes first so flat file names match the right kind
+        SIGNING_PRIVATE("_sign_private.key", 8),
+        SIGNING_PUBLIC("_sign_public.key", 4),
+        PRIVATE("_private.key", 2),
+        PUBLIC("_public.key", 1);
+        
+        final String suffix;
+        final int flag;
+        
+        KeyFile(String suffix, int flag) {
+            this.suffix = suffix;
+            this.flag = flag;
+        }
+    }
+    
+    private final Path root;
+    private final Predicate<String> fileExists;
+    private KeyIndex index;
+    private volatile int legacyEntries;
+    
+    public KeyDirectory(String root) {
+        this(root, file -> Files.exists(Paths.get(file)));
+    }
+    
+    /**
+     * @param fileExists existence check for key files missing from the index, e.g. a KeyFileCache
+     */
+    public KeyDirectory(String root, Predicate<String> fileExists) {
+        this.root = Paths.get(root);
+        this.fileExists = fileExists;
+    }
+    
+    /**
+     * Open the index, rebuilding it if needed, and migrate flat key files into shards
+     */
+    public synchronized void open() throws IOException {
+        if (index != null) {
+            return;
+        }
+        Files.createDirectories(root);
+        index = KeyIndex.open(root.resolve(INDEX_FILE), root.resolve(NAMES_FILE));
+        if (index.needsRebuild()) {
+            rebuild();
+        }
+        migrateFlat();
+        for (String name : index.names(~0)) {
+            if (name.startsWith(LEGACY_PREFIX)) {
+                legacyEntries++;
+            }
+        }
+        index.force();
+    }
+    
+    public synchronized void close() throws IOException {
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+    }
+    
+    /**
+     * Root directory, the one to watch for changes (shards are its subdirectories)
+     */
+    public Path getRoot() {
+        return root;
+    }
+    
+    /**
+     * Path of a user's key file
+     */
+    public String path(String email, KeyFile kind) {
+        String hash = hexHash(email);
+        return root.resolve(hash.substring(0, 2)).resolve(hash + kind.suffix).toString();
+    }
+    
+    /**
+     * Path of a user's key file, creating its shard directory
+     */
+    public String pathForWrite(String email, KeyFile kind) throws IOException {
+        String path = path(email, kind);
+        Files.createDirectories(Paths.get(path).getParent());
+        return path;
+    }
+    
+    /**
+     * Whether the user has all of the given key files
+     */
+    public boolean exists(String email, KeyFile... kinds) throws IOException {
+        int flags = flags(email);
+        for (KeyFile kind : kinds) {
+            if ((flags & kind.flag) == 0) {
+                // Not indexed: written by another instance, or not there at all
+                if (!fileExists.test(path(email, kind))) {
+                    return false;
+                }
+                refresh(email, kind);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Fingerprint of the user's public key (KeyIndex.fingerprint), 0 if unknown
+     */
+    public long fingerprint(String email) throws IOException {
+        flags(email);
+        return index.fingerprint(email);
+    }
+    
+    /**
+     * Record key files just written; fingerprint is the public key's, or 0 to keep the recorded one
+     */
+    public void written(String email, long fingerprint, KeyFile... kinds) throws IOException {
+        synchronized (this) {
+            int flags = flags(email);
+            for (KeyFile kind : kinds) {
+                flags |= kind.flag;
+            }
+            index.put(email, flags, fingerprint != 0 ? fingerprint : index.fingerprint(email));
+        }
+    }
+    
+    /**
+     * Record key files just deleted
+     */
+    public void deleted(String email, KeyFile... kinds) throws IOException {
+        synchronized (this) {
+            int flags = flags(email);
+            boolean keepFingerprint = true;
+            for (KeyFile kind : kinds) {
+                flags &= ~kind.flag;
+                keepFingerprint &= kind != KeyFile.PUBLIC;
+            }
+            index.put(email, flags, keepFingerprint ? index.fingerprint(email) : 0);
+        }
+    }
+    
+    /**
+     * Write the index through to disk, after a batch of changes
+     */
+    public void flush() throws IOException {
+        index.force();
+    }
+    
+    /**
+     * Emails with a public key; migrated flat entries not looked up since are not included
+     */
+    public List<String> owners() throws IOException {
+        List<String> owners = new ArrayList<>();
+        for (String name : index.names(KeyFile.PUBLIC.flag | KeyFile.SIGNING_PUBLIC.flag)) {
+            if (!name.startsWith(LEGACY_PREFIX)) {
+                owners.add(name);
+            }
+        }
+        if (legacyEntries > 0) {
+            logger.info(legacyEntries + " migrated key owner(s) are not listed until their email is used");
+        }
+        return owners;
+    }
+    
+    /**
+     * Bring the index in line with a key file changed on disk, as reported by a directory watch
+     * @return the email whose key files changed, or null if none or not known for the file
+     */
+    public String refresh(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        if (root.equals(file.getParent())) {
+            // Flat layout file written by an older version
+            if (fileName.endsWith(".key")) {
+                synchronized (this) {
+                    legacyEntries += migrateFlat();
+                }
+            }
+            return null;
+        }
+        
+        for (KeyFile kind : KeyFile.values()) {
+            if (fileName.length() == HASH_CHARS + kind.suffix.length() && fileName.endsWith(kind.suffix)) {
+                long hash;
+                try {
+                    hash = KeyIndex.hash(Long.parseUnsignedLong(fileName.substring(0, 16), 16));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                String name = index.name(hash);
+                if (name == null || !refresh(name, kind)) {
+                    return null;
+                }
+                return name.startsWith(LEGACY_PREFIX) ? null : name;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Re-check every indexed key file against the disk, e.g. after watch events were lost
+     * @return emails whose key files changed
+     */
+    public List<String> resync() throws IOException {
+        List<String> changed = new ArrayList<>();
+        for (String name : index.names(~0)) {
+            boolean any = false;
+            for (KeyFile kind : KeyFile.values()) {
+                any |= refresh(name, kind);
+            }
+            if (any && !name.startsWith(LEGACY_PREFIX)) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Record whether one key file of a name is on disk
+     * @return true if the index changed
+     */
+    private synchronized boolean refresh(String name, KeyFile kind) throws IOException {
+        Path file = Paths.get(path(name, kind));
+        int flags = index.flags(name);
+        long fingerprint = index.fingerprint(name);
+        boolean present = Files.exists(file);
+        int newFlags = present ? flags | kind.flag : flags & ~kind.flag;
+        long newFingerprint = fingerprint;
+        if (kind == KeyFile.PUBLIC) {
+            try {
+                newFingerprint = present ? KeyIndex.fingerprint(Files.readAllBytes(file)) : 0;
+            } catch (IOException e) {
+                // Deleted meanwhile; its own event follows
+                return false;
+            }
+        }
+        if (newFlags == flags && newFingerprint == fingerprint) {
+            return false;
+        }
+        index.put(name, newFlags, newFingerprint);
+        return true;
+    }
+    
+    private int flags(String email) throws IOException {
+        int flags = index.flags(email);
+        if (flags == 0 && legacyEntries > 0) {
+            flags = adoptLegacy(email);
+        }
+        return flags;
+    }
+    
+    /**
+     * Move a migrated flat entry matching the email's sanitised name to the email's own files
+     */
+    private synchronized int adoptLegacy(String email) throws IOException {
+        String legacyName = LEGACY_PREFIX + sanitize(email);
+        int flags = index.flags(legacyName);
+        if (flags == 0) {
+            return index.flags(email);
+        }
+        for (KeyFile kind : KeyFile.values()) {
+            if ((flags & kind.flag) != 0) {
+                Files.move(Paths.get(path(legacyName, kind)), Paths.get(pathForWrite(email, kind)),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        index.put(email, flags, index.fingerprint(legacyName));
+        index.put(legacyName, 0, 0);
+        index.force();
+        legacyEntries--;
+        logger.fine("Adopted migrated key files for: " + email);
+        return flags;
+    }
+    
+    /**
+     * Move key files in the flat layout (directly in the root) into shards, at open and
+     * whenever an older version writes one
+     * @return number of new migrated entries
+     */
+    private int migrateFlat() throws IOException {
+        int moved = 0;
+        int added = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*.key")) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                String fileName = file.getFileName().toString();
+                for (KeyFile kind : KeyFile.values()) {
+                    if (fileName.endsWith(kind.suffix)) {
+                        String name = LEGACY_PREFIX + fileName.substring(0, fileName.length() - kind.suffix.length());
+                        long fingerprint = kind == KeyFile.PUBLIC
+                                ? KeyIndex.fingerprint(Files.readAllBytes(file)) : index.fingerprint(name);
+                        Files.move(file, Paths.get(pathForWrite(name, kind)), StandardCopyOption.REPLACE_EXISTING);
+                        if (index.flags(name) == 0) {
+                            added++;
+                        }
+                        index.put(name, index.flags(name) | kind.flag, fingerprint);
+                        moved++;
+                        break;
+                    }
+                }
+            }
+        }
+        if (moved > 0) {
+            logger.info("Migrated " + moved + " key file(s) from the flat layout of " + root + " into shards");
+        }
+        return added;
+    }
+    
+    /**
+     * Refill a recreated index from the names file and the key files present
+     */
+    private void rebuild() throws IOException {
+        int restored = 0;
+        for (String name : new LinkedHashSet<>(index.loggedNames())) {
+            int flags = 0;
+            for (KeyFile kind : KeyFile.values()) {
+                if (Files.exists(Paths.get(path(name, kind)))) {
+                    flags |= kind.flag;
+                }
+            }
+            if (flags != 0) {
+                Path publicKey = Paths.get(path(name, KeyFile.PUBLIC));
+                long fingerprint = (flags & KeyFile.PUBLIC.flag) != 0
+                        ? KeyIndex.fingerprint(Files.readAllBytes(publicKey)) : 0;
+                index.put(name, flags, fingerprint);
+                restored++;
+            }
+        }
+        logger.info("Rebuilt key index of " + root + ": " + restored + " owner(s)");
+    }
+    
+    private static String hexHash(String name) {
+        byte[] hash = KeyIndex.sha256(name.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(HASH_CHARS);
+        for (int i = 0; i < HASH_CHARS / 2; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+    
+    // Flat layout file name stem
+    private static String sanitize(String email) {
+        return email.replace("@", "_").replace(".", "_");
+    }
+}
@@ -0,0 +1,262 @@
+package infra.crypto;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.Key;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Parsed keys and file existence for the files of one key directory and its shard
+ * subdirectories, so steady-state key lookups never touch disk. File names must be unique
+ * across the subdirectories.
+ * Entries are dropped when a WatchService reports the file created, modified or deleted,
+ * and by the owner right after it writes or deletes a key file itself. Watched changes are
+ * then passed on to the change listener, if set.
+ * If the directory cannot be watched the cache stays off and every lookup reads the file.
+ */
+public class KeyFileCache {
+    private static final Logger logger = Logger.getLogger(KeyFileCache.class.getName());
+    
+    /**
+     * Reads and parses one key file
+     */
+    @FunctionalInterface
+    public interface Loader<K extends Key> {
+        K load(String file) throws Exception;
+    }
+    
+    /**
+     * Told about a key file changed on disk, after its entry is dropped
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        // file is null when events were lost and any file may have changed
+        void onChanged(Path file);
+    }
+    
+    private final Path directory;
+    // Keyed by file name within the directory
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile ChangeListener changeListener;
+    private WatchService watchService;
+    
+    public KeyFileCache(String directory) {
+        this.directory = Paths.get(directory);
+    }
+    
+    /**
+     * Start watching the directory (created if missing); without a watch the cache stays off
+     * @return true if lookups are cached
+     */
+    public synchronized boolean start() {
+        if (enabled) {
+            return true;
+        }
+        try {
+            Files.createDirectories(directory);
+            watchService = FileSystems.getDefault().newWatchService();
+            register(directory);
+            // Shard subdirectories of a KeyDirectory; ones created later are registered by the watcher
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path child : children) {
+                    register(child);
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warning("Key cache disabled, cannot watch " + directory + ": " + e.getMessage());
+            return false;
+        }
+        
+        Thread watcher = new Thread(this::watch, "key-file-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        enabled = true;
+        logger.fine("Caching keys from " + directory.toAbsolutePath());
+        return true;
+    }
+    
+    /**
+     * Stop watching and drop every entry; later lookups read the files again
+     */
+    public synchronized void stop() {
+        enabled = false;
+        entries.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.fine("Closing key directory watch failed: " + e.getMessage());
+            }
+            watchService = null;
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+    
+    /**
+     * Whether a key file exists
+     */
+    public boolean exists(String file) {
+        if (!enabled) {
+            return Files.exists(Paths.get(file));
+        }
+        Entry entry = entries.get(name(file));
+        if (entry == null) {
+            entry = entries.computeIfAbsent(name(file),
+                    name -> Files.exists(Paths.get(file)) ? Entry.PRESENT : Entry.MISSING);
+        }
+        return entry.exists;
+    }
+    
+    /**
+     * The parsed key of a file, loading it on first use
+     * @throws FileNotFoundException if the file does not exist
+     */
+    @SuppressWarnings("unchecked")
+    public <K extends Key> K get(String file, Loader<K> loader) throws Exception {
+        if (!enabled) {
+            return loader.load(file);
+        }
+        String name = name(file);
+        Entry entry = entries.get(name);
+        if (entry == null || (entry.exists && entry.key == null)) {
+            try {
+                // The load runs inside compute, so an invalidation for this file waits for it
+                // and always removes the freshly loaded key rather than racing it
+                entry = entries.compute(name, (n, current) -> {
+                    if (current != null && current.key != null) {
+                        return current;
+                    }
+                    try {
+                        return new Entry(loader.load(file));
+                    } catch (FileNotFoundException | NoSuchFileException e) {
+                        return Entry.MISSING;
+                    } catch (Exception e) {
+                        throw new LoadFailure(e);
+                    }
+                });
+            } catch (LoadFailure e) {
+                throw (Exception) e.getCause();
+            }
+        }
+        if (!entry.exists) {
+            throw new FileNotFoundException(file + " (No such file or directory)");
+        }
+        return (K) entry.key;
+    }
+    
+    /**
+     * Forget key files just written or deleted
+     */
+    public void invalidate(String... files) {
+        for (String file : files) {
+            entries.remove(name(file));
+        }
+    }
+    
+    private void watch() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        entries.clear();
+                        changed(null);
+                    } else {
+                        entries.remove(event.context().toString());
+                        Path created = ((Path) key.watchable()).resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                                && key.watchable().equals(directory) && Files.isDirectory(created)) {
+                            try {
+                                register(created);
+                            } catch (IOException e) {
+                                // An unwatched shard could serve stale keys
+                                logger.warning("Key cache disabled, cannot watch " + created + ": " + e.getMessage());
+                                stop();
+                                return;
+                            }
+                            // Files may have landed in the shard before it was watched
+                            changed(null);
+                        } else {
+                            changed(created);
+                        }
+                    }
+                }
+                if (!key.reset() && key.watchable().equals(directory)) {
+                    // Directory deleted or no longer accessible: stop trusting the cache
+                    logger.warning("Key directory watch lost, key cache disabled: " + directory);
+                    stop();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+    
+    private void changed(Path file) {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            try {
+                listener.onChanged(file);
+            } catch (RuntimeException e) {
+                logger.warning("Key file change listener failed for " + file + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private void register(Path dir) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+    
+    private static String name(String file) {
+        return file.substring(Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar)) + 1);
+    }
+    
+    private static final class Entry {
+        static final Entry PRESENT = new Entry(true, null);
+        static final Entry MISSING = new Entry(false, null);
+        
+        final boolean exists;
+        final Key key;
+        
+        Entry(Key key) {
+            this(true, key);
+        }
+        
+        private Entry(boolean exists, Key key) {
+            this.exists = exists;
+            this.key = key;
+        }
+    }
+    
+    private static final class LoadFailure extends RuntimeException {
+        LoadFailure(Exception cause) {
+            super(cause);
+        }
+    }
+}
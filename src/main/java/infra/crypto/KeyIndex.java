@@ -0,0 +1,380 @@
+package infra.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Compact on-disk index of a key directory: an open-addressing hash table in a memory-mapped file.
+ * Each 32-byte slot maps the first 8 bytes of SHA-256(name) to the key files present (flag bits)
+ * and the public key fingerprint, so existence checks are one or two memory reads, no file system calls.
+ * Names themselves go to an append-only side file ("name\n" per entry) the slots point into;
+ * it is only read to list owners and to rebuild the table.
+ * Two names sharing a 64-bit hash prefix are treated as one (about 1 in 10^9 at 100k names).
+ * One process at a time owns the files through an exclusive lock on the table; any other
+ * (another app instance on the same directory) works on a private in-memory copy taken at open,
+ * so the index is only ever a cache of the key files and its owner must re-check misses against them.
+ */
+public class KeyIndex implements Closeable {
+    private static final Logger logger = Logger.getLogger(KeyIndex.class.getName());
+    
+    private static final int MAGIC = 0x454d4b49; // "EMKI"
+    private static final int VERSION = 1;
+    private static final int STATE_CLEAN = 1;
+    private static final int STATE_RESIZING = 2;
+    
+    // Header: magic, version, capacity, used slots, state
+    private static final int HEADER_SIZE = 32;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_USED = 12;
+    private static final int OFFSET_STATE = 16;
+    
+    // Slot: name hash, public key fingerprint, offset of the name in the names file, flags
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_FINGERPRINT = 8;
+    private static final int SLOT_NAME = 16;
+    private static final int SLOT_FLAGS = 24;
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    private final Path indexFile;
+    private final Path namesFile;
+    private FileChannel channel;
+    private FileChannel names;
+    private FileLock lock;
+    // Memory-mapped when this process owns the files, a heap copy otherwise
+    private ByteBuffer map;
+    // Names appended by a process that does not own the files, after the names file's content
+    private ByteArrayOutputStream privateNames;
+    private int capacity;
+    private int used;
+    private boolean rebuilt;
+    
+    private KeyIndex(Path indexFile, Path namesFile) {
+        this.indexFile = indexFile;
+        this.namesFile = namesFile;
+    }
+    
+    /**
+     * Open (or create) the index; a missing, foreign or half-resized table is recreated empty
+     * and reported by needsRebuild()
+     */
+    public static KeyIndex open(Path indexFile, Path namesFile) throws IOException {
+        KeyIndex index = new KeyIndex(indexFile, namesFile);
+        index.load();
+        return index;
+    }
+    
+    private void load() throws IOException {
+        boolean existed = Files.exists(indexFile);
+        channel = FileChannel.open(indexFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        names = FileChannel.open(namesFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Another KeyIndex of this JVM owns the files
+            lock = null;
+        }
+        if (lock == null) {
+            logger.info("Key index " + indexFile + " is in use by another instance, keeping a private copy");
+            privateNames = new ByteArrayOutputStream();
+            privateNames.write(readFile(names));
+        }
+        
+        if (existed && channel.size() >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            int storedCapacity = header.getInt();
+            int storedUsed = header.getInt();
+            int state = header.getInt();
+            if (magic == MAGIC && version == VERSION && state == STATE_CLEAN
+                    && Integer.bitCount(storedCapacity) == 1
+                    && channel.size() >= HEADER_SIZE + (long) storedCapacity * SLOT_SIZE) {
+                capacity = storedCapacity;
+                used = storedUsed;
+                map = table(HEADER_SIZE + (long) capacity * SLOT_SIZE);
+                if (!isOwner()) {
+                    while (map.hasRemaining() && channel.read(map, map.position()) >= 0) {
+                        // read until full
+                    }
+                    map.clear();
+                }
+                return;
+            }
+            logger.warning("Key index " + indexFile + " is damaged or from another version, rebuilding");
+        }
+        
+        // New or unusable table: start empty, the owner refills it from the names file and the key files
+        rebuilt = existed || names.size() > 0;
+        if (isOwner()) {
+            channel.truncate(0);
+        }
+        capacity = INITIAL_CAPACITY;
+        used = 0;
+        map = table(HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        writeHeader(STATE_CLEAN);
+    }
+    
+    /**
+     * Whether the table was recreated over an existing names file and must be refilled
+     */
+    public boolean needsRebuild() {
+        return rebuilt;
+    }
+    
+    /**
+     * Whether this process owns the index files; otherwise changes stay in memory
+     */
+    public boolean isOwner() {
+        return lock != null;
+    }
+    
+    /**
+     * Key file flags recorded for a name, 0 if none
+     */
+    public synchronized int flags(String name) {
+        int slot = find(hash(name));
+        return map.getLong(slot) == 0 ? 0 : map.getInt(slot + SLOT_FLAGS);
+    }
+    
+    /**
+     * Public key fingerprint recorded for a name, 0 if none
+     */
+    public synchronized long fingerprint(String name) {
+        int slot = find(hash(name));
+        return map.getLong(slot) == 0 ? 0 : map.getLong(slot + SLOT_FINGERPRINT);
+    }
+    
+    /**
+     * Name recorded under a hash, null if none
+     */
+    public synchronized String name(long hash) throws IOException {
+        int slot = find(hash);
+        return map.getLong(slot) == 0 ? null : nameAt(readNames(), map.getLong(slot + SLOT_NAME));
+    }
+    
+    /**
+     * Record the key files of a name; flags 0 marks it as having no keys
+     */
+    public synchronized void put(String name, int flags, long fingerprint) throws IOException {
+        long hash = hash(name);
+        int slot = find(hash);
+        if (map.getLong(slot) == 0) {
+            if (flags == 0) {
+                return;
+            }
+            if ((used + 1) * 2 > capacity) {
+                resize(capacity * 2);
+                slot = find(hash);
+            }
+            map.putLong(slot + SLOT_NAME, appendName(name));
+            map.putLong(slot, hash);
+            used++;
+            writeHeader(STATE_CLEAN);
+        }
+        map.putLong(slot + SLOT_FINGERPRINT, fingerprint);
+        map.putInt(slot + SLOT_FLAGS, flags);
+    }
+    
+    /**
+     * Names with any of the given flags, in table order
+     */
+    public synchronized List<String> names(int anyOf) throws IOException {
+        byte[] log = readNames();
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            if (map.getLong(slot) != 0 && (map.getInt(slot + SLOT_FLAGS) & anyOf) != 0) {
+                result.add(nameAt(log, map.getLong(slot + SLOT_NAME)));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Every name ever recorded in the names file, for rebuilding the table
+     */
+    public synchronized List<String> loggedNames() throws IOException {
+        byte[] log = readNames();
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < log.length; i++) {
+            if (log[i] == '\n') {
+                result.add(new String(log, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Write the table and names file through to disk
+     */
+    public synchronized void force() throws IOException {
+        if (isOwner()) {
+            ((MappedByteBuffer) map).force();
+            names.force(false);
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        if (lock != null) {
+            lock.release();
+        }
+        names.close();
+        channel.close();
+    }
+    
+    // Slot of the hash, or the empty slot where it would go
+    private int find(long hash) {
+        int mask = capacity - 1;
+        int i = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            long stored = map.getLong(slot);
+            if (stored == hash || stored == 0) {
+                return slot;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+    
+    private void resize(int newCapacity) throws IOException {
+        // Slots without keys are dropped; their names stay in the names file until re-added
+        List<long[]> live = new ArrayList<>(used);
+        for (int i = 0; i < capacity; i++) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            if (map.getLong(slot) != 0 && map.getInt(slot + SLOT_FLAGS) != 0) {
+                live.add(new long[] { map.getLong(slot), map.getLong(slot + SLOT_FINGERPRINT),
+                        map.getLong(slot + SLOT_NAME), map.getInt(slot + SLOT_FLAGS) });
+            }
+        }
+        
+        // A crash between here and the final header write leaves STATE_RESIZING, so the next open rebuilds
+        writeHeader(STATE_RESIZING);
+        force();
+        ByteBuffer old = map;
+        map = table(HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        if (!isOwner()) {
+            // A fresh heap table: carry over the header
+            map.put(old.duplicate().position(0).limit(HEADER_SIZE));
+            map.clear();
+        }
+        for (int i = 0; i < capacity; i++) {
+            map.putLong(HEADER_SIZE + i * SLOT_SIZE, 0);
+        }
+        capacity = newCapacity;
+        for (long[] entry : live) {
+            int slot = find(entry[0]);
+            map.putLong(slot, entry[0]);
+            map.putLong(slot + SLOT_FINGERPRINT, entry[1]);
+            map.putLong(slot + SLOT_NAME, entry[2]);
+            map.putInt(slot + SLOT_FLAGS, (int) entry[3]);
+        }
+        used = live.size();
+        writeHeader(STATE_CLEAN);
+        force();
+        logger.fine("Key index resized to " + newCapacity + " slots");
+    }
+    
+    private void writeHeader(int state) {
+        map.putInt(OFFSET_CAPACITY, capacity);
+        map.putInt(OFFSET_USED, used);
+        map.putInt(OFFSET_STATE, state);
+    }
+    
+    private ByteBuffer table(long size) throws IOException {
+        return isOwner() ? channel.map(FileChannel.MapMode.READ_WRITE, 0, size) : ByteBuffer.allocate((int) size);
+    }
+    
+    private long appendName(String name) throws IOException {
+        byte[] line = (name + "\n").getBytes(StandardCharsets.UTF_8);
+        if (!isOwner()) {
+            long offset = privateNames.size();
+            privateNames.write(line);
+            return offset;
+        }
+        long offset = names.size();
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            names.write(buffer, offset + buffer.position());
+        }
+        return offset;
+    }
+    
+    private byte[] readNames() throws IOException {
+        return isOwner() ? readFile(names) : privateNames.toByteArray();
+    }
+    
+    private static byte[] readFile(FileChannel file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) file.size());
+        while (buffer.hasRemaining() && file.read(buffer, buffer.position()) >= 0) {
+            // read until full
+        }
+        return buffer.array();
+    }
+    
+    private static String nameAt(byte[] log, long offset) {
+        int start = (int) offset;
+        int end = start;
+        while (end < log.length && log[end] != '\n') {
+            end++;
+        }
+        return new String(log, start, end - start, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * First 8 bytes of SHA-256(name); never 0, which marks an empty slot
+     */
+    static long hash(String name) {
+        return nonZero(ByteBuffer.wrap(sha256(name.getBytes(StandardCharsets.UTF_8))).getLong());
+    }
+    
+    /**
+     * Hash of a name from the first 8 bytes of its SHA-256, e.g. as found in a key file name
+     */
+    static long hash(long sha256Prefix) {
+        return nonZero(sha256Prefix);
+    }
+    
+    /**
+     * First 8 bytes of SHA-256 of an encoded public key
+     */
+    public static long fingerprint(byte[] encodedKey) {
+        return nonZero(ByteBuffer.wrap(sha256(encodedKey)).getLong());
+    }
+    
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static long nonZero(long value) {
+        return value == 0 ? 1 : value;
+    }
+}
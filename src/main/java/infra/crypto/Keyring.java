@@ -0,0 +1,268 @@
+package infra.crypto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.security.interfaces.RSAKey;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import core.service.KeyService;
+import crypto.CurveCrypto;
+import crypto.KeyUtil;
+import util.ValidationUtil;
+
+/**
+ * Keyring file: many users' public keys in one UTF-8 text file, one "email key" pair per line
+ * (key as Base64 X.509, the same encoding exportPublicKey returns). Blank lines and lines starting
+ * with '#' are ignored. An account with an Ed25519 signing key has a second line for it.
+ * Import parses and validates the lines in parallel and writes them to the key store in batches;
+ * export streams the keys out in pages. Bad entries are reported per line, never abort the batch.
+ */
+public class Keyring {
+    private static final Logger logger = Logger.getLogger(Keyring.class.getName());
+    
+    public static final String HEADER = "# encryptmail keyring v1";
+    
+    // Keys written to the store per importPublicKeys call, and looked up per getPublicKeys call on export
+    private static final int BATCH_SIZE = 500;
+    // Lines parsed in parallel between two progress reports
+    private static final int PARSE_CHUNK = 4096;
+    private static final int MIN_RSA_BITS = 2048;
+    
+    /**
+     * Progress callback; called from the calling thread between batches
+     */
+    public interface ProgressListener {
+        void onProgress(String phase, int done, int total);
+    }
+    
+    /**
+     * An entry that could not be imported or exported
+     */
+    public static class Failure {
+        private final int line;
+        private final String email;
+        private final String message;
+        
+        public Failure(int line, String email, String message) {
+            this.line = line;
+            this.email = email;
+            this.message = message;
+        }
+        
+        /** Line number in the keyring file, 0 on export */
+        public int getLine() { return line; }
+        public String getEmail() { return email; }
+        public String getMessage() { return message; }
+        
+        @Override
+        public String toString() {
+            return (line > 0 ? "line " + line + ": " : "") + (email != null ? email + ": " : "") + message;
+        }
+    }
+    
+    /**
+     * Outcome of an import or export
+     */
+    public static class Report {
+        private final int succeeded;
+        private final List<Failure> failures;
+        
+        public Report(int succeeded, List<Failure> failures) {
+            this.succeeded = succeeded;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+        
+        /** Keys imported or exported */
+        public int getSucceeded() { return succeeded; }
+        public List<Failure> getFailures() { return failures; }
+        
+        @Override
+        public String toString() {
+            return succeeded + " key(s) processed, " + failures.size() + " failed";
+        }
+    }
+    
+    private Keyring() {
+    }
+    
+    /**
+     * Import a keyring file into the key store
+     */
+    public static Report importFile(Path file, KeyService keyService, ProgressListener progress) throws IOException {
+        List<String> lines;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        return importLines(lines, keyService, progress);
+    }
+    
+    /**
+     * Import keyring lines into the key store
+     */
+    public static Report importLines(List<String> lines, KeyService keyService, ProgressListener progress) {
+        // Decoding keys (ASN.1 parsing, RSA modulus checks) is the CPU-heavy part; spread it over the cores
+        List<Parsed> parsed = new ArrayList<>();
+        for (int start = 0; start < lines.size(); start += PARSE_CHUNK) {
+            int end = Math.min(lines.size(), start + PARSE_CHUNK);
+            parsed.addAll(IntStream.range(start, end)
+                    .parallel()
+                    .mapToObj(i -> parse(i + 1, lines.get(i)))
+                    .filter(entry -> entry != null)
+                    .collect(Collectors.toList()));
+            report(progress, "parse", end, lines.size());
+        }
+        
+        List<Failure> failures = new ArrayList<>();
+        List<Parsed> valid = new ArrayList<>(parsed.size());
+        for (Parsed entry : parsed) {
+            if (entry.error != null) {
+                failures.add(new Failure(entry.line, entry.email, entry.error));
+            } else {
+                valid.add(entry);
+            }
+        }
+        
+        int imported = 0;
+        for (int start = 0; start < valid.size(); start += BATCH_SIZE) {
+            List<Parsed> batch = valid.subList(start, Math.min(valid.size(), start + BATCH_SIZE));
+            List<Map.Entry<String, PublicKey>> keys = new ArrayList<>(batch.size());
+            for (Parsed entry : batch) {
+                keys.add(new AbstractMap.SimpleImmutableEntry<>(entry.email, entry.key));
+            }
+            Map<Integer, Exception> batchFailures = keyService.importPublicKeys(keys);
+            for (Map.Entry<Integer, Exception> failure : batchFailures.entrySet()) {
+                Parsed entry = batch.get(failure.getKey());
+                failures.add(new Failure(entry.line, entry.email, String.valueOf(failure.getValue().getMessage())));
+            }
+            imported += batch.size() - batchFailures.size();
+            report(progress, "import", start + batch.size(), valid.size());
+        }
+        
+        failures.sort((a, b) -> Integer.compare(a.getLine(), b.getLine()));
+        logger.info("Keyring import: " + imported + " key(s) imported, " + failures.size() + " failed");
+        return new Report(imported, failures);
+    }
+    
+    /**
+     * Export the public keys of the given users (all key owners if null) to a keyring file
+     */
+    public static Report exportFile(Path file, KeyService keyService, Collection<String> emails,
+                                    ProgressListener progress) throws Exception {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return export(writer, keyService, emails, progress);
+        }
+    }
+    
+    /**
+     * Write the public keys of the given users (all key owners if null) as keyring lines,
+     * looking them up a page at a time
+     */
+    public static Report export(Writer writer, KeyService keyService, Collection<String> emails,
+                                ProgressListener progress) throws Exception {
+        List<String> owners = new ArrayList<>(emails != null ? emails : keyService.listKeyOwners());
+        List<Failure> failures = new ArrayList<>();
+        int exported = 0;
+        
+        writer.write(HEADER);
+        writer.write('\n');
+        for (int start = 0; start < owners.size(); start += BATCH_SIZE) {
+            List<String> page = owners.subList(start, Math.min(owners.size(), start + BATCH_SIZE));
+            Map<String, PublicKey> keys = keyService.getPublicKeys(page);
+            for (String email : page) {
+                PublicKey key = keys.get(email);
+                if (key == null) {
+                    failures.add(new Failure(0, email, "No public key"));
+                    continue;
+                }
+                writeLine(writer, email, key);
+                exported++;
+                try {
+                    // Curve accounts verify signatures with a separate Ed25519 key
+                    PublicKey signingKey = keyService.getSigningPublicKey(email);
+                    if (!signingKey.equals(key)) {
+                        writeLine(writer, email, signingKey);
+                        exported++;
+                    }
+                } catch (Exception e) {
+                    failures.add(new Failure(0, email, "Signing key: " + e.getMessage()));
+                }
+            }
+            report(progress, "export", start + page.size(), owners.size());
+        }
+        writer.flush();
+        
+        logger.info("Keyring export: " + exported + " key(s) exported, " + failures.size() + " failed");
+        return new Report(exported, failures);
+    }
+    
+    private static void writeLine(Writer writer, String email, PublicKey key) throws IOException {
+        writer.write(email);
+        writer.write(' ');
+        writer.write(Base64.getEncoder().encodeToString(key.getEncoded()));
+        writer.write('\n');
+    }
+    
+    /**
+     * Parse and validate one line; null for blank and comment lines
+     */
+    private static Parsed parse(int line, String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        String[] fields = trimmed.split("\\s+");
+        String email = fields[0];
+        if (fields.length != 2) {
+            return new Parsed(line, email, null, "Expected \"email key\", found " + fields.length + " field(s)");
+        }
+        if (!ValidationUtil.isValidEmail(email)) {
+            return new Parsed(line, email, null, "Invalid email address");
+        }
+        try {
+            PublicKey key = KeyUtil.decodePublicKey(Base64.getDecoder().decode(fields[1]));
+            if (key instanceof RSAKey && ((RSAKey) key).getModulus().bitLength() < MIN_RSA_BITS) {
+                return new Parsed(line, email, null, "RSA key shorter than " + MIN_RSA_BITS + " bits");
+            }
+            if (!(key instanceof RSAKey) && !CurveCrypto.isX25519(key) && !CurveCrypto.isEd25519(key)) {
+                return new Parsed(line, email, null, "Unsupported key type " + key.getAlgorithm());
+            }
+            return new Parsed(line, email, key, null);
+        } catch (Exception e) {
+            return new Parsed(line, email, null, "Invalid public key: " + e.getMessage());
+        }
+    }
+    
+    private static void report(ProgressListener progress, String phase, int done, int total) {
+        if (progress != null) {
+            progress.onProgress(phase, done, total);
+        }
+    }
+    
+    private static class Parsed {
+        final int line;
+        final String email;
+        final PublicKey key;
+        final String error;
+        
+        Parsed(int line, String email, PublicKey key, String error) {
+            this.line = line;
+            this.email = email;
+            this.key = key;
+            this.error = error;
+        }
+    }
+}
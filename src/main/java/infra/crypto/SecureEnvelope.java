@@ -0,0 +1,235 @@
+package infra.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed view of an armored secure message, built in one linear scan.
+ * Header fields are only recognised inside their BEGIN/END block and are kept as
+ * offsets into the original message, so large Content fields are never copied.
+ */
+final class SecureEnvelope {
+    
+    static final String ENCRYPTED_START = "-----BEGIN ENCRYPTED MESSAGE-----";
+    static final String ENCRYPTED_END = "-----END ENCRYPTED MESSAGE-----";
+    static final String SIGNATURE_START = "-----BEGIN DIGITAL SIGNATURE-----";
+    static final String SIGNATURE_END = "-----END DIGITAL SIGNATURE-----";
+    
+    private static final int OUTSIDE = 0;
+    private static final int IN_ENCRYPTED = 1;
+    private static final int IN_SIGNATURE = 2;
+    
+    private final String message;
+    private boolean encrypted;
+    private boolean signed;
+    private int signatureBlockStart = -1;
+    private int payloadStart = -1;
+    private int payloadEnd = -1;
+    
+    // Field value ranges: [start, end), start == -1 when absent
+    private final int[] version = { -1, -1 };
+    private final int[] recipients = { -1, -1 };
+    private final int[] cipher = { -1, -1 };
+    private final int[] compression = { -1, -1 };
+    private final int[] content = { -1, -1 };
+    private final int[] sender = { -1, -1 };
+    private final int[] signature = { -1, -1 };
+    private final int[] timestamp = { -1, -1 };
+    private final int[] signatureAlgorithm = { -1, -1 };
+    private final List<int[]> wrappedKeys = new ArrayList<>();
+    // Message up to the signature block, whitespace-trimmed
+    private int[] signedRegion;
+    
+    private SecureEnvelope(String message) {
+        this.message = message;
+    }
+    
+    /**
+     * Parse the message. Never fails; absent blocks simply report false.
+     * @param message raw message text
+     * @return parsed envelope
+     */
+    static SecureEnvelope parse(String message) {
+        SecureEnvelope envelope = new SecureEnvelope(message);
+        envelope.scan();
+        return envelope;
+    }
+    
+    private void scan() {
+        int length = message.length();
+        int state = OUTSIDE;
+        int encryptedBlockStart = -1;
+        int pos = 0;
+        
+        while (pos < length) {
+            int newline = message.indexOf('\n', pos);
+            int lineEnd = newline < 0 ? length : newline;
+            int next = newline < 0 ? length : newline + 1;
+            if (lineEnd > pos && message.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            
+            switch (state) {
+                case OUTSIDE:
+                    if (lineEquals(pos, lineEnd, ENCRYPTED_START) && encryptedBlockStart < 0) {
+                        encryptedBlockStart = pos;
+                        state = IN_ENCRYPTED;
+                    } else if (lineEquals(pos, lineEnd, SIGNATURE_START) && signatureBlockStart < 0) {
+                        signatureBlockStart = pos;
+                        state = IN_SIGNATURE;
+                    }
+                    break;
+                case IN_ENCRYPTED:
+                    if (lineEquals(pos, lineEnd, ENCRYPTED_END)) {
+                        encrypted = true;
+                        if (payloadStart >= 0) {
+                            payloadEnd = pos;
+                        }
+                        state = OUTSIDE;
+                    } else if (payloadStart >= 0) {
+                        // Binary payload lines; Base64 never contains header separators
+                        break;
+                    } else if (field(pos, lineEnd, "Version: ", version)) {
+                        if (getVersion() >= BinaryEnvelope.VERSION) {
+                            payloadStart = next;
+                        }
+                    } else if (!field(pos, lineEnd, "Content: ", content)
+                            && !field(pos, lineEnd, "Wrapped-Key: ", null)
+                            && !field(pos, lineEnd, "Cipher: ", cipher)
+                            && !field(pos, lineEnd, "Compression: ", compression)) {
+                        field(pos, lineEnd, "Recipient: ", recipients);
+                    }
+                    break;
+                case IN_SIGNATURE:
+                    if (lineEquals(pos, lineEnd, SIGNATURE_END)) {
+                        signed = true;
+                        state = OUTSIDE;
+                    } else if (!field(pos, lineEnd, "Signature: ", signature)
+                            && !field(pos, lineEnd, "Sender: ", sender)
+                            && !field(pos, lineEnd, "Algorithm: ", signatureAlgorithm)) {
+                        field(pos, lineEnd, "Timestamp: ", timestamp);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pos = next;
+        }
+        
+        if (!signed) {
+            signatureBlockStart = -1;
+        }
+        signedRegion = CanonicalText.signedRegion(message, signed ? signatureBlockStart : length);
+    }
+    
+    private boolean lineEquals(int start, int end, String marker) {
+        return end - start == marker.length() && message.startsWith(marker, start);
+    }
+    
+    /**
+     * Record the value range of "Name: value" if the line starts with the prefix.
+     * A null target means a Wrapped-Key entry, which may repeat.
+     */
+    private boolean field(int start, int end, String prefix, int[] target) {
+        if (!message.startsWith(prefix, start)) {
+            return false;
+        }
+        int valueStart = start + prefix.length();
+        if (target == null) {
+            wrappedKeys.add(new int[] { valueStart, end });
+        } else if (target[0] < 0) {
+            target[0] = valueStart;
+            target[1] = end;
+        }
+        return true;
+    }
+    
+    private String value(int[] range) {
+        return range[0] < 0 ? null : message.substring(range[0], range[1]).trim();
+    }
+    
+    String getMessage() { return message; }
+    
+    boolean isEncrypted() { return encrypted; }
+    
+    boolean isSigned() { return signed; }
+    
+    String getRecipients() { return value(recipients); }
+    
+    String getCipher() { return value(cipher); }
+    
+    String getCompression() { return value(compression); }
+    
+    String getSender() { return value(sender); }
+    
+    String getSignature() { return value(signature); }
+    
+    String getTimestamp() { return value(timestamp); }
+    
+    String getSignatureAlgorithm() { return value(signatureAlgorithm); }
+    
+    /**
+     * Envelope version: 1 for the text header format, 2+ for a Base64 armored binary payload
+     */
+    int getVersion() {
+        if (version[0] < 0) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(value(version));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    boolean hasPayload() { return payloadEnd >= 0; }
+
+    int getPayloadStart() { return payloadStart; }
+
+    int getPayloadEnd() { return payloadEnd; }
+
+    boolean hasContent() { return content[0] >= 0; }
+    
+    int getContentStart() { return content[0]; }
+    
+    int getContentEnd() { return content[1]; }
+    
+    /**
+     * Find the wrapped session key for a recipient key fingerprint.
+     * Legacy single-recipient envelopes carry one entry without a fingerprint, used as fallback.
+     * @param fingerprint recipient public key fingerprint
+     * @return wrapped key (Base64) or null
+     */
+    String getWrappedKey(String fingerprint) {
+        String legacyKey = null;
+        for (int[] range : wrappedKeys) {
+            int space = message.indexOf(' ', range[0]);
+            if (space > range[0] && space < range[1]) {
+                if (space - range[0] == fingerprint.length()
+                        && message.regionMatches(range[0], fingerprint, 0, fingerprint.length())) {
+                    return message.substring(space + 1, range[1]).trim();
+                }
+            } else if (legacyKey == null) {
+                legacyKey = message.substring(range[0], range[1]).trim();
+            }
+        }
+        return legacyKey;
+    }
+    
+    /**
+     * Start of the signed region (the message up to the signature block, whitespace-trimmed)
+     */
+    int getSignedStart() { return signedRegion[0]; }
+    
+    /**
+     * End of the signed region (exclusive)
+     */
+    int getSignedEnd() { return signedRegion[1]; }
+    
+    /**
+     * The signed content without the signature block
+     */
+    String getSignedContent() {
+        return message.substring(signedRegion[0], signedRegion[1]);
+    }
+}
@@ -0,0 +1,181 @@
+package infra.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Bounded, time-limited LRU cache of unwrapped AES session keys.
+ * Entries are keyed by SHA-256(recipient, wrapped key) so the wrapped key itself is not retained.
+ * Key material of evicted, expired or invalidated entries is zeroed.
+ */
+public class SessionKeyCache {
+    private static final Logger logger = Logger.getLogger(SessionKeyCache.class.getName());
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries;
+    
+    public SessionKeyCache(int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > SessionKeyCache.this.maxEntries) {
+                    eldest.getValue().destroy();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Look up a previously unwrapped session key
+     * @param wrappedKey wrapped key as found in the envelope
+     * @param recipientEmail recipient the key was unwrapped for
+     * @return a fresh copy of the session key, or null if absent or expired
+     */
+    public SecretKey get(String wrappedKey, String recipientEmail) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        
+        String cacheKey = cacheKey(wrappedKey, recipientEmail);
+        lock.lock();
+        try {
+            Entry entry = entries.get(cacheKey);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(cacheKey);
+                entry.destroy();
+                return null;
+            }
+            return new SecretKeySpec(entry.keyBytes, entry.algorithm);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Remember an unwrapped session key
+     * @param wrappedKey wrapped key as found in the envelope
+     * @param recipientEmail recipient the key was unwrapped for
+     * @param sessionKey unwrapped AES key
+     */
+    public void put(String wrappedKey, String recipientEmail, SecretKey sessionKey) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        
+        byte[] encoded = sessionKey.getEncoded();
+        if (encoded == null) {
+            return;
+        }
+        
+        Entry entry = new Entry(recipientEmail, sessionKey.getAlgorithm(), encoded,
+                                System.currentTimeMillis() + ttlMillis);
+        lock.lock();
+        try {
+            Entry previous = entries.put(cacheKey(wrappedKey, recipientEmail), entry);
+            if (previous != null) {
+                previous.destroy();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Drop every session key unwrapped for the recipient, e.g. after key deletion or rotation
+     * @param recipientEmail recipient email
+     */
+    public void invalidate(String recipientEmail) {
+        lock.lock();
+        try {
+            int removed = 0;
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.recipient.equalsIgnoreCase(recipientEmail)) {
+                    entry.destroy();
+                    it.remove();
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                logger.fine("Invalidated " + removed + " cached session key(s) for: " + recipientEmail);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Drop and zero all cached session keys
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (Entry entry : entries.values()) {
+                entry.destroy();
+            }
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static String cacheKey(String wrappedKey, String recipientEmail) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(recipientEmail.toLowerCase().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(wrappedKey.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static class Entry {
+        final String recipient;
+        final String algorithm;
+        final byte[] keyBytes;
+        final long expiresAt;
+        
+        Entry(String recipient, String algorithm, byte[] keyBytes, long expiresAt) {
+            this.recipient = recipient;
+            this.algorithm = algorithm;
+            this.keyBytes = keyBytes;
+            this.expiresAt = expiresAt;
+        }
+        
+        void destroy() {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+}
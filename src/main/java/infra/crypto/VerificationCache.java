@@ -0,0 +1,239 @@
+package infra.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import crypto.KeyUtil;
+
+/**
+ * Bounded LRU cache of signature verification verdicts.
+ * Entries are keyed by SHA-256(content digest, signature, sender key fingerprint), so a verdict
+ * is only reused for exactly the same content, signature and key. Signing public keys are
+ * memoized per sender for at most the key TTL, so a key rotated by another node or replaced on
+ * disk is picked up without a local key change event; both are dropped when the sender's keys change.
+ */
+public class VerificationCache {
+    private static final Logger logger = Logger.getLogger(VerificationCache.class.getName());
+    
+    private final int maxEntries;
+    private final long keyTtlMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries;
+    // Guarded by lock, like entries
+    private final LinkedHashMap<String, SigningKey> signingKeys;
+    private final AtomicLong generation = new AtomicLong();
+    
+    /**
+     * @param maxEntries maximum verdicts and memoized signing keys, each; 0 disables caching
+     * @param keyTtl how long a memoized signing key is used before it is loaded again
+     */
+    public VerificationCache(int maxEntries, Duration keyTtl) {
+        this.maxEntries = maxEntries;
+        this.keyTtlMillis = keyTtl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > VerificationCache.this.maxEntries;
+            }
+        };
+        this.signingKeys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SigningKey> eldest) {
+                return size() > VerificationCache.this.maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Loads a sender's signing public key on a memo miss
+     */
+    @FunctionalInterface
+    public interface KeyLoader {
+        PublicKey load(String senderEmail) throws Exception;
+    }
+    
+    /**
+     * Sender's signing key with its fingerprint, loaded again once the key TTL has passed
+     * or the sender's keys change
+     * @param senderEmail sender email
+     * @param loader loads the key on a miss
+     * @return signing key
+     */
+    public SigningKey getSigningKey(String senderEmail, KeyLoader loader) throws Exception {
+        String memoKey = senderEmail.toLowerCase();
+        SigningKey signingKey = null;
+        if (maxEntries > 0) {
+            lock.lock();
+            try {
+                signingKey = signingKeys.get(memoKey);
+                if (signingKey != null && signingKey.isExpired()) {
+                    signingKeys.remove(memoKey);
+                    signingKey = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        if (signingKey == null) {
+            long loadedAt = generation.get();
+            PublicKey publicKey = loader.load(senderEmail);
+            signingKey = new SigningKey(publicKey, KeyUtil.fingerprint(publicKey),
+                    System.currentTimeMillis() + keyTtlMillis);
+            // Skip memoizing if an invalidation raced with the load
+            if (maxEntries > 0 && keyTtlMillis > 0) {
+                lock.lock();
+                try {
+                    if (generation.get() == loadedAt) {
+                        signingKeys.put(memoKey, signingKey);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return signingKey;
+    }
+    
+    /**
+     * Look up a previous verdict
+     * @param senderEmail sender the signature was checked for
+     * @param contentDigest SHA-256 of the signed content
+     * @param signature signature (Base64) as found in the message
+     * @param keyFingerprint fingerprint of the key it was checked against
+     * @return cached verdict, or null if unknown
+     */
+    public Boolean get(String senderEmail, byte[] contentDigest, String signature, String keyFingerprint) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        
+        String cacheKey = cacheKey(contentDigest, signature, keyFingerprint);
+        lock.lock();
+        try {
+            Entry entry = entries.get(cacheKey);
+            return entry != null && entry.sender.equalsIgnoreCase(senderEmail) ? entry.verified : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Remember a verdict
+     */
+    public void put(String senderEmail, byte[] contentDigest, String signature, String keyFingerprint,
+                    boolean verified) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        
+        String cacheKey = cacheKey(contentDigest, signature, keyFingerprint);
+        lock.lock();
+        try {
+            entries.put(cacheKey, new Entry(senderEmail, verified));
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Drop the memoized key and every verdict for the sender, e.g. after key rotation or import
+     * @param senderEmail sender email
+     */
+    public void invalidate(String senderEmail) {
+        generation.incrementAndGet();
+        lock.lock();
+        try {
+            signingKeys.remove(senderEmail.toLowerCase());
+            int removed = 0;
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().sender.equalsIgnoreCase(senderEmail)) {
+                    it.remove();
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                logger.fine("Invalidated " + removed + " cached signature verdict(s) for: " + senderEmail);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void clear() {
+        generation.incrementAndGet();
+        lock.lock();
+        try {
+            signingKeys.clear();
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static String cacheKey(byte[] contentDigest, String signature, String keyFingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(contentDigest);
+            digest.update(Base64.getDecoder().decode(signature.trim()));
+            digest.update(keyFingerprint.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (IllegalArgumentException e) {
+            // Malformed Base64: key on the text itself, verification will fail anyway
+            return "raw:" + Base64.getEncoder().encodeToString(contentDigest) + ":" + signature + ":" + keyFingerprint;
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Signing public key with its fingerprint
+     */
+    public static class SigningKey {
+        private final PublicKey publicKey;
+        private final String fingerprint;
+        private final long expiresAt;
+        
+        SigningKey(PublicKey publicKey, String fingerprint, long expiresAt) {
+            this.publicKey = publicKey;
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+        
+        public PublicKey getPublicKey() { return publicKey; }
+        public String getFingerprint() { return fingerprint; }
+        
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+    
+    private static class Entry {
+        final String sender;
+        final boolean verified;
+        
+        Entry(String sender, boolean verified) {
+            this.sender = sender;
+            this.verified = verified;
+        }
+    }
+}
@@ -37,6 +37,8 @@ public class DbConnectionManager {
             hikariConfig.setUsername(config.getDbUser());
             hikariConfig.setPassword(config.getDbPassword());
             hikariConfig.setDriverClassName("org.postgresql.Driver");
+            // Send JDBC batches as multi-row INSERTs (EmailRepository.saveAll)
+            hikariConfig.addDataSourceProperty("reWriteBatchedInserts", "true");
             
             // Connection pool settings
             hikariConfig.setMaximumPoolSize(10);
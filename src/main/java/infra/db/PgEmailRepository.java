@@ -1,18 +1,29 @@
 package infra.db;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
 import core.model.Email;
+import core.model.EmailPage;
+import core.model.EmailSummary;
+import core.model.IngestResult;
 import core.repository.EmailRepository;
 
 /**
@@ -21,6 +32,43 @@ import core.repository.EmailRepository;
 public class PgEmailRepository implements EmailRepository {
     private static final Logger logger = Logger.getLogger(PgEmailRepository.class.getName());
     
+    // created_at is the message date when known (sync, migration), the insert time otherwise
+    private static final String INSERT_COLUMNS = """
+        INSERT INTO emails (account_id, folder, from_addr, to_addr, subject, body, raw_message,
+                           is_encrypted, is_signed, signature_ok, is_read, is_important, server_message_id,
+                           created_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, COALESCE(?, NOW()))
+        """;
+    private static final String INSERT_SQL = INSERT_COLUMNS + "RETURNING id, created_at";
+    // Relies on uq_emails_account_server_message (schema.sql, SchemaMigrator migration 3)
+    private static final String INGEST_SQL = INSERT_COLUMNS + "ON CONFLICT (account_id, server_message_id) DO NOTHING";
+    // Generated keys are requested from the driver so it can rewrite the batch into multi-row INSERTs
+    private static final String BATCH_INSERT_SQL = INSERT_COLUMNS;
+    private static final String UPDATE_SQL = """
+        UPDATE emails 
+        SET folder = ?, from_addr = ?, to_addr = ?, subject = ?, body = ?, raw_message = ?,
+            is_encrypted = ?, is_signed = ?, signature_ok = ?, is_read = ?, is_important = ?,
+            server_message_id = ?
+        WHERE id = ?
+        """;
+    private static final String SECURITY_STATUS_SQL =
+        "UPDATE emails SET is_encrypted = ?, is_signed = ?, signature_ok = ? WHERE id = ?";
+    
+    // saveAll: collections at least this large are loaded with COPY instead of batched INSERTs
+    private static final int COPY_THRESHOLD = 10_000;
+    // saveAll: rows per executeBatch round trip
+    private static final int BATCH_SIZE = 1_000;
+    
+    // List columns plus a preview computed server-side, so body and raw_message never leave the database.
+    // left() before the regex reads only the start of a TOASTed body; the preview stops at the first
+    // armored block (encrypted payload or signature), as EmailSummary.preview does
+    private static final String SUMMARY_SELECT = """
+        SELECT id, account_id, folder, from_addr, to_addr, subject, is_encrypted, is_signed,
+               signature_ok, is_read, is_important, created_at,
+               left(btrim(regexp_replace(split_part(left(body, %d), '-----BEGIN ', 1), '\\s+', ' ', 'g')), %d) AS preview
+        FROM emails
+        """.formatted(EmailSummary.PREVIEW_LENGTH * 4, EmailSummary.PREVIEW_LENGTH);
+    
     @Override
     public Email save(Email email) {
         if (email.getId() == null) {
@@ -31,29 +79,10 @@ public class PgEmailRepository implements EmailRepository {
     }
     
     private Email insert(Email email) {
-        String sql = """
-            INSERT INTO emails (account_id, folder, from_addr, to_addr, subject, body, raw_message,
-                               is_encrypted, is_signed, signature_ok, is_read, is_important, server_message_id)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-            RETURNING id, created_at
-            """;
-        
         try (Connection conn = DbConnectionManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
             
-            stmt.setLong(1, email.getAccountId());
-            stmt.setString(2, email.getFolder());
-            stmt.setString(3, email.getFromAddr());
-            stmt.setString(4, email.getToAddr());
-            stmt.setString(5, email.getSubject());
-            stmt.setString(6, email.getBody());
-            stmt.setString(7, email.getRawMessage());
-            stmt.setBoolean(8, email.isEncrypted());
-            stmt.setBoolean(9, email.isSigned());
-            stmt.setBoolean(10, email.isSignatureOk());
-            stmt.setBoolean(11, email.isRead());
-            stmt.setBoolean(12, email.isImportant());
-            stmt.setString(13, email.getServerMessageId());
+            bindInsert(stmt, email);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -72,30 +101,10 @@ public class PgEmailRepository implements EmailRepository {
     }
     
     private Email update(Email email) {
-        String sql = """
-            UPDATE emails 
-            SET folder = ?, from_addr = ?, to_addr = ?, subject = ?, body = ?, raw_message = ?,
-                is_encrypted = ?, is_signed = ?, signature_ok = ?, is_read = ?, is_important = ?,
-                server_message_id = ?
-            WHERE id = ?
-            """;
-        
         try (Connection conn = DbConnectionManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
             
-            stmt.setString(1, email.getFolder());
-            stmt.setString(2, email.getFromAddr());
-            stmt.setString(3, email.getToAddr());
-            stmt.setString(4, email.getSubject());
-            stmt.setString(5, email.getBody());
-            stmt.setString(6, email.getRawMessage());
-            stmt.setBoolean(7, email.isEncrypted());
-            stmt.setBoolean(8, email.isSigned());
-            stmt.setBoolean(9, email.isSignatureOk());
-            stmt.setBoolean(10, email.isRead());
-            stmt.setBoolean(11, email.isImportant());
-            stmt.setString(12, email.getServerMessageId());
-            stmt.setLong(13, email.getId());
+            bindUpdate(stmt, email);
             
             int updated = stmt.executeUpdate();
             if (updated == 0) {
@@ -111,6 +120,319 @@ public class PgEmailRepository implements EmailRepository {
         }
     }
     
+    @Override
+    public List<Email> saveAll(Collection<Email> emails) {
+        List<Email> inserts = new ArrayList<>();
+        List<Email> updates = new ArrayList<>();
+        for (Email email : emails) {
+            (email.getId() == null ? inserts : updates).add(email);
+        }
+        if (emails.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        // One connection and one transaction for the whole collection
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (inserts.size() >= COPY_THRESHOLD) {
+                    copyInsert(conn, inserts);
+                } else {
+                    batchInsert(conn, inserts);
+                }
+                batchUpdate(conn, updates);
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                // Ids handed out for rolled back rows do not exist
+                for (Email email : inserts) {
+                    email.setId(null);
+                }
+                throw e;
+            }
+            
+            logger.info("Emails saved: " + inserts.size() + " inserted, " + updates.size() + " updated");
+            return new ArrayList<>(emails);
+            
+        } catch (SQLException | IOException e) {
+            logger.severe("Failed to save emails: " + e.getMessage());
+            throw new RuntimeException("Failed to save emails", e);
+        }
+    }
+    
+    @Override
+    public IngestResult ingest(Collection<Email> emails) {
+        List<Email> pending = new ArrayList<>(emails);
+        List<Email> inserted = new ArrayList<>();
+        if (pending.isEmpty()) {
+            return new IngestResult(inserted, 0);
+        }
+        
+        // Conflicting rows return no key, so keys are matched back by (account, server message ID);
+        // emails without a server message ID never conflict and are matched by position among those
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(INGEST_SQL,
+                    new String[] { "id", "created_at", "account_id", "server_message_id" })) {
+                for (int start = 0; start < pending.size(); start += BATCH_SIZE) {
+                    List<Email> batch = pending.subList(start, Math.min(pending.size(), start + BATCH_SIZE));
+                    Map<String, Email> byMessageId = new HashMap<>();
+                    List<Email> withoutMessageId = new ArrayList<>();
+                    for (Email email : batch) {
+                        bindInsert(stmt, email);
+                        stmt.addBatch();
+                        if (email.getServerMessageId() == null) {
+                            withoutMessageId.add(email);
+                        } else {
+                            // A message fetched twice in one batch is stored once, as its first copy
+                            byMessageId.putIfAbsent(email.getAccountId() + "|" + email.getServerMessageId(), email);
+                        }
+                    }
+                    stmt.executeBatch();
+                    
+                    int positional = 0;
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            String messageId = keys.getString("server_message_id");
+                            Email email = messageId == null ? withoutMessageId.get(positional++)
+                                    : byMessageId.get(keys.getLong("account_id") + "|" + messageId);
+                            email.setId(keys.getLong("id"));
+                            email.setCreatedAt(keys.getTimestamp("created_at").toLocalDateTime());
+                            inserted.add(email);
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                for (Email email : inserted) {
+                    email.setId(null);
+                }
+                throw e;
+            }
+            
+            IngestResult result = new IngestResult(inserted, pending.size() - inserted.size());
+            logger.info("Emails ingested: " + result);
+            return result;
+            
+        } catch (SQLException e) {
+            if (isMissingConflictTarget(e)) {
+                logger.severe("Cannot ingest emails: unique index uq_emails_account_server_message is missing");
+                throw new RuntimeException("Failed to ingest emails: the database lacks the unique index on "
+                        + "emails(account_id, server_message_id); apply schema migration 3 "
+                        + "(db.migrate.enabled=true) or create uq_emails_account_server_message from schema.sql", e);
+            }
+            logger.severe("Failed to ingest emails: " + e.getMessage());
+            throw new RuntimeException("Failed to ingest emails", e);
+        }
+    }
+    
+    @Override
+    public void updateSecurityStatus(Collection<Email> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        List<Email> pending = new ArrayList<>(emails);
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(SECURITY_STATUS_SQL)) {
+                for (int start = 0; start < pending.size(); start += BATCH_SIZE) {
+                    for (Email email : pending.subList(start, Math.min(pending.size(), start + BATCH_SIZE))) {
+                        stmt.setBoolean(1, email.isEncrypted());
+                        stmt.setBoolean(2, email.isSigned());
+                        stmt.setBoolean(3, email.isSignatureOk());
+                        stmt.setLong(4, email.getId());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+            logger.fine("Security status stored for " + pending.size() + " email(s)");
+            
+        } catch (SQLException e) {
+            logger.severe("Failed to update security status: " + e.getMessage());
+            throw new RuntimeException("Failed to update security status", e);
+        }
+    }
+    
+    /**
+     * Whether the error is PostgreSQL's "no unique or exclusion constraint matching the ON CONFLICT
+     * specification" (SQLSTATE 42P10), also when reported inside a BatchUpdateException
+     */
+    private static boolean isMissingConflictTarget(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            if ("42P10".equals(next.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Batched INSERTs; the driver rewrites each batch into multi-row INSERTs (reWriteBatchedInserts)
+     * and returns the generated keys in batch order
+     */
+    private void batchInsert(Connection conn, List<Email> emails) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(BATCH_INSERT_SQL, new String[] { "id", "created_at" })) {
+            for (int start = 0; start < emails.size(); start += BATCH_SIZE) {
+                List<Email> batch = emails.subList(start, Math.min(emails.size(), start + BATCH_SIZE));
+                for (Email email : batch) {
+                    bindInsert(stmt, email);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (Email email : batch) {
+                        if (!keys.next()) {
+                            throw new SQLException("Missing generated key for batch insert");
+                        }
+                        email.setId(keys.getLong("id"));
+                        email.setCreatedAt(keys.getTimestamp("created_at").toLocalDateTime());
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * COPY for very large collections: ids are reserved from the sequence up front (COPY returns
+     * nothing), then all rows stream to the server in one COPY ... FROM STDIN
+     */
+    private void copyInsert(Connection conn, List<Email> emails) throws SQLException, IOException {
+        String reserveSql = "SELECT nextval(pg_get_serial_sequence('emails', 'id')) FROM generate_series(1, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(reserveSql)) {
+            stmt.setInt(1, emails.size());
+            try (ResultSet rs = stmt.executeQuery()) {
+                for (Email email : emails) {
+                    if (!rs.next()) {
+                        throw new SQLException("Could not reserve email ids");
+                    }
+                    email.setId(rs.getLong(1));
+                    if (email.getCreatedAt() == null) {
+                        email.setCreatedAt(LocalDateTime.now());
+                    }
+                }
+            }
+        }
+        
+        String copySql = """
+            COPY emails (id, account_id, folder, from_addr, to_addr, subject, body, raw_message,
+                         is_encrypted, is_signed, signature_ok, is_read, is_important, server_message_id, created_at)
+            FROM STDIN
+            """;
+        CopyIn copy = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+        try {
+            StringBuilder row = new StringBuilder(1024);
+            for (Email email : emails) {
+                row.setLength(0);
+                appendCopyField(row, email.getId());
+                appendCopyField(row, email.getAccountId());
+                appendCopyField(row, email.getFolder());
+                appendCopyField(row, email.getFromAddr());
+                appendCopyField(row, email.getToAddr());
+                appendCopyField(row, email.getSubject());
+                appendCopyField(row, email.getBody());
+                appendCopyField(row, email.getRawMessage());
+                appendCopyField(row, email.isEncrypted());
+                appendCopyField(row, email.isSigned());
+                appendCopyField(row, email.isSignatureOk());
+                appendCopyField(row, email.isRead());
+                appendCopyField(row, email.isImportant());
+                appendCopyField(row, email.getServerMessageId());
+                appendCopyField(row, email.getCreatedAt().atZone(ZoneId.systemDefault()).toOffsetDateTime());
+                row.setCharAt(row.length() - 1, '\n');
+                
+                byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                copy.writeToCopy(bytes, 0, bytes.length);
+            }
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+    
+    /**
+     * One field of a COPY text-format row followed by a tab; null is \N, and backslash,
+     * tab, newline and carriage return are escaped
+     */
+    private static void appendCopyField(StringBuilder row, Object value) {
+        if (value == null) {
+            row.append("\\N");
+        } else {
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\': row.append("\\\\"); break;
+                    case '\t': row.append("\\t"); break;
+                    case '\n': row.append("\\n"); break;
+                    case '\r': row.append("\\r"); break;
+                    default: row.append(c);
+                }
+            }
+        }
+        row.append('\t');
+    }
+    
+    private void batchUpdate(Connection conn, List<Email> emails) throws SQLException {
+        if (emails.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+            for (int start = 0; start < emails.size(); start += BATCH_SIZE) {
+                for (Email email : emails.subList(start, Math.min(emails.size(), start + BATCH_SIZE))) {
+                    bindUpdate(stmt, email);
+                    stmt.addBatch();
+                }
+                for (int updated : stmt.executeBatch()) {
+                    if (updated == 0) {
+                        throw new RuntimeException("Email not found for update in batch");
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void bindInsert(PreparedStatement stmt, Email email) throws SQLException {
+        stmt.setLong(1, email.getAccountId());
+        stmt.setString(2, email.getFolder());
+        stmt.setString(3, email.getFromAddr());
+        stmt.setString(4, email.getToAddr());
+        stmt.setString(5, email.getSubject());
+        stmt.setString(6, email.getBody());
+        stmt.setString(7, email.getRawMessage());
+        stmt.setBoolean(8, email.isEncrypted());
+        stmt.setBoolean(9, email.isSigned());
+        stmt.setBoolean(10, email.isSignatureOk());
+        stmt.setBoolean(11, email.isRead());
+        stmt.setBoolean(12, email.isImportant());
+        stmt.setString(13, email.getServerMessageId());
+        stmt.setTimestamp(14, email.getCreatedAt() != null ? Timestamp.valueOf(email.getCreatedAt()) : null);
+    }
+    
+    private static void bindUpdate(PreparedStatement stmt, Email email) throws SQLException {
+        stmt.setString(1, email.getFolder());
+        stmt.setString(2, email.getFromAddr());
+        stmt.setString(3, email.getToAddr());
+        stmt.setString(4, email.getSubject());
+        stmt.setString(5, email.getBody());
+        stmt.setString(6, email.getRawMessage());
+        stmt.setBoolean(7, email.isEncrypted());
+        stmt.setBoolean(8, email.isSigned());
+        stmt.setBoolean(9, email.isSignatureOk());
+        stmt.setBoolean(10, email.isRead());
+        stmt.setBoolean(11, email.isImportant());
+        stmt.setString(12, email.getServerMessageId());
+        stmt.setLong(13, email.getId());
+    }
+    
     @Override
     public Optional<Email> findById(Long id) {
         String sql = "SELECT * FROM emails WHERE id = ?";
@@ -159,6 +481,57 @@ public class PgEmailRepository implements EmailRepository {
         }
     }
     
+    @Override
+    public EmailPage findSummariesByAccountAndFolder(Long accountId, String folder, EmailPage.Cursor after, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        
+        // Keyset pagination: seek past the cursor on idx_emails_account_folder_created instead of
+        // OFFSET, so every page costs the same however deep the folder is scrolled
+        String sql = SUMMARY_SELECT + (after == null ? """
+            WHERE account_id = ? AND folder = ?
+            ORDER BY created_at DESC, id DESC
+            LIMIT ?
+            """ : """
+            WHERE account_id = ? AND folder = ? AND (created_at, id) < (?, ?)
+            ORDER BY created_at DESC, id DESC
+            LIMIT ?
+            """);
+        List<EmailSummary> emails = new ArrayList<>(pageSize);
+        
+        try (Connection conn = DbConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            stmt.setLong(index++, accountId);
+            stmt.setString(index++, folder);
+            if (after != null) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(after.getCreatedAt()));
+                stmt.setLong(index++, after.getId());
+            }
+            // One extra row tells whether another page follows
+            stmt.setInt(index, pageSize + 1);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    emails.add(mapResultSetToSummary(rs));
+                }
+            }
+            
+            EmailPage.Cursor next = null;
+            if (emails.size() > pageSize) {
+                emails.remove(pageSize);
+                next = EmailPage.Cursor.after(emails.get(pageSize - 1));
+            }
+            return new EmailPage(emails, next);
+            
+        } catch (SQLException e) {
+            logger.severe("Failed to find email page by account and folder: " + e.getMessage());
+            throw new RuntimeException("Failed to find emails", e);
+        }
+    }
+    
     @Override
     public int countUnreadByAccountAndFolder(Long accountId, String folder) {
         String sql = "SELECT COUNT(*) FROM emails WHERE account_id = ? AND folder = ? AND is_read = false";
@@ -310,6 +683,29 @@ public class PgEmailRepository implements EmailRepository {
         }
     }
     
+    private EmailSummary mapResultSetToSummary(ResultSet rs) throws SQLException {
+        EmailSummary summary = new EmailSummary();
+        summary.setId(rs.getLong("id"));
+        summary.setAccountId(rs.getLong("account_id"));
+        summary.setFolder(rs.getString("folder"));
+        summary.setFromAddr(rs.getString("from_addr"));
+        summary.setToAddr(rs.getString("to_addr"));
+        summary.setSubject(rs.getString("subject"));
+        summary.setPreview(rs.getString("preview"));
+        summary.setEncrypted(rs.getBoolean("is_encrypted"));
+        summary.setSigned(rs.getBoolean("is_signed"));
+        summary.setSignatureOk(rs.getBoolean("signature_ok"));
+        summary.setRead(rs.getBoolean("is_read"));
+        summary.setImportant(rs.getBoolean("is_important"));
+        
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            summary.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        
+        return summary;
+    }
+    
     private Email mapResultSetToEmail(ResultSet rs) throws SQLException {
         Email email = new Email();
         email.setId(rs.getLong("id"));
@@ -0,0 +1,723 @@
+package infra.db;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAKey;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import config.AppConfig;
+import core.service.KeyService;
+import crypto.CurveCrypto;
+import crypto.KeyPairPool;
+import crypto.KeyUtil;
+
+/**
+ * PostgreSQL implementation of KeyService that shares public keys through the keys table,
+ * so every app instance sees the same public keys.
+ * An account has one active encryption key (key_type RSA or X25519) and, for the X25519 suite,
+ * an active Ed25519 signing key (key_type ED25519); a replaced key is kept as the inactive row.
+ * Keys are Base64 X.509, as in the key files. Private keys never go to the shared database:
+ * they stay in the local key files, which the column private_key is left NULL for.
+ * Lookups go through a local read-through cache with a short TTL (crypto.keys.cache.ttl.seconds), since other
+ * nodes may change keys; getPublicKeys loads every uncached recipient in one query, and
+ * importPublicKeys writes a whole keyring in one transaction of batched statements.
+ * Accounts with no rows yet get their public keys published from the local key files on first lookup,
+ * all misses of a lookup together.
+ * The keys table only holds keys of accounts; public keys of contacts without an account
+ * are imported into the local key files and read from there. Emails found to have no account
+ * are remembered for the same TTL, so expired contacts don't query for their account again.
+ */
+public class PgKeyService implements KeyService {
+    private static final Logger logger = Logger.getLogger(PgKeyService.class.getName());
+    
+    private static final String TYPE_RSA = "RSA";
+    private static final String TYPE_X25519 = "X25519";
+    private static final String TYPE_ED25519 = "ED25519";
+    
+    private final KeyPairPool keyPairPool;
+    private final KeyService localKeys;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, AccountKeys> cache = new ConcurrentHashMap<>();
+    // Emails without an account, until when that is trusted
+    private final ConcurrentHashMap<String, Long> contacts = new ConcurrentHashMap<>();
+    private final List<KeyChangeListener> listeners = new CopyOnWriteArrayList<>();
+    
+    public PgKeyService(KeyService localKeys) {
+        this(KeyPairPool.getInstance(), localKeys,
+                Duration.ofSeconds(AppConfig.getInstance().getKeyCacheTtlSeconds()));
+    }
+    
+    /**
+     * @param localKeys file-based key service holding the private keys and contacts' public keys
+     * @param ttl how long a looked-up account's keys are trusted without asking the database
+     */
+    public PgKeyService(KeyPairPool keyPairPool, KeyService localKeys, Duration ttl) {
+        this.keyPairPool = keyPairPool;
+        this.localKeys = Objects.requireNonNull(localKeys, "localKeys");
+        this.ttlMillis = ttl.toMillis();
+        
+        // Key files changed on disk, e.g. by another instance, invalidate what was read from them
+        localKeys.addKeyChangeListener(this::keyChanged);
+    }
+    
+    @Override
+    public KeyPair generateKeyPair(String email, int keySize) throws Exception {
+        // Pre-generated in the background when available, generated inline otherwise
+        KeyPair keyPair = keyPairPool.take(keySize);
+        saveKeyPair(email, keyPair);
+        logger.info("Generated " + keySize + "-bit RSA key pair for: " + email);
+        return keyPair;
+    }
+    
+    @Override
+    public KeyPair generateKeyPair(String email, Suite suite) throws Exception {
+        if (suite == Suite.RSA) {
+            return generateKeyPair(email, 2048);
+        }
+        
+        // Private keys go to the local files, the public halves to the table
+        KeyPair encryptionPair = localKeys.generateKeyPair(email, suite);
+        publish(email, encryptionPair.getPublic(), localKeys.getSigningPublicKey(email));
+        
+        logger.info("Generated X25519/Ed25519 key pairs for: " + email);
+        keyChanged(email);
+        return encryptionPair;
+    }
+    
+    @Override
+    public boolean hasKeyPair(String email) {
+        try {
+            return lookup(email).encryptionPublic != null && localKeys.hasKeyPair(email);
+        } catch (Exception e) {
+            logger.warning("Error checking key pair existence for " + email + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public PublicKey getPublicKey(String email) throws Exception {
+        return require(lookup(email).encryptionPublic, "public key", email);
+    }
+    
+    @Override
+    public Map<String, PublicKey> getPublicKeys(Collection<String> emails) throws Exception {
+        Map<String, AccountKeys> found = lookup(emails);
+        Map<String, PublicKey> result = new LinkedHashMap<>();
+        for (String email : emails) {
+            PublicKey key = found.get(email).encryptionPublic;
+            if (key != null) {
+                result.put(email, key);
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public PrivateKey getPrivateKey(String email) throws Exception {
+        return localKeys.getPrivateKey(email);
+    }
+    
+    @Override
+    public PublicKey getSigningPublicKey(String email) throws Exception {
+        AccountKeys keys = lookup(email);
+        return require(keys.signingPublic != null ? keys.signingPublic : keys.encryptionPublic,
+                "signing public key", email);
+    }
+    
+    @Override
+    public PrivateKey getSigningPrivateKey(String email) throws Exception {
+        return localKeys.getSigningPrivateKey(email);
+    }
+    
+    @Override
+    public void saveKeyPair(String email, KeyPair keyPair) throws Exception {
+        localKeys.saveKeyPair(email, keyPair);
+        // A key pair saved on its own also signs (RSA), replacing a signing key from another suite
+        publish(email, keyPair.getPublic(), null);
+        logger.info("Saved key pair for: " + email);
+        keyChanged(email);
+    }
+    
+    @Override
+    public boolean deleteKeyPair(String email) {
+        String sql = """
+            DELETE FROM keys
+            WHERE account_id = (SELECT id FROM accounts WHERE email = ?)
+            """;
+        
+        try (Connection conn = DbConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, email);
+            int deleted = stmt.executeUpdate();
+            // Private keys and contacts' keys live in the files; otherwise the next lookup would publish them again
+            boolean deletedFiles = localKeys.deleteKeyPair(email);
+            
+            if (deleted > 0 || deletedFiles) {
+                logger.info("Deleted key pair for: " + email);
+                keyChanged(email);
+                return true;
+            }
+            cache.remove(email);
+            return false;
+        
+        } catch (SQLException e) {
+            logger.severe("Error deleting key pair for " + email + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public String exportPublicKey(String email) throws Exception {
+        PublicKey publicKey = getPublicKey(email);
+        return Base64.getEncoder().encodeToString(publicKey.getEncoded());
+    }
+    
+    @Override
+    public void importPublicKey(String email, String publicKeyString) throws Exception {
+        byte[] keyBytes = Base64.getDecoder().decode(publicKeyString);
+        PublicKey publicKey = KeyUtil.decodePublicKey(keyBytes);
+        
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            Long accountId = accountIds(conn, List.of(email)).get(email);
+            if (accountId == null) {
+                importContactKey(email, publicKeyString);
+                return;
+            }
+            
+            conn.setAutoCommit(false);
+            try {
+                // Save only the public key; Ed25519 keys only verify signatures
+                if (CurveCrypto.isEd25519(publicKey)) {
+                    replaceKey(conn, accountId, TYPE_ED25519, publicKey, TYPE_ED25519);
+                } else if (CurveCrypto.isX25519(publicKey)) {
+                    replaceKey(conn, accountId, TYPE_X25519, publicKey, TYPE_RSA, TYPE_X25519);
+                } else {
+                    // RSA keys sign too; a leftover Ed25519 key would shadow it
+                    replaceKey(conn, accountId, TYPE_RSA, publicKey, TYPE_RSA, TYPE_X25519, TYPE_ED25519);
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        
+        logger.info("Imported public key for: " + email);
+        keyChanged(email);
+    }
+    
+    @Override
+    public Map<Integer, Exception> importPublicKeys(List<Map.Entry<String, PublicKey>> keys) {
+        // Applying the entries in order leaves each account with at most one new encryption
+        // and one new signing key, which can then be written as independent batch rows
+        Map<String, PendingImport> pending = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Map.Entry<String, PublicKey> entry = keys.get(i);
+            PendingImport account = pending.computeIfAbsent(entry.getKey(), email -> new PendingImport());
+            account.indices.add(i);
+            PublicKey publicKey = entry.getValue();
+            if (CurveCrypto.isEd25519(publicKey)) {
+                account.signing = publicKey;
+            } else {
+                account.encryption = publicKey;
+                if (!CurveCrypto.isX25519(publicKey)) {
+                    // RSA keys sign too; a leftover Ed25519 key would shadow it
+                    account.signing = null;
+                }
+            }
+        }
+        
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        Set<String> contacts = new LinkedHashSet<>();
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            Map<String, Long> accountIds = accountIds(conn, pending.keySet());
+            conn.setAutoCommit(false);
+            try (KeyWriter writer = new KeyWriter(conn)) {
+                for (Map.Entry<String, PendingImport> entry : pending.entrySet()) {
+                    Long accountId = accountIds.get(entry.getKey());
+                    PendingImport account = entry.getValue();
+                    if (accountId == null) {
+                        contacts.add(entry.getKey());
+                        continue;
+                    }
+                    if (account.encryption != null) {
+                        if (CurveCrypto.isX25519(account.encryption)) {
+                            writer.add(accountId, TYPE_X25519, account.encryption, TYPE_RSA, TYPE_X25519);
+                        } else {
+                            writer.add(accountId, TYPE_RSA, account.encryption, TYPE_RSA, TYPE_X25519, TYPE_ED25519);
+                        }
+                    }
+                    if (account.signing != null) {
+                        writer.add(accountId, TYPE_ED25519, account.signing, TYPE_ED25519);
+                    }
+                }
+                writer.execute();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                // Find the offending entries one at a time
+                logger.warning("Batched key import failed, importing one by one: " + e.getMessage());
+                return KeyService.super.importPublicKeys(keys);
+            }
+        } catch (SQLException e) {
+            logger.severe("Key import failed: " + e.getMessage());
+            for (int i = 0; i < keys.size(); i++) {
+                failures.put(i, e);
+            }
+            return failures;
+        }
+        
+        if (!contacts.isEmpty()) {
+            failures.putAll(importContactKeys(keys, contacts));
+        }
+        
+        logger.info("Imported " + (keys.size() - failures.size()) + " public key(s) for "
+                + pending.size() + " account(s) and contact(s)");
+        for (String email : pending.keySet()) {
+            keyChanged(email);
+        }
+        return failures;
+    }
+    
+    @Override
+    public List<String> listKeyOwners() throws Exception {
+        String sql = """
+            SELECT DISTINCT a.email
+            FROM keys k
+            JOIN accounts a ON a.id = k.account_id
+            WHERE k.active = TRUE AND k.public_key IS NOT NULL
+            ORDER BY a.email
+            """;
+        
+        Set<String> owners = new TreeSet<>();
+        try (Connection conn = DbConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                owners.add(rs.getString("email"));
+            }
+        }
+        // Contacts' keys stay in the files
+        owners.addAll(localKeys.listKeyOwners());
+        return new ArrayList<>(owners);
+    }
+    
+    /**
+     * Import a key of a contact without an account into the local key files
+     */
+    private void importContactKey(String email, String publicKeyString) throws Exception {
+        localKeys.importPublicKey(email, publicKeyString);
+        keyChanged(email);
+    }
+    
+    /**
+     * Import the entries of contacts without an account into the local key files, in their order
+     * @return failures by index into keys
+     */
+    private Map<Integer, Exception> importContactKeys(List<Map.Entry<String, PublicKey>> keys, Set<String> contacts) {
+        List<Integer> indices = new ArrayList<>();
+        List<Map.Entry<String, PublicKey>> contactKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (contacts.contains(keys.get(i).getKey())) {
+                indices.add(i);
+                contactKeys.add(keys.get(i));
+            }
+        }
+        
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        localKeys.importPublicKeys(contactKeys).forEach((i, e) -> failures.put(indices.get(i), e));
+        return failures;
+    }
+    
+    /**
+     * Background RSA key pair pool backing generateKeyPair (depth and hit/miss metrics)
+     */
+    public KeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+    
+    @Override
+    public void addKeyChangeListener(KeyChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Keys of one account, from the cache or the database
+     */
+    private AccountKeys lookup(String email) throws Exception {
+        AccountKeys keys = cache.get(email);
+        if (keys != null && !keys.isExpired()) {
+            return keys;
+        }
+        return lookup(List.of(email)).get(email);
+    }
+    
+    /**
+     * Keys of several accounts; every uncached one is fetched by the same query
+     */
+    private Map<String, AccountKeys> lookup(Collection<String> emails) throws Exception {
+        Map<String, AccountKeys> result = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String email : emails) {
+            AccountKeys keys = cache.get(email);
+            if (keys != null && !keys.isExpired()) {
+                result.put(email, keys);
+            } else {
+                missing.add(email);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        
+        Map<String, AccountKeys> loaded = load(missing);
+        Set<String> unpublished = new LinkedHashSet<>(missing);
+        unpublished.removeAll(loaded.keySet());
+        if (!unpublished.isEmpty()) {
+            loaded.putAll(migrate(unpublished));
+        }
+        for (String email : missing) {
+            AccountKeys keys = loaded.get(email);
+            cache.put(email, keys);
+            result.put(email, keys);
+        }
+        return result;
+    }
+    
+    private Map<String, AccountKeys> load(Collection<String> emails) throws Exception {
+        String sql = """
+            SELECT a.email, k.key_type, k.public_key
+            FROM keys k
+            JOIN accounts a ON a.id = k.account_id
+            WHERE a.email = ANY(?) AND k.active = TRUE
+            """;
+        
+        Map<String, AccountKeys> loaded = new HashMap<>();
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        try (Connection conn = DbConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            Array emailArray = conn.createArrayOf("varchar", emails.toArray());
+            stmt.setArray(1, emailArray);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    AccountKeys keys = loaded.computeIfAbsent(rs.getString("email"), e -> new AccountKeys(expiresAt));
+                    PublicKey publicKey = decodePublic(rs.getString("public_key"));
+                    if (TYPE_ED25519.equals(rs.getString("key_type"))) {
+                        keys.signingPublic = publicKey;
+                    } else {
+                        keys.encryptionPublic = publicKey;
+                    }
+                }
+            }
+            emailArray.free();
+        }
+        return loaded;
+    }
+    
+    /**
+     * Publish the public keys of the key files of accounts without rows, with one query for
+     * the account ids and one transaction of batched statements; emails without files get an
+     * empty entry, so they are not looked up again until it expires
+     */
+    private Map<String, AccountKeys> migrate(Collection<String> emails) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        Map<String, PublicKey> encryptionKeys;
+        try {
+            encryptionKeys = localKeys.getPublicKeys(emails);
+        } catch (Exception e) {
+            logger.warning("Could not read the public key files: " + e.getMessage());
+            encryptionKeys = Map.of();
+        }
+        
+        Map<String, AccountKeys> migrated = new HashMap<>();
+        Map<String, AccountKeys> unpublished = new LinkedHashMap<>();
+        for (String email : emails) {
+            AccountKeys keys = new AccountKeys(expiresAt);
+            keys.encryptionPublic = encryptionKeys.get(email);
+            if (keys.encryptionPublic != null) {
+                keys.signingPublic = localSigningKey(email, keys.encryptionPublic);
+                // Contacts have no account, their keys are served from the files only
+                if (!isContact(email)) {
+                    unpublished.put(email, keys);
+                }
+            }
+            migrated.put(email, keys);
+        }
+        
+        if (!unpublished.isEmpty()) {
+            try {
+                publish(unpublished);
+            } catch (Exception e) {
+                // Still served from the files, just not shared with other nodes
+                logger.warning("Could not publish the public keys of " + unpublished.size()
+                        + " account(s): " + e.getMessage());
+            }
+        }
+        return migrated;
+    }
+    
+    /**
+     * Signing public key of the local key files, if it differs from the encryption key
+     */
+    private PublicKey localSigningKey(String email, PublicKey encryptionPublic) {
+        try {
+            // Falls back to the encryption key
+            PublicKey signingPublic = localKeys.getSigningPublicKey(email);
+            return signingPublic.equals(encryptionPublic) ? null : signingPublic;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether the email was recently found to have no account
+     */
+    private boolean isContact(String email) {
+        Long expiresAt = contacts.get(email);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() > expiresAt) {
+            contacts.remove(email, expiresAt);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Publish the keys of several accounts in one transaction; the emails without an account
+     * are remembered as contacts
+     */
+    private void publish(Map<String, AccountKeys> accounts) throws SQLException {
+        Map<String, Long> accountIds;
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            accountIds = accountIds(conn, accounts.keySet());
+            long expiresAt = System.currentTimeMillis() + ttlMillis;
+            for (String email : accounts.keySet()) {
+                if (!accountIds.containsKey(email)) {
+                    contacts.put(email, expiresAt);
+                }
+            }
+            if (accountIds.isEmpty()) {
+                return;
+            }
+            
+            conn.setAutoCommit(false);
+            try (KeyWriter writer = new KeyWriter(conn)) {
+                for (Map.Entry<String, Long> entry : accountIds.entrySet()) {
+                    AccountKeys keys = accounts.get(entry.getKey());
+                    writer.addAccount(entry.getValue(), keys.encryptionPublic, keys.signingPublic);
+                }
+                writer.execute();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        logger.info("Published the public keys of the key files for " + accountIds.size() + " account(s)");
+    }
+    
+    /**
+     * Make the public keys the account's active keys; a null signing key means the encryption
+     * key signs too (RSA) and drops any Ed25519 key
+     * @return false if the email has no account (a contact), whose keys stay in the files only
+     */
+    private boolean publish(String email, PublicKey encryption, PublicKey signing) throws SQLException {
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            Long accountId = accountIds(conn, List.of(email)).get(email);
+            if (accountId == null) {
+                contacts.put(email, System.currentTimeMillis() + ttlMillis);
+                return false;
+            }
+            contacts.remove(email);
+            
+            conn.setAutoCommit(false);
+            try (KeyWriter writer = new KeyWriter(conn)) {
+                writer.addAccount(accountId, encryption, signing);
+                writer.execute();
+                conn.commit();
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Make a key the account's active key of its type; the active keys of the replaced types
+     * become the inactive rows (the unique constraint allows one per type)
+     */
+    private void replaceKey(Connection conn, long accountId, String keyType, PublicKey publicKey,
+                            String... replacedTypes) throws SQLException {
+        try (KeyWriter writer = new KeyWriter(conn)) {
+            writer.add(accountId, keyType, publicKey, replacedTypes);
+            writer.execute();
+        }
+    }
+    
+    private Map<String, Long> accountIds(Connection conn, Collection<String> emails) throws SQLException {
+        Map<String, Long> ids = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id, email FROM accounts WHERE email = ANY(?)")) {
+            Array emailArray = conn.createArrayOf("varchar", emails.toArray());
+            stmt.setArray(1, emailArray);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.put(rs.getString("email"), rs.getLong("id"));
+                }
+            }
+            emailArray.free();
+        }
+        return ids;
+    }
+    
+    private void keyChanged(String email) {
+        cache.remove(email);
+        for (KeyChangeListener listener : listeners) {
+            try {
+                listener.onKeyChanged(email);
+            } catch (Exception e) {
+                logger.warning("Key change listener failed for " + email + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private static <K extends Key> K require(K key, String what, String email) {
+        if (key == null) {
+            throw new IllegalStateException("No " + what + " for " + email);
+        }
+        return key;
+    }
+    
+    private static String typeOf(PublicKey key) {
+        return CurveCrypto.isX25519(key) ? TYPE_X25519 : TYPE_RSA;
+    }
+    
+    private static int keySize(Key key) {
+        return key instanceof RSAKey ? ((RSAKey) key).getModulus().bitLength() : 256;
+    }
+    
+    private static PublicKey decodePublic(String base64) throws Exception {
+        return base64 == null ? null : KeyUtil.decodePublicKey(Base64.getDecoder().decode(base64));
+    }
+    
+    /**
+     * Batched key replacement: all deletes of old inactive rows run first, then all
+     * deactivations, then all inserts, so each row's replace stays correct within one batch
+     */
+    private static class KeyWriter implements AutoCloseable {
+        private final Connection conn;
+        private final PreparedStatement dropInactive;
+        private final PreparedStatement deactivate;
+        private final PreparedStatement insert;
+        private final List<Array> arrays = new ArrayList<>();
+        
+        KeyWriter(Connection conn) throws SQLException {
+            this.conn = conn;
+            this.dropInactive = conn.prepareStatement(
+                    "DELETE FROM keys WHERE account_id = ? AND key_type = ANY(?) AND active = FALSE");
+            this.deactivate = conn.prepareStatement(
+                    "UPDATE keys SET active = FALSE WHERE account_id = ? AND key_type = ANY(?) AND active = TRUE");
+            this.insert = conn.prepareStatement("""
+                INSERT INTO keys (account_id, key_type, public_key, key_size, active)
+                VALUES (?, ?, ?, ?, TRUE)
+                """);
+        }
+        
+        void add(long accountId, String keyType, PublicKey publicKey, String... replacedTypes) throws SQLException {
+            Array types = conn.createArrayOf("varchar", replacedTypes);
+            arrays.add(types);
+            dropInactive.setLong(1, accountId);
+            dropInactive.setArray(2, types);
+            dropInactive.addBatch();
+            deactivate.setLong(1, accountId);
+            deactivate.setArray(2, types);
+            deactivate.addBatch();
+            
+            insert.setLong(1, accountId);
+            insert.setString(2, keyType);
+            insert.setString(3, Base64.getEncoder().encodeToString(publicKey.getEncoded()));
+            insert.setInt(4, keySize(publicKey));
+            insert.addBatch();
+        }
+        
+        /**
+         * Both active keys of an account; a null signing key means the encryption key signs too
+         */
+        void addAccount(long accountId, PublicKey encryption, PublicKey signing) throws SQLException {
+            if (signing != null) {
+                add(accountId, typeOf(encryption), encryption, TYPE_RSA, TYPE_X25519);
+                add(accountId, TYPE_ED25519, signing, TYPE_ED25519);
+            } else {
+                add(accountId, typeOf(encryption), encryption, TYPE_RSA, TYPE_X25519, TYPE_ED25519);
+            }
+        }
+        
+        void execute() throws SQLException {
+            dropInactive.executeBatch();
+            deactivate.executeBatch();
+            insert.executeBatch();
+        }
+        
+        @Override
+        public void close() throws SQLException {
+            for (Array array : arrays) {
+                array.free();
+            }
+            dropInactive.close();
+            deactivate.close();
+            insert.close();
+        }
+    }
+    
+    /**
+     * Keys of one import batch that end up active for an account
+     */
+    private static class PendingImport {
+        final List<Integer> indices = new ArrayList<>();
+        PublicKey encryption;
+        PublicKey signing;
+    }
+    
+    /**
+     * Active public keys of one account, as cached
+     */
+    private static class AccountKeys {
+        final long expiresAt;
+        PublicKey encryptionPublic;
+        PublicKey signingPublic;
+        
+        AccountKeys(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+        
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
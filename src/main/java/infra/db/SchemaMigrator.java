@@ -0,0 +1,175 @@
+package infra.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Versioned schema migrations applied at startup.
+ * schema.sql creates the baseline tables; each migration here changes that schema once and is
+ * recorded in schema_version. Each migration runs in its own transaction. A session advisory lock
+ * stops two clients starting at the same time from applying the same migration twice.
+ */
+public class SchemaMigrator {
+    private static final Logger logger = Logger.getLogger(SchemaMigrator.class.getName());
+    
+    // pg_advisory_lock key shared by every client of the database ("EMSM")
+    private static final long LOCK_KEY = 0x454d534dL;
+    
+    /**
+     * One numbered schema change
+     */
+    static final class Migration {
+        final int version;
+        final String description;
+        final List<String> statements;
+        
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = List.of(statements);
+        }
+    }
+    
+    // Append only: never edit or renumber a migration once released
+    static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Folder listing index on emails (account_id, folder, created_at, id)",
+            // Keyset pages, folder lists and folder stats; supersedes the (account_id, folder) index
+            "CREATE INDEX IF NOT EXISTS idx_emails_account_folder_created ON emails(account_id, folder, created_at DESC, id DESC)",
+            "DROP INDEX IF EXISTS idx_emails_account_folder"),
+        new Migration(2, "Partial index of unread emails per folder",
+            // countUnreadByAccountAndFolder filters on folder too, which the old unread index lacked
+            "CREATE INDEX IF NOT EXISTS idx_emails_unread_folder ON emails(account_id, folder) WHERE is_read = FALSE",
+            "DROP INDEX IF EXISTS idx_emails_unread"),
+        new Migration(3, "Unique server message ID per account",
+            // Duplicates from earlier syncs: keep the first stored copy
+            """
+            DELETE FROM emails e
+            USING emails d
+            WHERE e.account_id = d.account_id
+              AND e.server_message_id = d.server_message_id
+              AND e.id > d.id
+            """,
+            "CREATE UNIQUE INDEX IF NOT EXISTS uq_emails_account_server_message ON emails(account_id, server_message_id)")
+    );
+    
+    private SchemaMigrator() {
+    }
+    
+    /**
+     * Apply the migrations the database has not seen yet
+     * @return number of migrations applied
+     */
+    public static int migrate() {
+        try (Connection conn = DbConnectionManager.getConnection()) {
+            if (!baselineExists(conn)) {
+                logger.warning("Table emails not found; run schema.sql first. Schema migrations skipped");
+                return 0;
+            }
+            
+            lock(conn);
+            try {
+                createVersionTable(conn);
+                int current = currentVersion(conn);
+                int applied = 0;
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version > current) {
+                        apply(conn, migration);
+                        applied++;
+                    }
+                }
+                
+                if (applied > 0) {
+                    logger.info("Database schema migrated to version " + MIGRATIONS.get(MIGRATIONS.size() - 1).version
+                            + " (" + applied + " migration(s) applied)");
+                } else {
+                    logger.fine("Database schema up to date at version " + current);
+                }
+                return applied;
+            } finally {
+                unlock(conn);
+            }
+            
+        } catch (SQLException e) {
+            logger.severe("Failed to migrate database schema: " + e.getMessage());
+            throw new RuntimeException("Schema migration failed", e);
+        }
+    }
+    
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        conn.setAutoCommit(false);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : migration.statements) {
+                    stmt.execute(sql);
+                }
+            }
+            
+            String sql = "INSERT INTO schema_version (version, description, execution_ms) VALUES (?, ?, ?)";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, migration.version);
+                stmt.setString(2, migration.description);
+                stmt.setLong(3, System.currentTimeMillis() - start);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            logger.info("Applied schema migration " + migration.version + ": " + migration.description);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw new SQLException("Migration " + migration.version + " (" + migration.description + ") failed: "
+                    + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    private static boolean baselineExists(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT to_regclass('emails') IS NOT NULL")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+    
+    private static void createVersionTable(Connection conn) throws SQLException {
+        String sql = """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version INTEGER PRIMARY KEY,
+                description VARCHAR(255) NOT NULL,
+                applied_at TIMESTAMPTZ DEFAULT NOW(),
+                execution_ms BIGINT
+            )
+            """;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+    
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    // Session lock: held across the per-migration transactions, released before the connection returns to the pool
+    private static void lock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT pg_advisory_lock(?)")) {
+            stmt.setLong(1, LOCK_KEY);
+            stmt.execute();
+        }
+    }
+    
+    private static void unlock(Connection conn) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            stmt.setLong(1, LOCK_KEY);
+            stmt.execute();
+        } catch (SQLException e) {
+            logger.warning("Failed to release schema migration lock: " + e.getMessage());
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package infra.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 import core.model.Email;
+import core.model.EmailPage;
+import core.model.IngestResult;
 import core.repository.EmailRepository;
 import core.service.MailHistoryService;
 
@@ -26,11 +30,39 @@ public class DefaultMailHistoryService implements MailHistoryService {
         return emailRepository.save(email);
     }
     
+    @Override
+    public List<Email> saveEmails(Collection<Email> emails) {
+        logger.fine("Saving " + emails.size() + " emails");
+        return emailRepository.saveAll(emails);
+    }
+    
+    @Override
+    public IngestResult ingestEmails(Collection<Email> emails) {
+        IngestResult result = emailRepository.ingest(emails);
+        logger.fine("Ingested emails: " + result);
+        return result;
+    }
+    
+    @Override
+    public void saveSecurityStatus(Collection<Email> emails) {
+        emailRepository.updateSecurityStatus(emails);
+    }
+    
     @Override
     public List<Email> getEmailsByFolder(Long accountId, String folder) {
         return emailRepository.findByAccountAndFolder(accountId, folder);
     }
     
+    @Override
+    public EmailPage getEmailSummaries(Long accountId, String folder, EmailPage.Cursor after, int pageSize) {
+        return emailRepository.findSummariesByAccountAndFolder(accountId, folder, after, pageSize);
+    }
+    
+    @Override
+    public Optional<Email> getEmail(Long emailId) {
+        return emailRepository.findById(emailId);
+    }
+    
     @Override
     public int getUnreadCount(Long accountId, String folder) {
         return emailRepository.countUnreadByAccountAndFolder(accountId, folder);
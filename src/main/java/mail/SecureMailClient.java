@@ -7,7 +7,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Base64;
@@ -142,9 +141,7 @@ public class SecureMailClient {
      * Generates RSA key pair for the user
      */
     public static void generateKeyPair(String userEmail) throws Exception {
-        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-        keyGen.initialize(2048);
-        KeyPair keyPair = keyGen.generateKeyPair();
+        KeyPair keyPair = crypto.KeyPairPool.getInstance().take(2048);
         
         // Save keys to files
         savePrivateKey(keyPair.getPrivate(), userEmail);
@@ -1,6 +1,8 @@
 package ui.cli;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.logging.Logger;
 
@@ -9,8 +11,10 @@ import core.ServiceRegistry;
 import core.service.KeyService;
 import core.service.MailService;
 import core.service.SecureMailService;
+import infra.crypto.Keyring;
 import jakarta.mail.Message;
 import util.MailExportUtil;
+import util.ValidationUtil;
 
 /**
  * Command Line Interface for the mail client
@@ -231,11 +235,17 @@ public class CliMain {
         System.out.print("To: ");
         String to = scanner.nextLine();
         
-        if (config.isCliLocalMode() && !to.contains("@")) {
-            // Auto-complete with hostname for local users
-            to = to + "@" + config.getHostname();
-            System.out.println("Auto-completed to: " + to);
+        // Several recipients may be given, separated by commas
+        List<String> recipients = new ArrayList<>();
+        for (String recipient : ValidationUtil.splitRecipients(to)) {
+            if (config.isCliLocalMode() && !recipient.contains("@")) {
+                // Auto-complete with hostname for local users
+                recipient = recipient + "@" + config.getHostname();
+                System.out.println("Auto-completed to: " + recipient);
+            }
+            recipients.add(recipient);
         }
+        to = String.join(", ", recipients);
         
         System.out.print("Subject: ");
         String subject = scanner.nextLine();
@@ -263,7 +273,7 @@ public class CliMain {
             // Send secure mail if encryption/signing requested and service available
             if ((encrypt || sign) && secureMailService != null) {
                 try {
-                    secureMailService.sendSecureMail(currentUser, currentPassword, to, subject, finalBody, encrypt, sign);
+                    secureMailService.sendSecureMail(currentUser, currentPassword, recipients, subject, finalBody, encrypt, sign);
                     System.out.println("Secure mail sent successfully!");
                     if (encrypt) System.out.println("\u2713 Message was encrypted");
                     if (sign) System.out.println("\u2713 Message was digitally signed");
@@ -341,7 +351,9 @@ public class CliMain {
             System.out.println("\n1. Check key pair status");
             System.out.println("2. Generate new key pair");
             System.out.println("3. Export public key");
-            System.out.println("4. Back to main menu");
+            System.out.println("4. Import keyring file");
+            System.out.println("5. Export keyring file");
+            System.out.println("6. Back to main menu");
             System.out.print("Choose option: ");
             
             String choice = scanner.nextLine();
@@ -357,6 +369,12 @@ public class CliMain {
                     exportPublicKey();
                     break;
                 case "4":
+                    importKeyring();
+                    break;
+                case "5":
+                    exportKeyring();
+                    break;
+                case "6":
                     return;
                 default:
                     System.out.println("Invalid option. Please try again.");
@@ -380,6 +398,18 @@ public class CliMain {
     }
     
     private void generateKeyPair() {
+        KeyService.Suite suite = serviceRegistry.getCryptoSuite(currentUser);
+        if (suite != KeyService.Suite.RSA) {
+            try {
+                System.out.println("Generating X25519/Ed25519 key pairs...");
+                keyService.generateKeyPair(currentUser, suite);
+                System.out.println("Key pair generated successfully!");
+            } catch (Exception e) {
+                System.out.println("Error generating key pair: " + e.getMessage());
+            }
+            return;
+        }
+        
         System.out.print("Key size (2048 or 4096, default 2048): ");
         String sizeInput = scanner.nextLine();
         int keySize = 2048;
@@ -409,10 +439,63 @@ public class CliMain {
             System.out.println("--- BEGIN PUBLIC KEY ---");
             System.out.println(publicKey);
             System.out.println("--- END PUBLIC KEY ---");
+            
+            // Curve accounts verify signatures with a separate Ed25519 key
+            java.security.PublicKey signingKey = keyService.getSigningPublicKey(currentUser);
+            if (!signingKey.equals(keyService.getPublicKey(currentUser))) {
+                System.out.println("\nYour signing key:");
+                System.out.println("--- BEGIN PUBLIC KEY ---");
+                System.out.println(java.util.Base64.getEncoder().encodeToString(signingKey.getEncoded()));
+                System.out.println("--- END PUBLIC KEY ---");
+            }
             System.out.println("\nShare this public key with others to receive encrypted messages.");
             
         } catch (Exception e) {
             System.out.println("Error exporting public key: " + e.getMessage());
         }
     }
+    
+    private void importKeyring() {
+        System.out.print("Keyring file to import: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            return;
+        }
+        
+        try {
+            Keyring.Report report = Keyring.importFile(Path.of(path), keyService,
+                    (phase, done, total) -> System.out.print("\r" + phase + ": " + done + "/" + total + "   "));
+            System.out.println();
+            printKeyringReport("imported", report);
+        } catch (Exception e) {
+            System.out.println("\nError importing keyring: " + e.getMessage());
+        }
+    }
+    
+    private void exportKeyring() {
+        System.out.print("Keyring file to write: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            return;
+        }
+        System.out.print("Emails to export (comma separated, blank for all): ");
+        String emails = scanner.nextLine().trim();
+        
+        try {
+            Keyring.Report report = Keyring.exportFile(Path.of(path), keyService,
+                    emails.isEmpty() ? null : ValidationUtil.splitRecipients(emails),
+                    (phase, done, total) -> System.out.print("\r" + phase + ": " + done + "/" + total + "   "));
+            System.out.println();
+            printKeyringReport("exported", report);
+        } catch (Exception e) {
+            System.out.println("\nError exporting keyring: " + e.getMessage());
+        }
+    }
+    
+    private void printKeyringReport(String action, Keyring.Report report) {
+        System.out.println(report.getSucceeded() + " key(s) " + action + ", " + report.getFailures().size() + " failed");
+        for (Keyring.Failure failure : report.getFailures()) {
+            System.out.println("  " + failure);
+        }
+    }
 }
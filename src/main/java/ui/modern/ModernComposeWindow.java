@@ -26,6 +26,7 @@ import core.service.MailHistoryService;
 import core.service.MailService;
 import core.service.SecureMailService;
 import ui.theme.ThemeManager;
+import util.ValidationUtil;
 
 /**
  * Modern compose window for sending emails
@@ -267,7 +268,9 @@ public class ModernComposeWindow extends JDialog {
                 
                 if ((encrypt || sign) && secureMailService != null) {
                     // Send secure email
-                    secureMailService.sendSecureMail(currentUser, userPassword, to, subject, body, encrypt, sign);
+                    // One envelope and one SMTP transaction for all recipients
+                    secureMailService.sendSecureMail(currentUser, userPassword, 
+                                                   ValidationUtil.splitRecipients(to), subject, body, encrypt, sign);
                     success = true;
                     
                     String securityInfo = "";
@@ -20,8 +20,12 @@ import javax.swing.SwingUtilities;
 
 import core.ServiceRegistry;
 import core.model.Email;
+import core.model.EmailPage;
+import core.model.EmailSummary;
+import core.model.IngestResult;
 import core.service.MailHistoryService;
 import core.service.MailService;
+import core.service.SecureMailService;
 import ui.modern.components.ModernEmailList;
 import ui.modern.components.ModernEmailViewer;
 import ui.modern.components.ModernSidebar;
@@ -39,6 +43,7 @@ public class ModernMainApplication extends JFrame {
     private ServiceRegistry serviceRegistry;
     private MailService mailService;
     private MailHistoryService mailHistoryService;
+    private SecureMailService secureMailService;
     private ThemeManager themeManager;
     private String currentUser;
     private String currentPassword;
@@ -53,6 +58,12 @@ public class ModernMainApplication extends JFrame {
     
     // Current state
     private String currentFolder = "inbox";
+    // Keyset paging of the shown folder: cursor of the next page, bumped generation drops stale pages
+    private EmailPage.Cursor nextPageCursor;
+    private int loadedEmailCount;
+    private int listGeneration;
+    // Demo mode keeps the full sample emails the list summarises
+    private List<Email> sampleEmails = java.util.Collections.emptyList();
     
     public ModernMainApplication(String userEmail, String password) {
         this.currentUser = userEmail;
@@ -65,6 +76,7 @@ public class ModernMainApplication extends JFrame {
         try {
             if (!serviceRegistry.getConfig().isDemoMode()) {
                 this.mailHistoryService = serviceRegistry.getMailHistoryService();
+                this.secureMailService = serviceRegistry.getSecureMailService();
                 // Find account ID
                 var account = serviceRegistry.getAccountRepository().findByEmail(userEmail);
                 if (account.isPresent()) {
@@ -114,13 +126,19 @@ public class ModernMainApplication extends JFrame {
         
         emailList = new ModernEmailList(new ModernEmailList.EmailListListener() {
             @Override
-            public void onEmailSelected(Email email) {
-                emailViewer.displayEmail(email);
-                markEmailAsRead(email);
+            public void onEmailSelected(EmailSummary summary) {
+                emailViewer.displayEmail(loadFullEmail(summary));
+                markEmailAsRead(summary);
+            }
+            
+            @Override
+            public void onLoadMore() {
+                loadMoreEmails();
             }
         });
         
         emailViewer = new ModernEmailViewer();
+        emailViewer.setSecureMailService(secureMailService, currentUser);
         
         // Theme toggle button
         themeToggleButton = new JToggleButton(themeManager.isDarkMode() ? "☀" : "🌙");
@@ -300,20 +318,30 @@ public class ModernMainApplication extends JFrame {
         
         SwingUtilities.invokeLater(() -> {
             try {
-                List<Email> emails;
+                listGeneration++;
+                nextPageCursor = null;
                 
                 if (mailHistoryService != null && currentAccountId != null) {
-                    // Load from database
-                    emails = mailHistoryService.getEmailsByFolder(currentAccountId, folder);
-                    setStatus("Loaded " + emails.size() + " emails from " + folder);
+                    // Load the first page from database; later pages load as the list is scrolled
+                    EmailPage page = mailHistoryService.getEmailSummaries(currentAccountId, folder, null,
+                            serviceRegistry.getConfig().getMailListPageSize());
+                    nextPageCursor = page.getNextCursor();
+                    loadedEmailCount = page.getEmails().size();
+                    emailList.setEmails(page.getEmails());
+                    emailList.setHasMore(page.hasMore());
+                    setStatus("Loaded " + loadedEmailCount + " emails from " + folder
+                            + (page.hasMore() ? " (scroll for more)" : ""));
                 } else {
                     // Demo mode - create sample emails
-                    emails = createSampleEmails(folder);
+                    sampleEmails = createSampleEmails(folder);
+                    List<EmailSummary> summaries = new java.util.ArrayList<>();
+                    for (Email email : sampleEmails) {
+                        summaries.add(EmailSummary.of(email));
+                    }
+                    emailList.setEmails(summaries);
                     setStatus("Loaded sample emails for " + folder + " (demo mode)");
                 }
                 
-                emailList.setEmails(emails);
-                
             } catch (Exception e) {
                 logger.warning("Failed to load emails: " + e.getMessage());
                 setStatus("Failed to load emails: " + e.getMessage());
@@ -321,6 +349,42 @@ public class ModernMainApplication extends JFrame {
         });
     }
     
+    private void loadMoreEmails() {
+        if (nextPageCursor == null || mailHistoryService == null) {
+            return;
+        }
+        String folder = currentFolder;
+        EmailPage.Cursor cursor = nextPageCursor;
+        int generation = listGeneration;
+        int pageSize = serviceRegistry.getConfig().getMailListPageSize();
+        setStatus("Loading more emails...");
+        
+        new Thread(() -> {
+            try {
+                EmailPage page = mailHistoryService.getEmailSummaries(currentAccountId, folder, cursor, pageSize);
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != listGeneration) {
+                        return; // folder switched or reloaded meanwhile
+                    }
+                    nextPageCursor = page.getNextCursor();
+                    loadedEmailCount += page.getEmails().size();
+                    emailList.appendEmails(page.getEmails());
+                    emailList.setHasMore(page.hasMore());
+                    setStatus("Loaded " + loadedEmailCount + " emails from " + folder
+                            + (page.hasMore() ? " (scroll for more)" : ""));
+                });
+            } catch (Exception e) {
+                logger.warning("Failed to load more emails: " + e.getMessage());
+                SwingUtilities.invokeLater(() -> {
+                    if (generation == listGeneration) {
+                        emailList.setHasMore(false);
+                        setStatus("Failed to load more emails: " + e.getMessage());
+                    }
+                });
+            }
+        }, "email-page-loader").start();
+    }
+    
     private List<Email> createSampleEmails(String folder) {
         java.util.ArrayList<Email> emails = new java.util.ArrayList<>();
         
@@ -374,7 +438,32 @@ public class ModernMainApplication extends JFrame {
         return email;
     }
     
-    private void markEmailAsRead(Email email) {
+    /**
+     * The list only holds summaries; fetch the whole email (body included) for the one opened
+     */
+    private Email loadFullEmail(EmailSummary summary) {
+        if (mailHistoryService == null || currentAccountId == null) {
+            for (Email email : sampleEmails) {
+                if (email.getId().equals(summary.getId())) {
+                    return email;
+                }
+            }
+            return null;
+        }
+        try {
+            Email email = mailHistoryService.getEmail(summary.getId()).orElse(null);
+            if (email == null) {
+                setStatus("Email no longer exists");
+            }
+            return email;
+        } catch (Exception e) {
+            logger.warning("Failed to load email: " + e.getMessage());
+            setStatus("Failed to load email: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void markEmailAsRead(EmailSummary email) {
         if (!email.isRead() && mailHistoryService != null) {
             try {
                 mailHistoryService.markAsRead(email.getId());
@@ -429,19 +518,29 @@ public class ModernMainApplication extends JFrame {
         return false;
     }
     
+    /**
+     * Verify the signature once at sync time and store the verdict (signature_ok),
+     * so displaying the email later needs no verification
+     */
+    private void applySecurityStatus(Email email) {
+        if (secureMailService == null || email.getBody() == null) {
+            return;
+        }
+        try {
+            SecureMailService.ProcessedMessage status = secureMailService.verifyReceivedMessage(email.getBody());
+            email.setEncrypted(status.isEncrypted());
+            email.setSigned(status.isSigned());
+            email.setSignatureOk(status.isSignatureVerified());
+        } catch (Exception e) {
+            logger.warning("Failed to verify message signature: " + e.getMessage());
+        }
+    }
+    
     private void syncInbox() {
         if (mailService == null || mailHistoryService == null || currentAccountId == null) return;
         
         new Thread(() -> {
             try {
-                // Load existing inbox emails to avoid duplicates
-                java.util.Set<String> existingIds = new java.util.HashSet<>();
-                for (Email existing : mailHistoryService.getEmailsByFolder(currentAccountId, "inbox")) {
-                    if (existing.getServerMessageId() != null) {
-                        existingIds.add(existing.getServerMessageId());
-                    }
-                }
-                
                 // Ưu tiên dùng mật khẩu người dùng vừa đăng nhập thành công
                 String userPassword = currentPassword != null ? currentPassword : "";
 
@@ -458,6 +557,7 @@ public class ModernMainApplication extends JFrame {
                 }
 
                 List<Message> messages = mailService.fetchInbox(currentUser, userPassword);
+                List<Email> fetched = new java.util.ArrayList<>();
                 for (Message msg : messages) {
                     try {
                         String[] messageIdHeaders = msg.getHeader("Message-ID");
@@ -473,11 +573,6 @@ public class ModernMainApplication extends JFrame {
                             messageId = from + "|" + subject + "|" + sentTime;
                         }
                         
-                        // Skip if already exists
-                        if (existingIds.contains(messageId)) {
-                            continue;
-                        }
-                        
                         Email email = new Email(currentAccountId, "inbox", 
                                             msg.getFrom()[0].toString(), 
                                             currentUser,
@@ -487,12 +582,27 @@ public class ModernMainApplication extends JFrame {
                         email.setCreatedAt(msg.getSentDate().toInstant()
                                          .atZone(ZoneId.systemDefault())
                                          .toLocalDateTime());
-                        mailHistoryService.saveEmail(email);
-                        existingIds.add(messageId);
+                        fetched.add(email);
                     } catch (Exception e) {
                         logger.warning("Error processing message: " + e.getMessage());
                     }
                 }
+                
+                // Messages already stored are skipped by the database (unique server message ID),
+                // so the cost does not grow with the stored mailbox
+                IngestResult result = mailHistoryService.ingestEmails(fetched);
+                
+                // Verify signatures of the new messages only and store just the verdicts, in one batch
+                List<Email> verified = new java.util.ArrayList<>();
+                for (Email email : result.getInserted()) {
+                    applySecurityStatus(email);
+                    if (email.isEncrypted() || email.isSigned()) {
+                        verified.add(email);
+                    }
+                }
+                mailHistoryService.saveSecurityStatus(verified);
+                logger.info("Inbox sync: " + result.getInsertedCount() + " new, "
+                        + result.getSkippedCount() + " already stored");
                 SwingUtilities.invokeLater(() -> loadEmails("inbox"));
             } catch (Exception e) {
                 logger.severe("Failed to sync inbox: " + e.getMessage());
@@ -18,10 +18,12 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
-import core.model.Email;
+import core.model.EmailSummary;
 import ui.theme.ThemeManager;
 
 /**
@@ -30,14 +32,25 @@ import ui.theme.ThemeManager;
 public class ModernEmailList extends JPanel {
     
     public interface EmailListListener {
-        void onEmailSelected(Email email);
+        void onEmailSelected(EmailSummary email);
+        
+        /**
+         * The list was scrolled near its end and more emails exist; answer with appendEmails
+         */
+        default void onLoadMore() {
+        }
     }
     
+    // Start loading the next page this many pixels (about five items) before the end
+    private static final int LOAD_MORE_THRESHOLD = 400;
+    
     private EmailListListener listener;
     private JPanel emailContainer;
     private JScrollPane scrollPane;
-    private Email selectedEmail;
+    private EmailSummary selectedEmail;
     private EmailItem selectedItem;
+    private boolean hasMore;
+    private boolean loadingMore;
     
     public ModernEmailList(EmailListListener listener) {
         this.listener = listener;
@@ -59,13 +72,14 @@ public class ModernEmailList extends JPanel {
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> checkLoadMore());
     }
     
     private void layoutComponents() {
         add(scrollPane, BorderLayout.CENTER);
     }
     
-    public void setEmails(List<Email> emails) {
+    public void setEmails(List<EmailSummary> emails) {
         emailContainer.removeAll();
         selectedEmail = null;
         selectedItem = null;
@@ -75,17 +89,54 @@ public class ModernEmailList extends JPanel {
             JPanel emptyPanel = createEmptyState();
             emailContainer.add(emptyPanel);
         } else {
-            for (Email email : emails) {
+            for (EmailSummary email : emails) {
                 EmailItem item = new EmailItem(email);
                 emailContainer.add(item);
                 emailContainer.add(Box.createVerticalStrut(1)); // Separator
             }
         }
         
+        hasMore = false;
+        loadingMore = false;
+        revalidate();
+        repaint();
+    }
+    
+    /**
+     * Add the next page of emails below the ones shown
+     */
+    public void appendEmails(List<EmailSummary> emails) {
+        for (EmailSummary email : emails) {
+            EmailItem item = new EmailItem(email);
+            emailContainer.add(item);
+            emailContainer.add(Box.createVerticalStrut(1)); // Separator
+        }
+        loadingMore = false;
         revalidate();
         repaint();
     }
     
+    /**
+     * Whether more emails follow the ones shown; if so, scrolling near the end asks the listener for them
+     */
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+        loadingMore = false;
+        // A first page shorter than the viewport never scrolls, so check right away
+        SwingUtilities.invokeLater(this::checkLoadMore);
+    }
+    
+    private void checkLoadMore() {
+        if (!hasMore || loadingMore || listener == null) {
+            return;
+        }
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - LOAD_MORE_THRESHOLD) {
+            loadingMore = true;
+            listener.onLoadMore();
+        }
+    }
+    
     private JPanel createEmptyState() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setPreferredSize(new Dimension(0, 200));
@@ -131,7 +182,7 @@ public class ModernEmailList extends JPanel {
      * Get currently selected email
      * @return selected email or null if none selected
      */
-    public Email getSelectedEmail() {
+    public EmailSummary getSelectedEmail() {
         return selectedEmail;
     }
     
@@ -139,19 +190,19 @@ public class ModernEmailList extends JPanel {
      * Individual email item component
      */
     private class EmailItem extends JPanel {
-        private Email email;
+        private EmailSummary email;
         private boolean isSelected;
         private boolean isHovered;
         
         private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("MMM d");
         
-        public EmailItem(Email email) {
+        public EmailItem(EmailSummary email) {
             this.email = email;
             this.isSelected = false;
             
             setLayout(new BorderLayout());
-            setPreferredSize(new Dimension(0, 80));
-            setMaximumSize(new Dimension(Integer.MAX_VALUE, 80));
+            setPreferredSize(new Dimension(0, 96));
+            setMaximumSize(new Dimension(Integer.MAX_VALUE, 96));
             setCursor(new Cursor(Cursor.HAND_CURSOR));
             
             setupContent();
@@ -230,6 +281,18 @@ public class ModernEmailList extends JPanel {
             
             bottomRow.add(subjectLabel, BorderLayout.CENTER);
             
+            // Preview snippet (empty for encrypted messages)
+            String preview = email.getPreview() != null ? email.getPreview() : "";
+            if (preview.length() > 70) {
+                preview = preview.substring(0, 67) + "...";
+            }
+            JLabel previewLabel = new JLabel(preview);
+            previewLabel.setFont(ThemeManager.Fonts.CAPTION);
+            previewLabel.setForeground(ThemeManager.Colors.getSecondaryColor());
+            JPanel previewRow = new JPanel(new BorderLayout());
+            previewRow.setOpaque(false);
+            previewRow.add(previewLabel, BorderLayout.CENTER);
+            
             // Combine rows
             JPanel textPanel = new JPanel();
             textPanel.setLayout(new BoxLayout(textPanel, BoxLayout.Y_AXIS));
@@ -237,6 +300,8 @@ public class ModernEmailList extends JPanel {
             textPanel.add(topRow);
             textPanel.add(Box.createVerticalStrut(6));
             textPanel.add(bottomRow);
+            textPanel.add(Box.createVerticalStrut(4));
+            textPanel.add(previewRow);
             
             contentPanel.add(textPanel, BorderLayout.CENTER);
             add(contentPanel, BorderLayout.CENTER);
@@ -6,22 +6,35 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 import core.model.Email;
+import core.service.SecureMailService;
 import ui.theme.ThemeManager;
 
 /**
- * Modern email content viewer with clean header and formatted content
+ * Modern email content viewer with clean header and formatted content.
+ * Encrypted bodies are decrypted off the event thread; large ones segment by segment as the
+ * user scrolls, so the first page shows without decrypting the whole message. The signature
+ * status shown is the one stored at sync, so viewing a message never verifies it again.
  */
 public class ModernEmailViewer extends JPanel {
     
@@ -31,6 +44,15 @@ public class ModernEmailViewer extends JPanel {
     private JScrollPane scrollPane;
     private Email currentEmail;
     
+    // Encrypted body being shown incrementally (null when the full text is displayed)
+    private SecureMailService secureMailService;
+    private String recipientEmail;
+    private SecureMailService.EncryptedBody lazyBody;
+    private int nextSegment;
+    private CharsetDecoder decoder;
+    private ByteBuffer pendingBytes;
+    private boolean loadScheduled;
+    
     private static final DateTimeFormatter FULL_DATE_FORMATTER = 
         DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy 'at' h:mm a");
     
@@ -69,6 +91,17 @@ public class ModernEmailViewer extends JPanel {
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> loadMoreIfNeeded());
+    }
+    
+    /**
+     * Enable decryption of encrypted emails for display
+     * @param secureMailService service used to open encrypted bodies
+     * @param recipientEmail account whose private key decrypts them
+     */
+    public void setSecureMailService(SecureMailService secureMailService, String recipientEmail) {
+        this.secureMailService = secureMailService;
+        this.recipientEmail = recipientEmail;
     }
     
     private void layoutComponents() {
@@ -270,7 +303,17 @@ public class ModernEmailViewer extends JPanel {
     }
     
     private void updateContent(Email email) {
+        lazyBody = null;
         String content = email.getBody();
+        if (email.isEncrypted() && secureMailService != null && content != null) {
+            contentArea.setText("Decrypting...");
+            decryptContent(email, content);
+            return;
+        }
+        showText(content);
+    }
+    
+    private void showText(String content) {
         if (content == null || content.trim().isEmpty()) {
             content = "(No content)";
         }
@@ -279,7 +322,113 @@ public class ModernEmailViewer extends JPanel {
         contentArea.setCaretPosition(0);
     }
     
+    /**
+     * Decrypt an encrypted body in the background, then show it whole or start incremental display
+     */
+    private void decryptContent(Email email, String rawMessage) {
+        new SwingWorker<SecureMailService.EncryptedBody, Void>() {
+            // Whole text, when the body cannot be read segment by segment
+            private String text;
+            
+            @Override
+            protected SecureMailService.EncryptedBody doInBackground() throws Exception {
+                SecureMailService.EncryptedBody body = secureMailService.openEncryptedBody(rawMessage, recipientEmail);
+                if (body == null) {
+                    // Compressed or legacy format: decrypt the whole body
+                    text = secureMailService.decryptReceivedMessage(rawMessage, recipientEmail);
+                }
+                return body;
+            }
+            
+            @Override
+            protected void done() {
+                if (currentEmail != email) {
+                    // Another message was selected meanwhile
+                    return;
+                }
+                try {
+                    SecureMailService.EncryptedBody body = get();
+                    if (body == null) {
+                        showText(text);
+                    } else {
+                        startSegments(body);
+                    }
+                } catch (ExecutionException e) {
+                    showText("Error processing message: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+    
+    /**
+     * Start incremental display of an opened encrypted body
+     */
+    private void startSegments(SecureMailService.EncryptedBody body) {
+        if (body.getLength() == 0) {
+            showText("");
+            return;
+        }
+        
+        lazyBody = body;
+        nextSegment = 0;
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        pendingBytes = ByteBuffer.allocate(0);
+        contentArea.setText("");
+        appendSegments(1);
+        contentArea.setCaretPosition(0);
+    }
+    
+    /**
+     * Decrypt the next segment once the view is within a screen of the end of the decrypted text
+     */
+    private void loadMoreIfNeeded() {
+        if (lazyBody == null || loadScheduled || nextSegment >= lazyBody.getSegmentCount()) {
+            return;
+        }
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        if (bar.getValue() + 2 * bar.getVisibleAmount() >= bar.getMaximum()) {
+            // Not while the scroll bar is being adjusted by the document change itself
+            loadScheduled = true;
+            SwingUtilities.invokeLater(() -> {
+                loadScheduled = false;
+                if (lazyBody != null) {
+                    appendSegments(1);
+                }
+            });
+        }
+    }
+    
+    private void appendSegments(int count) {
+        StringBuilder text = new StringBuilder();
+        try {
+            for (int i = 0; i < count && nextSegment < lazyBody.getSegmentCount(); i++) {
+                byte[] segment = lazyBody.readSegment(nextSegment++);
+                boolean last = nextSegment == lazyBody.getSegmentCount();
+                
+                // A UTF-8 sequence may continue in the next segment; keep its leading bytes
+                ByteBuffer in = ByteBuffer.allocate(pendingBytes.remaining() + segment.length);
+                in.put(pendingBytes).put(segment).flip();
+                CharBuffer out = CharBuffer.allocate(in.remaining() + 1);
+                decoder.decode(in, out, last);
+                if (last) {
+                    decoder.flush(out);
+                }
+                pendingBytes = in.slice();
+                text.append(out.flip());
+            }
+        } catch (Exception e) {
+            text.append("\n\n[Error processing message: ").append(e.getMessage()).append("]");
+            lazyBody = null;
+        }
+        contentArea.append(text.toString());
+    }
+    
     private void showEmptyState() {
+        lazyBody = null;
         headerPanel.removeAll();
         securityPanel.setVisible(false);
         
@@ -4,6 +4,8 @@ import java.io.ObjectInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -128,7 +130,8 @@ public class DataMigrationUtil {
                 Map<String, List<MailHistoryManager.MailRecord>> oldHistory = 
                     (Map<String, List<MailHistoryManager.MailRecord>>) ois.readObject();
                 
-                int migrated = 0;
+                List<Email> newEmails = new ArrayList<>();
+                Map<String, Long> accountIds = new HashMap<>();
                 for (Map.Entry<String, List<MailHistoryManager.MailRecord>> entry : oldHistory.entrySet()) {
                     String folder = entry.getKey();
                     List<MailHistoryManager.MailRecord> records = entry.getValue();
@@ -141,14 +144,13 @@ public class DataMigrationUtil {
                             continue;
                         }
                         
-                        var accountOpt = accountRepo.findByEmail(accountEmail);
-                        if (accountOpt.isEmpty()) {
+                        Long accountId = accountIds.computeIfAbsent(accountEmail,
+                                email -> accountRepo.findByEmail(email).map(Account::getId).orElse(null));
+                        if (accountId == null) {
                             logger.warning("Account not found for email: " + accountEmail);
                             continue;
                         }
                         
-                        Long accountId = accountOpt.get().getId();
-                        
                         // Create new email record
                         Email newEmail = new Email(
                             accountId,
@@ -167,12 +169,13 @@ public class DataMigrationUtil {
                         newEmail.setCreatedAt(oldRecord.getTimestamp().toInstant()
                             .atZone(java.time.ZoneId.systemDefault()).toLocalDateTime());
                         
-                        emailRepo.save(newEmail);
-                        migrated++;
+                        newEmails.add(newEmail);
                     }
                 }
                 
-                logger.info("Migrated " + migrated + " email records from mail_history.dat");
+                // One batched transaction instead of a round trip per record
+                emailRepo.saveAll(newEmails);
+                logger.info("Migrated " + newEmails.size() + " email records from mail_history.dat");
             }
             
         } catch (Exception e) {
@@ -1,5 +1,7 @@
 package util;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -39,6 +41,26 @@ public class ValidationUtil {
         return EMAIL_PATTERN.matcher(email.trim()).matches();
     }
     
+    /**
+     * Split a recipient field ("a@x.com, b@y.com; c@z.com") into addresses
+     * @param recipients comma or semicolon separated recipients
+     * @return trimmed, non-empty addresses in input order
+     */
+    public static List<String> splitRecipients(String recipients) {
+        List<String> result = new ArrayList<>();
+        if (recipients == null) {
+            return result;
+        }
+        
+        for (String part : recipients.split("[,;]")) {
+            String address = part.trim();
+            if (!address.isEmpty()) {
+                result.add(address);
+            }
+        }
+        return result;
+    }
+    
     /**
      * Validate password strength
      * @param password password to validate
@@ -57,9 +57,9 @@ CREATE TABLE IF NOT EXISTS emails (
 CREATE TABLE IF NOT EXISTS keys (
     id BIGSERIAL PRIMARY KEY,
     account_id BIGINT NOT NULL REFERENCES accounts(id) ON DELETE CASCADE,
-    key_type VARCHAR(20) NOT NULL DEFAULT 'RSA', -- RSA, AES, etc.
+    key_type VARCHAR(20) NOT NULL DEFAULT 'RSA', -- RSA or X25519 (encryption), ED25519 (signing)
     public_key TEXT, -- Base64 encoded public key
-    private_key TEXT, -- Base64 encoded private key (encrypted)
+    private_key TEXT, -- Not written: private keys stay in each client's local key files
     key_size INTEGER DEFAULT 2048,
     created_at TIMESTAMPTZ DEFAULT NOW(),
     active BOOLEAN DEFAULT TRUE,
@@ -80,9 +80,11 @@ CREATE TABLE IF NOT EXISTS ui_settings (
 );
 
 -- Create indexes for better performance
-CREATE INDEX IF NOT EXISTS idx_emails_account_folder ON emails(account_id, folder);
+-- Later schema changes (the emails listing, unread and server message ID indexes among them) are
+-- versioned migrations in infra.db.SchemaMigrator, applied at startup and tracked in schema_version
 CREATE INDEX IF NOT EXISTS idx_emails_created_at ON emails(created_at DESC);
-CREATE INDEX IF NOT EXISTS idx_emails_unread ON emails(account_id, is_read) WHERE is_read = FALSE;
+-- Sync ingest's ON CONFLICT target (also migration 3, which first removes duplicates from older databases)
+CREATE UNIQUE INDEX IF NOT EXISTS uq_emails_account_server_message ON emails(account_id, server_message_id);
 CREATE INDEX IF NOT EXISTS idx_login_history_account_time ON login_history(account_id, login_time DESC);
 CREATE INDEX IF NOT EXISTS idx_keys_account_active ON keys(account_id, active) WHERE active = TRUE;
 CREATE INDEX IF NOT EXISTS idx_ui_settings_account_key ON ui_settings(account_id, setting_key);
@@ -0,0 +1,183 @@
+// Quick test script để verify định dạng chunked AES-GCM: round-trip và phát hiện dữ liệu bị sửa
+// Chạy: java -cp "target\classes;lib\*" test_chunked_aead
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.SecretKey;
+
+import crypto.ChunkedAeadInputStream;
+import crypto.ChunkedAeadOutputStream;
+import crypto.ChunkedAeadReader;
+import crypto.CryptoUtils;
+
+public class test_chunked_aead {
+    // Bố cục của ChunkedAeadOutputStream: header 8 byte, mỗi chunk = độ dài (4) + ciphertext + tag (16)
+    private static final int CHUNK = 64 * 1024;
+    private static final int HEADER = 8;
+    private static final int STRIDE = 4 + CHUNK + 16;
+    private static final int FINAL_FLAG = 0x80000000;
+    
+    private static int failures;
+    
+    @FunctionalInterface
+    private interface Decryptor {
+        byte[] decrypt(byte[] cipherText, SecretKey key) throws IOException;
+    }
+    
+    private static final String[] DECRYPTOR_NAMES = { "input stream", "reader", "windows" };
+    private static final Decryptor[] DECRYPTORS = {
+        test_chunked_aead::decryptInputStream,
+        test_chunked_aead::decryptReader,
+        test_chunked_aead::decryptWindows
+    };
+    
+    public static void main(String[] args) {
+        System.out.println("=== TESTING CHUNKED AEAD ===");
+        
+        try {
+            SecretKey key = CryptoUtils.generateAESKey();
+            
+            System.out.println("1. Testing round-trip...");
+            int[] lengths = { 0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK, 9 * CHUNK + 100 };
+            for (int length : lengths) {
+                byte[] plain = randomBytes(length);
+                byte[] cipherText = encrypt(plain, key);
+                int chunks = Math.max(1, (length + CHUNK - 1) / CHUNK);
+                check(length + " bytes -> " + chunks + " chunk(s)",
+                        cipherText.length == HEADER + length + chunks * (4 + 16));
+                for (int i = 0; i < DECRYPTORS.length; i++) {
+                    check(length + " bytes via " + DECRYPTOR_NAMES[i],
+                            Arrays.equals(plain, DECRYPTORS[i].decrypt(cipherText, key)));
+                }
+            }
+            
+            System.out.println("\n2. Testing tampered streams...");
+            // Hai chunk đầy và một chunk cuối ngắn hơn
+            byte[] cipherText = encrypt(randomBytes(3 * CHUNK - 10), key);
+            
+            rejects("truncated to nothing", new byte[0], key);
+            rejects("truncated to the header", Arrays.copyOf(cipherText, HEADER), key);
+            rejects("final chunk dropped", Arrays.copyOf(cipherText, HEADER + 2 * STRIDE), key);
+            rejects("final chunk cut short", Arrays.copyOf(cipherText, cipherText.length - 5), key);
+            
+            byte[] reordered = cipherText.clone();
+            System.arraycopy(cipherText, HEADER + STRIDE, reordered, HEADER, STRIDE);
+            System.arraycopy(cipherText, HEADER, reordered, HEADER + STRIDE, STRIDE);
+            rejects("first two chunks swapped", reordered, key);
+            
+            byte[] finalCleared = cipherText.clone();
+            finalCleared[HEADER + 2 * STRIDE] &= 0x7f;
+            rejects("final flag cleared on the last chunk", finalCleared, key);
+            
+            byte[] finalSet = cipherText.clone();
+            finalSet[HEADER] |= (byte) 0x80;
+            rejects("final flag set on the first chunk", finalSet, key);
+            
+            byte[] flipped = cipherText.clone();
+            flipped[HEADER + STRIDE + 100] ^= 1;
+            rejects("ciphertext byte flipped", flipped, key);
+            
+            rejects("data after the final chunk", Arrays.copyOf(cipherText, cipherText.length + 3), key);
+            
+            // Cắt sau chunk đầy đầu tiên trông như một message đúng 64 KiB, nhưng chunk đó không mang cờ final
+            byte[] overBoundary = encrypt(randomBytes(CHUNK + 1), key);
+            rejects("64 KiB + 1 cut after the first chunk", Arrays.copyOf(overBoundary, HEADER + STRIDE), key);
+            
+            byte[] exactChunk = encrypt(randomBytes(CHUNK), key);
+            check("64 KiB is one final chunk",
+                    (ByteBuffer.wrap(exactChunk, HEADER, 4).getInt() & FINAL_FLAG) != 0);
+            byte[] empty = encrypt(new byte[0], key);
+            rejects("0 bytes with its tag flipped", flipLast(empty), key);
+            
+            rejects("wrong key", cipherText, CryptoUtils.generateAESKey());
+        
+        } catch (Exception e) {
+            System.out.println("ERROR: " + e.getMessage());
+            e.printStackTrace();
+            failures++;
+        }
+        
+        System.out.println("\n=== TEST COMPLETED: " + (failures == 0 ? "all passed" : failures + " failed") + " ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static byte[] encrypt(byte[] plain, SecretKey key) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ChunkedAeadOutputStream encrypting = new ChunkedAeadOutputStream(out, key)) {
+            // Ghi từng đoạn lệch với kích thước chunk
+            for (int off = 0; off < plain.length; off += 10_000) {
+                encrypting.write(plain, off, Math.min(10_000, plain.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] decryptInputStream(byte[] cipherText, SecretKey key) throws IOException {
+        try (InputStream in = new ChunkedAeadInputStream(new ByteArrayInputStream(cipherText), key)) {
+            return in.readAllBytes();
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+    
+    private static byte[] decryptReader(byte[] cipherText, SecretKey key) throws IOException {
+        ChunkedAeadReader reader = new ChunkedAeadReader(ByteBuffer.wrap(cipherText), key);
+        ByteBuffer plain = ByteBuffer.allocate((int) reader.getPlainLength());
+        reader.decryptAll(plain, ForkJoinPool.commonPool());
+        return plain.array();
+    }
+    
+    // Cửa sổ 2 chunk, để stream nhiều chunk đi qua nhiều cửa sổ
+    private static byte[] decryptWindows(byte[] cipherText, SecretKey key) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ChunkedAeadReader.decryptStream(new ByteArrayInputStream(cipherText), key, ForkJoinPool.commonPool(), 2,
+                (window, last) -> {
+                    byte[] bytes = new byte[window.remaining()];
+                    window.get(bytes);
+                    plain.write(bytes);
+                });
+        return plain.toByteArray();
+    }
+    
+    private static void rejects(String name, byte[] cipherText, SecretKey key) {
+        for (int i = 0; i < DECRYPTORS.length; i++) {
+            try {
+                DECRYPTORS[i].decrypt(cipherText, key);
+                check(name + " via " + DECRYPTOR_NAMES[i] + ": accepted", false);
+            } catch (IOException e) {
+                check(name + " via " + DECRYPTOR_NAMES[i] + ": " + e.getMessage(), true);
+            } catch (RuntimeException e) {
+                check(name + " via " + DECRYPTOR_NAMES[i] + ": unexpected " + e, false);
+            }
+        }
+    }
+    
+    private static byte[] flipLast(byte[] data) {
+        byte[] flipped = data.clone();
+        flipped[flipped.length - 1] ^= 1;
+        return flipped;
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+    
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "✓ " : "✗ ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+// Quick test script để verify KeyIndex được dựng lại từ index.names và các file khóa
+// Chạy: java -cp "target\classes;lib\*" test_key_index
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import infra.crypto.KeyDirectory;
+import infra.crypto.KeyDirectory.KeyFile;
+import infra.crypto.KeyIndex;
+
+public class test_key_index {
+    // Đủ nhiều để bảng (1024 slot ban đầu) phải mở rộng ít nhất một lần
+    private static final int BULK_OWNERS = 600;
+    
+    private static int failures;
+    
+    public static void main(String[] args) {
+        System.out.println("=== TESTING KEY INDEX REBUILD ===");
+        
+        Path root = null;
+        try {
+            root = Files.createTempDirectory("key-index-test");
+            
+            System.out.println("1. Testing KeyIndex reopen and rebuild...");
+            Path indexFile = root.resolve("table.dat");
+            Path namesFile = root.resolve("table.names");
+            try (KeyIndex index = KeyIndex.open(indexFile, namesFile)) {
+                check("new index needs no rebuild", !index.needsRebuild());
+                index.put("alice@example.com", 3, 42);
+                index.put("bob@example.com", 1, 7);
+                index.put("carol@example.com", 1, 9);
+            }
+            try (KeyIndex index = KeyIndex.open(indexFile, namesFile)) {
+                check("reopened index needs no rebuild", !index.needsRebuild());
+                check("reopened index keeps flags and fingerprint",
+                        index.flags("alice@example.com") == 3 && index.fingerprint("alice@example.com") == 42);
+            }
+            Files.delete(indexFile);
+            try (KeyIndex index = KeyIndex.open(indexFile, namesFile)) {
+                check("index missing beside its names file needs rebuild", index.needsRebuild());
+                check("recreated index starts empty", index.flags("alice@example.com") == 0);
+                check("names file still lists every name",
+                        index.loggedNames().equals(List.of("alice@example.com", "bob@example.com", "carol@example.com")));
+            }
+            
+            System.out.println("\n2. Testing KeyDirectory rebuild from index.names...");
+            Path keys = root.resolve("keys");
+            byte[] alicePublic = "alice public key".getBytes(StandardCharsets.UTF_8);
+            List<String> expected = new ArrayList<>();
+            KeyDirectory directory = new KeyDirectory(keys.toString());
+            directory.open();
+            write(directory, "alice@example.com", alicePublic, KeyFile.PUBLIC, KeyFile.PRIVATE);
+            write(directory, "bob@example.com", new byte[] { 1 }, KeyFile.PUBLIC, KeyFile.SIGNING_PUBLIC);
+            expected.add("alice@example.com");
+            expected.add("bob@example.com");
+            for (int i = 0; i < BULK_OWNERS; i++) {
+                String email = "user" + i + "@example.com";
+                write(directory, email, ("key " + i).getBytes(StandardCharsets.UTF_8), KeyFile.PUBLIC);
+                expected.add(email);
+            }
+            // carol: file xóa ngoài ý muốn của index; dave: xóa qua deleted()
+            write(directory, "carol@example.com", new byte[] { 2 }, KeyFile.PUBLIC);
+            Files.delete(Paths.get(directory.path("carol@example.com", KeyFile.PUBLIC)));
+            write(directory, "dave@example.com", new byte[] { 3 }, KeyFile.PUBLIC);
+            Files.delete(Paths.get(directory.path("dave@example.com", KeyFile.PUBLIC)));
+            directory.deleted("dave@example.com", KeyFile.PUBLIC);
+            check("owners before rebuild", new HashSet<>(directory.owners()).containsAll(expected));
+            directory.close();
+            
+            Path table = keys.resolve("index.dat");
+            verifyRebuild("index.dat deleted", keys, expected, alicePublic, () -> Files.delete(table));
+            verifyRebuild("index.dat from another format", keys, expected, alicePublic,
+                    () -> overwrite(table, 0, 0x12345678));
+            // Trạng thái RESIZING (2) ở offset 16: tiến trình trước dừng giữa lúc mở rộng bảng
+            verifyRebuild("index.dat left half-resized", keys, expected, alicePublic,
+                    () -> overwrite(table, 16, 2));
+        
+        } catch (Exception e) {
+            System.out.println("ERROR: " + e.getMessage());
+            e.printStackTrace();
+            failures++;
+        } finally {
+            deleteTree(root);
+        }
+        
+        System.out.println("\n=== TEST COMPLETED: " + (failures == 0 ? "all passed" : failures + " failed") + " ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+    
+    @FunctionalInterface
+    private interface Damage {
+        void apply() throws IOException;
+    }
+    
+    private static void verifyRebuild(String name, Path keys, List<String> expected, byte[] alicePublic,
+                                      Damage damage) throws IOException {
+        damage.apply();
+        KeyDirectory directory = new KeyDirectory(keys.toString());
+        directory.open();
+        try {
+            Set<String> owners = new HashSet<>(directory.owners());
+            check(name + ": " + owners.size() + " owner(s) restored",
+                    owners.equals(new HashSet<>(expected)));
+            check(name + ": key file kinds restored",
+                    directory.exists("alice@example.com", KeyFile.PUBLIC, KeyFile.PRIVATE)
+                            && directory.exists("bob@example.com", KeyFile.PUBLIC, KeyFile.SIGNING_PUBLIC));
+            check(name + ": fingerprint recomputed from the public key file",
+                    directory.fingerprint("alice@example.com") == KeyIndex.fingerprint(alicePublic));
+            check(name + ": deleted keys stay deleted",
+                    !directory.exists("carol@example.com", KeyFile.PUBLIC)
+                            && !directory.exists("dave@example.com", KeyFile.PUBLIC));
+        } finally {
+            directory.close();
+        }
+    }
+    
+    private static void write(KeyDirectory directory, String email, byte[] publicKey, KeyFile... kinds)
+            throws IOException {
+        for (KeyFile kind : kinds) {
+            Files.write(Paths.get(directory.pathForWrite(email, kind)), publicKey);
+        }
+        directory.written(email, KeyIndex.fingerprint(publicKey), kinds);
+    }
+    
+    private static void overwrite(Path file, long offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, value), offset);
+        }
+    }
+    
+    private static void deleteTree(Path root) {
+        if (root == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not remove " + root + ": " + e.getMessage());
+        }
+    }
+    
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "✓ " : "✗ ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+// Quick test script để verify envelope v1 (text) và v2 (binary) gửi cho nhiều người nhận
+// Chạy: java -cp "target\classes;lib\*" test_secure_envelope
+// Tạo khóa tạm trong thư mục keys/ và xóa khi chạy xong
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import jakarta.mail.Message;
+
+import core.service.KeyService;
+import core.service.MailService;
+import core.service.SecureMailService.ProcessedMessage;
+import crypto.ChunkedAeadOutputStream;
+import crypto.KeyUtil;
+import infra.crypto.DefaultCryptoService;
+import infra.crypto.DefaultKeyService;
+import infra.crypto.DefaultSecureMailService;
+
+public class test_secure_envelope {
+    private static final String RSA_USER = "envelope-test-rsa@localhost";
+    private static final String CURVE_USER = "envelope-test-x25519@localhost";
+    private static final String OUTSIDER = "envelope-test-outsider@localhost";
+    
+    private static int failures;
+    private static String lastSent;
+    
+    public static void main(String[] args) {
+        System.out.println("=== TESTING SECURE ENVELOPES ===");
+        
+        DefaultKeyService keyService = null;
+        try {
+            keyService = new DefaultKeyService();
+            DefaultCryptoService cryptoService = new DefaultCryptoService();
+            DefaultSecureMailService secureMail = new DefaultSecureMailService(new CapturingMailService(),
+                    cryptoService, keyService);
+            
+            // Một người nhận RSA, một người nhận X25519, và một người có khóa nhưng không được gửi
+            keyService.generateKeyPair(RSA_USER, 2048);
+            keyService.generateKeyPair(CURVE_USER, KeyService.Suite.X25519_ED25519);
+            keyService.generateKeyPair(OUTSIDER, 2048);
+            List<String> recipients = List.of(RSA_USER, CURVE_USER);
+            
+            System.out.println("1. Testing version 2 envelopes...");
+            String[] bodies = {
+                "Xin chào, đây là thư thử nghiệm.",
+                "Nội dung lặp lại để được nén. ".repeat(200),
+                "Thư lớn giải mã song song theo từng cửa sổ chunk. ".repeat(6_000)
+            };
+            for (String body : bodies) {
+                secureMail.sendSecureMail(RSA_USER, "", recipients, "Test", body, true, true);
+                String envelope = lastSent;
+                check(body.length() + " chars: version 2 header", envelope.contains("\nVersion: 2\n"));
+                for (String recipient : recipients) {
+                    opens(secureMail, envelope, recipient, body);
+                }
+                refused(secureMail, envelope, OUTSIDER);
+            }
+            
+            System.out.println("\n2. Testing version 1 envelopes...");
+            String body = "Thư định dạng cũ cho hai người nhận. ".repeat(50);
+            String envelope = textEnvelope(cryptoService, keyService, body, recipients, false);
+            for (String recipient : recipients) {
+                opens(secureMail, envelope, recipient, body);
+            }
+            refused(secureMail, envelope, OUTSIDER);
+            
+            // Wrapped-Key được tìm theo fingerprint, không theo thứ tự trong dòng Recipient
+            String reversed = textEnvelope(cryptoService, keyService, body, recipients, true);
+            for (String recipient : recipients) {
+                opens(secureMail, reversed, recipient, body);
+            }
+            
+            System.out.println("\n3. Testing tampered envelopes...");
+            secureMail.sendSecureMail(RSA_USER, "", recipients, "Test", bodies[0], true, false);
+            String sent = lastSent;
+            int payload = sent.indexOf("\nVersion: 2\n") + "\nVersion: 2\n".length();
+            // Đổi một ký tự Base64 trong phần ciphertext (sau header người nhận)
+            int target = sent.lastIndexOf("\n-----END") - 10;
+            char replacement = sent.charAt(target) == 'A' ? 'B' : 'A';
+            String tampered = sent.substring(0, target) + replacement + sent.substring(target + 1);
+            for (String recipient : recipients) {
+                refused(secureMail, tampered, recipient);
+            }
+            String truncated = sent.substring(0, payload + 40) + sent.substring(sent.lastIndexOf("\n-----END"));
+            refused(secureMail, truncated, RSA_USER);
+            
+            String stripped = envelope.replaceFirst("Wrapped-Key: [^\n]*\n", "");
+            check("v1 without the first Wrapped-Key still opens for the other recipient",
+                    body.equals(secureMail.processReceivedMessage(stripped, CURVE_USER).getDecryptedContent()));
+            refused(secureMail, stripped, RSA_USER);
+        
+        } catch (Exception e) {
+            System.out.println("ERROR: " + e.getMessage());
+            e.printStackTrace();
+            failures++;
+        } finally {
+            if (keyService != null) {
+                for (String email : List.of(RSA_USER, CURVE_USER, OUTSIDER)) {
+                    keyService.deleteKeyPair(email);
+                }
+            }
+        }
+        
+        System.out.println("\n=== TEST COMPLETED: " + (failures == 0 ? "all passed" : failures + " failed") + " ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Envelope v1 như các phiên bản trước ghi: header dạng text, một dòng Wrapped-Key mỗi người nhận
+     */
+    private static String textEnvelope(DefaultCryptoService cryptoService, KeyService keyService, String body,
+                                       List<String> recipients, boolean reverseKeys) throws Exception {
+        SecretKey aesKey = cryptoService.generateAESKey();
+        StringBuilder envelope = new StringBuilder("-----BEGIN ENCRYPTED MESSAGE-----\n");
+        envelope.append("Recipient: ").append(String.join(", ", recipients)).append("\n");
+        envelope.append("Cipher: AES-GCM-CHUNKED\n");
+        for (int i = 0; i < recipients.size(); i++) {
+            String recipient = recipients.get(reverseKeys ? recipients.size() - 1 - i : i);
+            PublicKey publicKey = keyService.getPublicKey(recipient);
+            String algorithm = cryptoService.getKeyWrapAlgorithm(publicKey);
+            envelope.append("Wrapped-Key: ").append(KeyUtil.fingerprint(publicKey)).append(' ');
+            if (!"RSA".equals(algorithm)) {
+                envelope.append(algorithm).append(':');
+            }
+            envelope.append(cryptoService.wrapKey(aesKey, publicKey)).append("\n");
+        }
+        
+        ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+        try (OutputStream encrypting = new ChunkedAeadOutputStream(cipherText, aesKey)) {
+            encrypting.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        envelope.append("Content: ").append(Base64.getEncoder().encodeToString(cipherText.toByteArray()));
+        envelope.append("\n-----END ENCRYPTED MESSAGE-----");
+        return envelope.toString();
+    }
+    
+    private static void opens(DefaultSecureMailService secureMail, String envelope, String recipient,
+                              String body) throws Exception {
+        ProcessedMessage processed = secureMail.processReceivedMessage(envelope, recipient);
+        check(body.length() + " chars open for " + recipient
+                + (processed.getError() != null ? " (" + processed.getError() + ")" : ""),
+                processed.getError() == null && body.equals(processed.getDecryptedContent()));
+        check(body.length() + " chars decrypt-only for " + recipient,
+                body.equals(secureMail.decryptReceivedMessage(envelope, recipient)));
+    }
+    
+    private static void refused(DefaultSecureMailService secureMail, String envelope, String recipient)
+            throws Exception {
+        ProcessedMessage processed = secureMail.processReceivedMessage(envelope, recipient);
+        check("refused for " + recipient + ": " + processed.getError(),
+                processed.getError() != null && processed.getDecryptedContent() == null);
+    }
+    
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "✓ " : "✗ ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+    
+    /**
+     * Giữ lại thư vừa gửi thay vì gửi qua SMTP
+     */
+    private static class CapturingMailService implements MailService {
+        @Override
+        public void sendMail(String from, String password, String to, String subject, String body) {
+            lastSent = body;
+        }
+        
+        @Override
+        public List<Message> fetchInbox(String email, String password) {
+            return List.of();
+        }
+        
+        @Override
+        public boolean testConnection(String email, String password) {
+            return true;
+        }
+    }
+}